@@ -0,0 +1,130 @@
+package com.flash.bench;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一项基准测试：名称、参数、并发线程数和被测操作
+ */
+public final class Benchmark {
+
+    /**
+     * 被测操作，每次调用计为一次操作
+     */
+    @FunctionalInterface
+    public interface Operation {
+        /**
+         * @return 操作结果，交给运行器消费，避免被即时编译器当作无用代码消除
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * 每个测量线程各自创建一份操作，操作可以持有线程私有的状态（如独占的连接）
+     */
+    @FunctionalInterface
+    public interface OperationFactory {
+        Operation create() throws Exception;
+    }
+
+    private final String name;
+    private final Map<String, String> params = new LinkedHashMap<>();
+    private int threads = 1;
+    private int itemsPerOperation = 1;
+    private OperationFactory factory;
+    private Runnable beforeIteration = () -> { };
+
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public Benchmark param(String key, Object value) {
+        params.put(key, String.valueOf(value));
+        return this;
+    }
+
+    public Benchmark threads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("线程数必须大于0: " + threads);
+        }
+        this.threads = threads;
+        return param("threads", threads);
+    }
+
+    /**
+     * 一次操作处理的条目数（如一页的行数），用于换算每秒处理的条目数
+     */
+    public Benchmark itemsPerOperation(int items) {
+        if (items <= 0) {
+            throw new IllegalArgumentException("条目数必须大于0: " + items);
+        }
+        this.itemsPerOperation = items;
+        return this;
+    }
+
+    /**
+     * 所有线程共用同一个操作，操作本身必须是线程安全的
+     */
+    public Benchmark operation(Operation operation) {
+        this.factory = () -> operation;
+        return this;
+    }
+
+    public Benchmark operationPerThread(OperationFactory factory) {
+        this.factory = factory;
+        return this;
+    }
+
+    /**
+     * 每轮（含预热轮）开始前在主线程执行，如重置测试数据
+     */
+    public Benchmark beforeIteration(Runnable action) {
+        this.beforeIteration = action;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getParams() {
+        return Collections.unmodifiableMap(params);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getItemsPerOperation() {
+        return itemsPerOperation;
+    }
+
+    OperationFactory getFactory() {
+        if (factory == null) {
+            throw new IllegalStateException("基准测试未设置被测操作: " + name);
+        }
+        return factory;
+    }
+
+    Runnable getBeforeIteration() {
+        return beforeIteration;
+    }
+
+    /**
+     * 名称加参数，如 pool.acquireRelease[threads=8]
+     */
+    public String getId() {
+        if (params.isEmpty()) {
+            return name;
+        }
+        StringBuilder id = new StringBuilder(name).append('[');
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (id.charAt(id.length() - 1) != '[') {
+                id.append(',');
+            }
+            id.append(param.getKey()).append('=').append(param.getValue());
+        }
+        return id.append(']').toString();
+    }
+}
@@ -0,0 +1,134 @@
+package com.flash.bench;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 一项基准测试的测量结果
+ * <p>
+ * 吞吐量取每个测量轮的每秒操作数，给出均值和标准差；延迟为各线程抽样得到的单次操作耗时分位数。
+ */
+public final class BenchmarkResult {
+    private final Benchmark benchmark;
+    private final double[] iterationThroughput;
+    private final long[] latencySamples;
+    private final long operations;
+    private final long errors;
+
+    BenchmarkResult(Benchmark benchmark, double[] iterationThroughput, long[] latencySamples, long operations,
+                    long errors) {
+        this.benchmark = benchmark;
+        this.iterationThroughput = iterationThroughput;
+        this.latencySamples = latencySamples;
+        this.operations = operations;
+        this.errors = errors;
+        Arrays.sort(this.latencySamples);
+    }
+
+    public Benchmark getBenchmark() {
+        return benchmark;
+    }
+
+    /**
+     * 每秒操作数的均值
+     */
+    public double getThroughput() {
+        double sum = 0;
+        for (double value : iterationThroughput) {
+            sum += value;
+        }
+        return iterationThroughput.length == 0 ? 0 : sum / iterationThroughput.length;
+    }
+
+    /**
+     * 各测量轮每秒操作数的样本标准差
+     */
+    public double getThroughputStdDev() {
+        if (iterationThroughput.length < 2) {
+            return 0;
+        }
+        double mean = getThroughput();
+        double squares = 0;
+        for (double value : iterationThroughput) {
+            squares += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(squares / (iterationThroughput.length - 1));
+    }
+
+    /**
+     * 单次操作耗时的分位数(纳秒)
+     *
+     * @param quantile 0 到 1 之间
+     */
+    public long getLatency(double quantile) {
+        if (latencySamples.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * latencySamples.length) - 1;
+        return latencySamples[Math.max(0, Math.min(latencySamples.length - 1, index))];
+    }
+
+    public long getOperations() {
+        return operations;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * 一行文字摘要
+     */
+    public String summary() {
+        String items = benchmark.getItemsPerOperation() == 1 ? ""
+                : String.format("，%.0f 条/秒", getThroughput() * benchmark.getItemsPerOperation());
+        return String.format("%-48s %14.1f ± %-10.1f 次/秒%s，p50 %s，p99 %s%s", benchmark.getId(),
+                getThroughput(), getThroughputStdDev(), items, formatNanos(getLatency(0.5)),
+                formatNanos(getLatency(0.99)), errors == 0 ? "" : "，失败 " + errors + " 次");
+    }
+
+    /**
+     * 以JSON对象输出，字段名固定，便于不同提交之间的结果对比
+     */
+    void appendJson(StringBuilder out, String indent) {
+        out.append(indent).append("{\n");
+        String field = indent + "  ";
+        out.append(field).append("\"benchmark\": ").append(JsonWriter.quote(benchmark.getName())).append(",\n");
+        out.append(field).append("\"params\": {");
+        boolean first = true;
+        for (Map.Entry<String, String> param : benchmark.getParams().entrySet()) {
+            out.append(first ? "" : ", ").append(JsonWriter.quote(param.getKey())).append(": ")
+                    .append(JsonWriter.quote(param.getValue()));
+            first = false;
+        }
+        out.append("},\n");
+        out.append(field).append("\"threads\": ").append(benchmark.getThreads()).append(",\n");
+        out.append(field).append("\"itemsPerOperation\": ").append(benchmark.getItemsPerOperation()).append(",\n");
+        out.append(field).append("\"operations\": ").append(operations).append(",\n");
+        out.append(field).append("\"errors\": ").append(errors).append(",\n");
+        out.append(field).append("\"throughput\": {\"unit\": \"ops/s\", \"mean\": ")
+                .append(JsonWriter.number(getThroughput())).append(", \"stdDev\": ")
+                .append(JsonWriter.number(getThroughputStdDev())).append(", \"iterations\": [");
+        for (int i = 0; i < iterationThroughput.length; i++) {
+            out.append(i == 0 ? "" : ", ").append(JsonWriter.number(iterationThroughput[i]));
+        }
+        out.append("]},\n");
+        out.append(field).append("\"latency\": {\"unit\": \"ns\", \"samples\": ").append(latencySamples.length)
+                .append(", \"p50\": ").append(getLatency(0.5))
+                .append(", \"p90\": ").append(getLatency(0.9))
+                .append(", \"p99\": ").append(getLatency(0.99))
+                .append(", \"p999\": ").append(getLatency(0.999))
+                .append(", \"max\": ").append(getLatency(1)).append("}\n");
+        out.append(indent).append('}');
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000) {
+            return String.format("%.2fms", nanos / 1e6);
+        }
+        if (nanos >= 1_000) {
+            return String.format("%.2fµs", nanos / 1e3);
+        }
+        return nanos + "ns";
+    }
+}
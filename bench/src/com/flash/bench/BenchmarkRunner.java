@@ -0,0 +1,177 @@
+package com.flash.bench;
+
+import com.flash.utils.ConsoleUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基准测试运行器
+ * <p>
+ * 每项测试先跑若干预热轮，再跑若干测量轮，每轮固定时长。每轮开始时所有线程在同一时刻放行，
+ * 到时后统一停止，按实际经过的时间计算该轮吞吐量。每个线程用蓄水池抽样保留固定数量的单次耗时，
+ * 测量轮结束后合并求分位数。操作抛出的异常计入失败次数，不中断测试。
+ */
+public final class BenchmarkRunner {
+    /** 每个线程每轮最多保留的耗时样本数 */
+    private static final int SAMPLES_PER_THREAD = 1 << 14;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+    /** 消费操作结果，防止被当作无用代码消除 */
+    private volatile int sink;
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        if (warmupIterations < 0 || measurementIterations <= 0 || iterationMillis <= 0) {
+            throw new IllegalArgumentException("预热轮数不能为负，测量轮数和每轮时长必须大于0");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    public BenchmarkResult run(Benchmark benchmark) throws Exception {
+        Benchmark.Operation[] operations = new Benchmark.Operation[benchmark.getThreads()];
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = benchmark.getFactory().create();
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            benchmark.getBeforeIteration().run();
+            runIteration(operations);
+        }
+        double[] throughput = new double[measurementIterations];
+        List<long[]> samples = new ArrayList<>();
+        long totalOperations = 0;
+        long totalErrors = 0;
+        Exception firstError = null;
+        for (int i = 0; i < measurementIterations; i++) {
+            benchmark.getBeforeIteration().run();
+            Worker[] workers = runIteration(operations);
+            long count = 0;
+            long elapsed = 0;
+            for (Worker worker : workers) {
+                count += worker.operations;
+                totalErrors += worker.errors;
+                if (firstError == null) {
+                    firstError = worker.firstError;
+                }
+                elapsed = Math.max(elapsed, worker.elapsedNanos);
+                samples.add(worker.samples());
+            }
+            totalOperations += count;
+            throughput[i] = elapsed == 0 ? 0 : count * 1e9 / elapsed;
+        }
+        int sampleCount = 0;
+        for (long[] threadSamples : samples) {
+            sampleCount += threadSamples.length;
+        }
+        long[] merged = new long[sampleCount];
+        int offset = 0;
+        for (long[] threadSamples : samples) {
+            System.arraycopy(threadSamples, 0, merged, offset, threadSamples.length);
+            offset += threadSamples.length;
+        }
+        if (firstError != null) {
+            ConsoleUtil.printWarning(benchmark.getId() + " 有 " + totalErrors + " 次操作失败，首次失败: " + firstError);
+        }
+        return new BenchmarkResult(benchmark, throughput, merged, totalOperations, totalErrors);
+    }
+
+    private Worker[] runIteration(Benchmark.Operation[] operations) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(operations.length);
+        CountDownLatch start = new CountDownLatch(1);
+        Worker[] workers = new Worker[operations.length];
+        Thread[] threads = new Thread[operations.length];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < operations.length; i++) {
+            workers[i] = new Worker(operations[i], ready, start);
+            threads[i] = new Thread(workers[i], "bench-" + i);
+            threads[i].setDaemon(true);
+            threads[i].setUncaughtExceptionHandler((thread, e) -> failure.compareAndSet(null, e));
+            threads[i].start();
+        }
+        ready.await();
+        start.countDown();
+        Thread.sleep(iterationMillis);
+        for (Worker worker : workers) {
+            worker.running = false;
+        }
+        int consumed = 0;
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            consumed ^= workers[i].consumed;
+        }
+        sink ^= consumed;
+        if (failure.get() != null) {
+            throw new IllegalStateException("基准测试线程异常退出: " + failure.get(), failure.get());
+        }
+        return workers;
+    }
+
+    /**
+     * 一个测量线程：放行后反复执行操作直到被叫停，期间只写线程私有的字段
+     */
+    private static final class Worker implements Runnable {
+        private final Benchmark.Operation operation;
+        private final CountDownLatch ready;
+        private final CountDownLatch start;
+        private final long[] samples = new long[SAMPLES_PER_THREAD];
+        private volatile boolean running = true;
+        private long operations;
+        private long errors;
+        private long elapsedNanos;
+        private int consumed;
+        private Exception firstError;
+
+        Worker(Benchmark.Operation operation, CountDownLatch ready, CountDownLatch start) {
+            this.operation = operation;
+            this.ready = ready;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            ready.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long begin = System.nanoTime();
+            while (running) {
+                long before = System.nanoTime();
+                try {
+                    Object result = operation.run();
+                    consumed += result == null ? 0 : 1;
+                } catch (Exception e) {
+                    if (errors++ == 0) {
+                        firstError = e;
+                    }
+                }
+                long took = System.nanoTime() - before;
+                // 蓄水池抽样：第 n 个样本以 SAMPLES_PER_THREAD/n 的概率替换已保留的样本
+                if (operations < SAMPLES_PER_THREAD) {
+                    samples[(int) operations] = took;
+                } else {
+                    long slot = random.nextLong(operations + 1);
+                    if (slot < SAMPLES_PER_THREAD) {
+                        samples[(int) slot] = took;
+                    }
+                }
+                operations++;
+            }
+            elapsedNanos = System.nanoTime() - begin;
+        }
+
+        long[] samples() {
+            return Arrays.copyOf(samples, (int) Math.min(operations, SAMPLES_PER_THREAD));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.flash.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 把一次运行的全部结果写成JSON文件
+ * <p>
+ * 顶层包含运行环境、运行参数和 results 数组；results 中每项的 benchmark 与 params
+ * 共同标识一项测试，不同提交的结果文件按这两个字段对齐比较。
+ */
+final class JsonWriter {
+    private JsonWriter() {
+    }
+
+    static void write(Path file, String label, Map<String, String> settings, List<BenchmarkResult> results)
+            throws IOException {
+        StringBuilder out = new StringBuilder();
+        out.append("{\n");
+        out.append("  \"label\": ").append(label == null ? "null" : quote(label)).append(",\n");
+        out.append("  \"timestamp\": ").append(quote(OffsetDateTime.now().toString())).append(",\n");
+        out.append("  \"environment\": {");
+        out.append("\"java.version\": ").append(quote(System.getProperty("java.version")));
+        out.append(", \"java.vm.name\": ").append(quote(System.getProperty("java.vm.name")));
+        out.append(", \"os.name\": ").append(quote(System.getProperty("os.name")));
+        out.append(", \"os.arch\": ").append(quote(System.getProperty("os.arch")));
+        out.append(", \"processors\": ").append(Runtime.getRuntime().availableProcessors());
+        out.append(", \"maxMemory\": ").append(Runtime.getRuntime().maxMemory()).append("},\n");
+        out.append("  \"settings\": {");
+        boolean first = true;
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            out.append(first ? "" : ", ").append(quote(setting.getKey())).append(": ").append(quote(setting.getValue()));
+            first = false;
+        }
+        out.append("},\n");
+        out.append("  \"results\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).appendJson(out, "    ");
+            out.append(i == results.size() - 1 ? "\n" : ",\n");
+        }
+        out.append("  ]\n}\n");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String quote(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * 保留三位小数；JSON不允许 NaN 和无穷大，输出为 null
+     */
+    static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,247 @@
+package com.flash.bench;
+
+import com.flash.dao.BookDAO;
+import com.flash.dao.BookPage;
+import com.flash.dao.UncheckedSQLException;
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+import com.flash.utils.ConnectionPool;
+import com.flash.utils.ConsoleUtil;
+import com.flash.utils.DatabaseUtil;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据访问与连接池热点路径的基准测试
+ * <p>
+ * 连接 bench/resources/database.properties 配置的进程内替身数据库 {@link StandInDatabase}，不需要 MySQL。
+ * 覆盖连接池借还（1 到 64 个线程）、结果集行到 {@link Book} 的映射、{@link BookFactory#createBook}、
+ * 书名和ISBN搜索以及批量添加，结果打印到控制台并写成JSON文件，用于比较不同提交的性能。
+ * <p>
+ * 用法: java -cp 主程序类目录:基准类目录:bench/resources com.flash.bench.LibraryBenchmarks
+ * [--out 结果文件] [--label 标签] [--filter 名称片段] [--rows N] [--warmup N] [--iterations N]
+ * [--time 毫秒] [--quick]
+ */
+public class LibraryBenchmarks {
+    private static final int[] POOL_THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int[] PAGE_SIZES = {100, 1000};
+    private static final int[] INSERT_BATCHES = {100, 1000};
+    private static final String[] CATEGORIES = {"计算机", "文学"};
+    private static final String[] TOPICS = {"Java", "数据库", "算法", "网络", "编译原理", "操作系统", "分布式系统", "机器学习",
+            "红楼梦", "诗经", "散文", "小说", "戏剧", "史记", "哲学", "艺术"};
+    private static final String[] LANGUAGES = {"Java", "C++", "Python", "Go", "Rust"};
+
+    private final List<Benchmark> benchmarks = new ArrayList<>();
+    private final AtomicLong isbnSequence = new AtomicLong();
+    private final int rows;
+
+    private LibraryBenchmarks(int rows) {
+        this.rows = rows;
+    }
+
+    public static void main(String[] args) {
+        Path out = Paths.get("bench-results.json");
+        String label = null;
+        String filter = null;
+        int rows = 100_000;
+        int warmup = 3;
+        int iterations = 5;
+        long time = 1000;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--out".equals(args[i]) && i + 1 < args.length) {
+                    out = Paths.get(args[++i]);
+                } else if ("--label".equals(args[i]) && i + 1 < args.length) {
+                    label = args[++i];
+                } else if ("--filter".equals(args[i]) && i + 1 < args.length) {
+                    filter = args[++i];
+                } else if ("--rows".equals(args[i]) && i + 1 < args.length) {
+                    rows = Integer.parseInt(args[++i]);
+                } else if ("--warmup".equals(args[i]) && i + 1 < args.length) {
+                    warmup = Integer.parseInt(args[++i]);
+                } else if ("--iterations".equals(args[i]) && i + 1 < args.length) {
+                    iterations = Integer.parseInt(args[++i]);
+                } else if ("--time".equals(args[i]) && i + 1 < args.length) {
+                    time = Long.parseLong(args[++i]);
+                } else if ("--quick".equals(args[i])) {
+                    warmup = 1;
+                    iterations = 3;
+                    time = 300;
+                } else {
+                    throw new IllegalArgumentException("未知参数 " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            ConsoleUtil.printError("参数格式错误: " + e.getMessage());
+            System.out.println("用法: java com.flash.bench.LibraryBenchmarks [--out 结果文件] [--label 标签] "
+                    + "[--filter 名称片段] [--rows N] [--warmup N] [--iterations N] [--time 毫秒] [--quick]");
+            System.exit(2);
+        }
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("rows", String.valueOf(rows));
+        settings.put("warmupIterations", String.valueOf(warmup));
+        settings.put("measurementIterations", String.valueOf(iterations));
+        settings.put("iterationMillis", String.valueOf(time));
+        if (filter != null) {
+            settings.put("filter", filter);
+        }
+
+        int exitCode = 0;
+        try {
+            List<BenchmarkResult> results = new LibraryBenchmarks(rows)
+                    .run(new BenchmarkRunner(warmup, iterations, time), filter);
+            JsonWriter.write(out, label, settings, results);
+            ConsoleUtil.printSuccess("结果已写入 " + out.toAbsolutePath());
+        } catch (Exception e) {
+            ConsoleUtil.printError("基准测试失败: " + e);
+            exitCode = 1;
+        } finally {
+            try {
+                DatabaseUtil.shutdown();
+            } catch (SQLException e) {
+                ConsoleUtil.printWarning(e.getMessage());
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private List<BenchmarkResult> run(BenchmarkRunner runner, String filter) throws Exception {
+        ConsoleUtil.printInfo("正在准备 " + rows + " 本图书的测试数据");
+        loadCatalog();
+        List<BenchmarkResult> results = new ArrayList<>();
+        defineBenchmarks(DatabaseUtil.getDataSource());
+        for (Benchmark benchmark : benchmarks) {
+            if (filter != null && !benchmark.getId().contains(filter)) {
+                continue;
+            }
+            BenchmarkResult result = runner.run(benchmark);
+            System.out.println(result.summary());
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * @param dataSource DAO测试使用的数据源，每次操作从连接池借还连接，借还开销计入结果
+     */
+    private void defineBenchmarks(DataSource dataSource) throws SQLException {
+        ConnectionPool pool = ConnectionPool.getInstance();
+        for (int threads : POOL_THREADS) {
+            benchmarks.add(new Benchmark("pool.acquireRelease").threads(threads).operation(() -> {
+                Connection borrowed = pool.getConnection();
+                borrowed.close();
+                return borrowed;
+            }));
+        }
+
+        int[] sequence = {0};
+        benchmarks.add(new Benchmark("factory.createBook").operation(() -> {
+            int i = sequence[0]++;
+            return BookFactory.createBook(CATEGORIES[i & 1], i, titleOf(i), "作者", isbnOf(i), "2024-01-01",
+                    LANGUAGES[i % LANGUAGES.length]);
+        }));
+
+        BookDAO dao = new BookDAO(dataSource);
+        for (int pageSize : PAGE_SIZES) {
+            int[] afterId = {0};
+            benchmarks.add(new Benchmark("dao.mapRows").param("pageSize", pageSize).itemsPerOperation(pageSize)
+                    .operation(() -> {
+                        // 顺序翻页，到末尾后从头开始
+                        BookPage page = dao.getAllBooksPage(afterId[0], pageSize);
+                        afterId[0] = page.hasMore() ? page.getLastId() : 0;
+                        return page;
+                    }));
+            // 同样一页只读列表显示的列，对比 dao.mapRows
+            BookDAO summaries = new BookDAO(dataSource, dataSource, pageSize);
+            benchmarks.add(new Benchmark("dao.mapSummaries").param("pageSize", pageSize).itemsPerOperation(pageSize)
+                    .operation(() -> summaries.streamAllSummaries().limit(pageSize).count()));
+        }
+
+        // 同样的分页和按ID读取由堆外列式目录回答，对比 dao.mapRows 和 dao.getBookById
+        BookDAO resident = new BookDAO(dataSource);
+        resident.buildCatalog();
+        for (int pageSize : PAGE_SIZES) {
+            int[] afterId = {0};
+            benchmarks.add(new Benchmark("catalog.mapRows").param("pageSize", pageSize).itemsPerOperation(pageSize)
+                    .operation(() -> {
+                        BookPage page = resident.getAllBooksPage(afterId[0], pageSize);
+                        afterId[0] = page.hasMore() ? page.getLastId() : 0;
+                        return page;
+                    }));
+        }
+        int[] lookup = {0};
+        benchmarks.add(new Benchmark("dao.getBookById").operation(() -> dao.getBookById(1 + lookup[0]++ % rows)));
+        benchmarks.add(new Benchmark("catalog.getBookById").operation(() ->
+                resident.getBookById(1 + lookup[0]++ % rows)));
+
+        BookDAO indexed = new BookDAO(dataSource);
+        indexed.buildSearchIndexes();
+        int[] next = {0};
+        benchmarks.add(new Benchmark("dao.searchTitle").param("match", "selective").operation(() ->
+                // 书名末尾的编号，匹配约十本
+                indexed.searchBooksByTitle("卷" + next[0]++ % Math.max(1, rows / 10))));
+        benchmarks.add(new Benchmark("dao.searchTitle").param("match", "broad").operation(() ->
+                // 主题词，匹配 1/16 的图书
+                indexed.searchBooksByTitle(TOPICS[next[0]++ % TOPICS.length])));
+        benchmarks.add(new Benchmark("dao.searchIsbn").param("match", "fragment").operation(() ->
+                indexed.searchBooksByIsbn(isbnOf(next[0]++ % rows).substring(8))));
+        benchmarks.add(new Benchmark("dao.searchIsbn").param("match", "prefix").operation(() ->
+                indexed.searchBooksByIsbnPrefix(isbnOf(next[0]++ % rows).substring(0, 12))));
+        benchmarks.add(new Benchmark("dao.isbnExists").operation(() -> indexed.isbnExists(isbnOf(next[0]++ % rows))));
+
+        for (int batch : INSERT_BATCHES) {
+            BookDAO writer = new BookDAO(dataSource);
+            benchmarks.add(new Benchmark("dao.addBooks").param("batch", batch).itemsPerOperation(batch)
+                    .beforeIteration(() -> {
+                        // 每轮从相同的数据量开始，避免表越插越大
+                        try {
+                            loadCatalog();
+                            writer.buildSearchIndexes();
+                        } catch (SQLException e) {
+                            throw new UncheckedSQLException("准备测试数据失败: " + e.getMessage(), e);
+                        }
+                    })
+                    .operation(() -> writer.addBooks(newBooks(batch), batch, false)));
+        }
+    }
+
+    /**
+     * 清空替身数据库并写入 rows 本图书，ID从1开始连续
+     */
+    private void loadCatalog() throws SQLException {
+        StandInDatabase database = StandInDatabase.getInstance();
+        database.clear();
+        for (int i = 0; i < rows; i++) {
+            database.insert(titleOf(i), "作者" + (i % 1000), isbnOf(i), CATEGORIES[i & 1], "2024-01-01",
+                    LANGUAGES[i % LANGUAGES.length]);
+        }
+    }
+
+    private List<Book> newBooks(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long n = isbnSequence.incrementAndGet();
+            books.add(BookFactory.createBook(CATEGORIES[(int) (n & 1)], 0, "新书 " + n, "作者",
+                    String.format("979-%010d", n), "2024-01-01", LANGUAGES[(int) (n % LANGUAGES.length)]));
+        }
+        return books;
+    }
+
+    private static String titleOf(int i) {
+        return TOPICS[i % TOPICS.length] + "实践 卷" + i;
+    }
+
+    private static String isbnOf(int i) {
+        return String.format("978-7-%08d", i);
+    }
+}
@@ -0,0 +1,257 @@
+package com.flash.bench;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基准测试用的进程内替身数据库，只有 books 表
+ * <p>
+ * 只认识 {@link com.flash.dao.BookDAO} 在被测路径上发出的SQL，其他语句抛出
+ * {@link SQLFeatureNotSupportedException}。ISBN唯一键与 MySQL 一样不区分大小写。
+ * 不实现事务：提交和回滚都是空操作，写入立即可见。
+ */
+public final class StandInDatabase {
+    static final String[] ALL_COLUMNS = {"id", "title", "author", "isbn", "category", "publish_date", "extra_info"};
+    private static final String[] SUMMARY_COLUMN_NAMES = Arrays.copyOf(ALL_COLUMNS, 6);
+    private static final String BOOK_COLUMNS = String.join(", ", ALL_COLUMNS);
+    private static final String SUMMARY_COLUMNS = String.join(", ", SUMMARY_COLUMN_NAMES);
+    private static final String[] INDEX_COLUMNS = {"id", "title", "isbn"};
+    private static final String[] ID_ISBN_COLUMNS = {"id", "isbn"};
+    private static final String[] ID_COLUMNS = {"id"};
+    private static final String[] ONE_COLUMNS = {"1"};
+
+    private static final StandInDatabase INSTANCE = new StandInDatabase();
+
+    private final NavigableMap<Integer, Object[]> books = new TreeMap<>();
+    private final Map<String, Integer> isbns = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int nextId = 1;
+
+    /**
+     * 查询结果：列名与行
+     */
+    static final class Rows {
+        final String[] columns;
+        final List<Object[]> rows;
+
+        Rows(String[] columns, List<Object[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private StandInDatabase() {
+    }
+
+    public static StandInDatabase getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 清空表并重置自增ID
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            books.clear();
+            isbns.clear();
+            nextId = 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 直接写入一行，用于准备测试数据
+     *
+     * @return 新行的ID
+     */
+    public int insert(String title, String author, String isbn, String category, String publishDate,
+                      String extraInfo) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            return insertRow(new Object[]{null, title, author, isbn, category, publishDate, extraInfo});
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Rows query(String sql, Object[] params) throws SQLException {
+        lock.readLock().lock();
+        try {
+            if (sql.startsWith("SELECT " + BOOK_COLUMNS + " FROM books WHERE id > ?")) {
+                return new Rows(ALL_COLUMNS, page(params, ALL_COLUMNS.length));
+            }
+            if (sql.startsWith("SELECT " + SUMMARY_COLUMNS + " FROM books WHERE id > ?")) {
+                return new Rows(SUMMARY_COLUMN_NAMES, page(params, SUMMARY_COLUMN_NAMES.length));
+            }
+            if (sql.startsWith("SELECT id, title, isbn FROM books WHERE id > ?")) {
+                return new Rows(INDEX_COLUMNS, page(params, INDEX_COLUMNS.length));
+            }
+            if (sql.startsWith("SELECT " + BOOK_COLUMNS + " FROM books WHERE id IN (")
+                    || sql.equals("SELECT " + BOOK_COLUMNS + " FROM books WHERE id = ?")) {
+                return new Rows(ALL_COLUMNS, byIds(params, ALL_COLUMNS.length));
+            }
+            if (sql.startsWith("SELECT " + SUMMARY_COLUMNS + " FROM books WHERE id IN (")) {
+                return new Rows(SUMMARY_COLUMN_NAMES, byIds(params, SUMMARY_COLUMN_NAMES.length));
+            }
+            if (sql.startsWith("SELECT id FROM books WHERE id IN (")) {
+                return new Rows(ID_COLUMNS, byIds(params, 1));
+            }
+            if (sql.startsWith("SELECT id, isbn FROM books WHERE isbn IN (")) {
+                List<Object[]> rows = new ArrayList<>();
+                for (Object isbn : params) {
+                    Integer id = isbn == null ? null : isbns.get(isbnKey((String) isbn));
+                    if (id != null) {
+                        rows.add(new Object[]{id, books.get(id)[3]});
+                    }
+                }
+                return new Rows(ID_ISBN_COLUMNS, rows);
+            }
+            if (sql.equals("SELECT 1 FROM books WHERE isbn = ?") || sql.equals("SELECT id FROM books WHERE isbn = ?")) {
+                Integer id = isbns.get(isbnKey((String) params[0]));
+                List<Object[]> rows = new ArrayList<>();
+                if (id != null) {
+                    rows.add(new Object[]{sql.startsWith("SELECT 1") ? 1 : id});
+                }
+                return new Rows(sql.startsWith("SELECT 1") ? ONE_COLUMNS : ID_COLUMNS, rows);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        throw new SQLFeatureNotSupportedException("替身数据库不支持的SQL: " + sql);
+    }
+
+    /**
+     * 执行写语句
+     *
+     * @param generatedKeys 多行 INSERT 时接收自增ID，可为null
+     * @return 影响的行数
+     */
+    int update(String sql, Object[] params, List<Integer> generatedKeys) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (sql.startsWith("INSERT INTO books (title, author, isbn, category, publish_date, extra_info) VALUES ")) {
+                int count = params.length / 6;
+                Set<String> seen = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    String key = isbnKey((String) params[i * 6 + 2]);
+                    if (isbns.containsKey(key) || !seen.add(key)) {
+                        throw new SQLIntegrityConstraintViolationException(
+                                "Duplicate entry '" + params[i * 6 + 2] + "' for key 'books.isbn'", "23000", 1062);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    Object[] row = new Object[ALL_COLUMNS.length];
+                    System.arraycopy(params, i * 6, row, 1, 6);
+                    int id = insertRow(row);
+                    if (generatedKeys != null) {
+                        generatedKeys.add(id);
+                    }
+                }
+                return count;
+            }
+            if (sql.equals("DELETE FROM books WHERE id = ?")) {
+                Object[] row = books.remove(params[0]);
+                if (row == null) {
+                    return 0;
+                }
+                isbns.remove(isbnKey((String) row[3]));
+                return 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        throw new SQLFeatureNotSupportedException("替身数据库不支持的SQL: " + sql);
+    }
+
+    private int insertRow(Object[] row) throws SQLException {
+        String key = isbnKey((String) row[3]);
+        if (isbns.containsKey(key)) {
+            throw new SQLIntegrityConstraintViolationException(
+                    "Duplicate entry '" + row[3] + "' for key 'books.isbn'", "23000", 1062);
+        }
+        int id = nextId++;
+        row[0] = id;
+        books.put(id, row);
+        isbns.put(key, id);
+        return id;
+    }
+
+    /**
+     * WHERE id > ? ORDER BY id LIMIT ?
+     */
+    private List<Object[]> page(Object[] params, int columns) {
+        int afterId = (Integer) params[0];
+        int limit = (Integer) params[1];
+        List<Object[]> rows = new ArrayList<>(Math.min(limit, 1024));
+        for (Object[] row : books.tailMap(afterId, false).values()) {
+            if (rows.size() == limit) {
+                break;
+            }
+            rows.add(project(row, columns));
+        }
+        return rows;
+    }
+
+    /**
+     * WHERE id IN (...) ORDER BY id，重复的ID只返回一行
+     */
+    private List<Object[]> byIds(Object[] params, int columns) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (Object id : params) {
+            ids.add((Integer) id);
+        }
+        List<Object[]> rows = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            Object[] row = books.get(id);
+            if (row != null) {
+                rows.add(project(row, columns));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 按列数投影：全部列、摘要的前六列、建索引用的 id, title, isbn 或只有 id
+     */
+    private static Object[] project(Object[] row, int columns) {
+        if (columns == ALL_COLUMNS.length) {
+            return row;
+        }
+        if (columns == SUMMARY_COLUMN_NAMES.length) {
+            return Arrays.copyOf(row, columns);
+        }
+        if (columns == INDEX_COLUMNS.length) {
+            return new Object[]{row[0], row[1], row[3]};
+        }
+        return new Object[]{row[0]};
+    }
+
+    private static String isbnKey(String isbn) {
+        return isbn == null ? null : isbn.toUpperCase(Locale.ROOT);
+    }
+}
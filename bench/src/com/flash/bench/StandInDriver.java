@@ -0,0 +1,253 @@
+package com.flash.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * 连接 {@link StandInDatabase} 的进程内JDBC驱动，地址为 jdbc:flashbench:任意名称
+ * <p>
+ * 连接、语句和结果集都是动态代理，只实现被测路径用到的方法，其余方法返回零值。
+ * 驱动本身几乎没有开销，测出的时间主要是连接池、DAO和对象映射的开销。
+ */
+public final class StandInDriver implements Driver {
+    private static final String URL_PREFIX = "jdbc:flashbench:";
+
+    static {
+        try {
+            DriverManager.registerDriver(new StandInDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        return (Connection) proxy(Connection.class, new ConnectionHandler());
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(StandInDriver.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * 方法返回类型的零值
+     */
+    private static Object zero(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private volatile boolean closed;
+        private boolean autoCommit = true;
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws SQLException {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return "StandInConnection@" + Integer.toHexString(System.identityHashCode(self));
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "isValid":
+                    return !closed;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class, new StatementHandler((String) args[0]));
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("连接已关闭");
+            }
+            return zero(method.getReturnType());
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final String sql;
+        private Object[] params = new Object[8];
+        private int paramCount;
+        private List<Integer> generatedKeys;
+        private boolean closed;
+
+        StatementHandler(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws SQLException {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return sql;
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "clearParameters":
+                    Arrays.fill(params, 0, paramCount, null);
+                    paramCount = 0;
+                    return null;
+                case "executeQuery":
+                    StandInDatabase.Rows rows = StandInDatabase.getInstance().query(sql, parameters());
+                    return proxy(ResultSet.class, new ResultSetHandler(rows.columns, rows.rows));
+                case "executeUpdate":
+                    generatedKeys = new ArrayList<>();
+                    return StandInDatabase.getInstance().update(sql, parameters(), generatedKeys);
+                case "getGeneratedKeys":
+                    List<Object[]> keys = new ArrayList<>();
+                    if (generatedKeys != null) {
+                        for (int id : generatedKeys) {
+                            keys.add(new Object[]{id});
+                        }
+                    }
+                    return proxy(ResultSet.class, new ResultSetHandler(new String[]{"GENERATED_KEY"}, keys));
+                default:
+                    break;
+            }
+            if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                int index = (Integer) args[0];
+                if (index > params.length) {
+                    params = Arrays.copyOf(params, Math.max(index, params.length * 2));
+                }
+                params[index - 1] = args[1];
+                paramCount = Math.max(paramCount, index);
+                return null;
+            }
+            if (name.startsWith("execute") || name.equals("addBatch")) {
+                throw new SQLFeatureNotSupportedException("替身数据库不支持 " + name + ": " + sql);
+            }
+            return zero(method.getReturnType());
+        }
+
+        private Object[] parameters() {
+            return Arrays.copyOf(params, paramCount);
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final String[] columns;
+        private final List<Object[]> rows;
+        private int position = -1;
+
+        ResultSetHandler(String[] columns, List<Object[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws SQLException {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "next":
+                    return ++position < rows.size();
+                case "getString":
+                    Object value = value(args[0]);
+                    return value == null ? null : value.toString();
+                case "getInt":
+                    Object number = value(args[0]);
+                    return number == null ? 0 : ((Number) number).intValue();
+                case "getLong":
+                    Object longValue = value(args[0]);
+                    return longValue == null ? 0L : ((Number) longValue).longValue();
+                case "getObject":
+                    return value(args[0]);
+                case "findColumn":
+                    return column((String) args[0]) + 1;
+                default:
+                    return zero(method.getReturnType());
+            }
+        }
+
+        private Object value(Object column) throws SQLException {
+            if (position < 0 || position >= rows.size()) {
+                throw new SQLException("结果集当前没有行");
+            }
+            int index = column instanceof Integer ? (Integer) column - 1 : column((String) column);
+            return rows.get(position)[index];
+        }
+
+        private int column(String label) throws SQLException {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equalsIgnoreCase(label)) {
+                    return i;
+                }
+            }
+            throw new SQLException("结果集中没有列: " + label);
+        }
+    }
+}
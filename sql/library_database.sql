@@ -34,7 +34,8 @@ CREATE TABLE `books` (
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_isbn` (`isbn`),
     KEY `idx_category` (`category`),
-    KEY `idx_title` (`title`)
+    KEY `idx_title` (`title`),
+    KEY `idx_update_time` (`update_time`)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '图书信息表';
 
 -- ----------------------------
@@ -1,24 +1,52 @@
 package com.flash;
 
-import com.flash.dao.BookDAO;
-import com.flash.dao.UserDAO;
+import com.flash.dao.EmbeddedBookDAO;
+import com.flash.dao.EmbeddedUserDAO;
+import com.flash.server.LibraryServer;
+import com.flash.storage.EmbeddedStore;
 import com.flash.ui.MenuHandler;
+import com.flash.utils.ConsoleUtil;
 import com.flash.utils.DatabaseUtil;
 
-import java.sql.Connection;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Arrays;
 
 public class LibrarySystem {
     public static void main(String[] args) {
-        try (Connection connection = DatabaseUtil.getConnection()) {
-            UserDAO userDAO = new UserDAO(connection);
-            BookDAO bookDAO = new BookDAO(connection);
-            
-            MenuHandler menuHandler = new MenuHandler(userDAO, bookDAO);
-            menuHandler.showMainMenu();
-            
+        if (args.length > 0 && "--server".equals(args[0])) {
+            LibraryServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        try {
+            String engine = DatabaseUtil.getConfig("storage.engine", "mysql");
+            if ("embedded".equalsIgnoreCase(engine)) {
+                startEmbedded();
+            } else if ("mysql".equalsIgnoreCase(engine)) {
+                startMysql();
+            } else {
+                ConsoleUtil.printError("未知的存储引擎: " + engine + "，可选 mysql 或 embedded");
+            }
         } catch (Exception e) {
             System.out.println("系统错误：" + e.getMessage());
             e.printStackTrace();
         }
     }
+
+    private static void startMysql() throws SQLException, IOException, InterruptedException {
+        MysqlStorage storage = MysqlStorage.start();
+        MenuHandler menuHandler = new MenuHandler(storage.getUserDAO(), storage.getBookDAO(), storage,
+                storage::getStatus);
+        menuHandler.showMainMenu();
+    }
+
+    /**
+     * 使用本地文件存储，不连接数据库；缓存、热启动、变更日志和备份只用于 MySQL
+     */
+    private static void startEmbedded() throws IOException {
+        EmbeddedStore store = EmbeddedStore.open(Paths.get(DatabaseUtil.getConfig("storage.embedded.dir", "data")));
+        MenuHandler menuHandler = new MenuHandler(new EmbeddedUserDAO(store), new EmbeddedBookDAO(store), store);
+        menuHandler.showMainMenu();
+    }
 }
@@ -0,0 +1,131 @@
+package com.flash;
+
+import com.flash.backup.BackupService;
+import com.flash.backup.WarmStart;
+import com.flash.dao.BookDAO;
+import com.flash.dao.CachingBookDAO;
+import com.flash.dao.UserDAO;
+import com.flash.journal.MutationJournal;
+import com.flash.utils.ConsoleUtil;
+import com.flash.utils.DatabaseUtil;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * MySQL 存储的启动和关闭，控制台和HTTP服务共用
+ * <p>
+ * 按 database.properties 选择是否带缓存的 BookDAO（cache.*），能热启动时从本地备份还原搜索索引
+ * 和图书目录（warmstart.enabled），否则扫描数据库建立索引并按需载入图书目录（catalog.enabled），
+ * 再打开变更日志（journal.enabled）并启动后台备份（backup.enabled）。关闭时按相反顺序释放。
+ */
+public final class MysqlStorage implements AutoCloseable {
+    private final UserDAO userDAO;
+    private final BookDAO bookDAO;
+    private final MutationJournal journal;
+    private final BackupService backupService;
+
+    private MysqlStorage(UserDAO userDAO, BookDAO bookDAO, MutationJournal journal, BackupService backupService) {
+        this.userDAO = userDAO;
+        this.bookDAO = bookDAO;
+        this.journal = journal;
+        this.backupService = backupService;
+    }
+
+    /**
+     * 按配置创建 DAO 并完成启动时的准备工作
+     */
+    public static MysqlStorage start() throws SQLException, IOException, InterruptedException {
+        DataSource dataSource = DatabaseUtil.getDataSource();
+        DataSource readDataSource = DatabaseUtil.getReadDataSource();
+        UserDAO userDAO = new UserDAO(dataSource, readDataSource);
+        BookDAO bookDAO = DatabaseUtil.getBooleanConfig("cache.enabled", true)
+                ? new CachingBookDAO(dataSource, readDataSource, DatabaseUtil.getIntConfig("cache.maxBooks", 10000),
+                        DatabaseUtil.getLongConfig("cache.ttl", 300000))
+                : new BookDAO(dataSource, readDataSource);
+        boolean withCatalog = DatabaseUtil.getBooleanConfig("catalog.enabled", false);
+        WarmStart warmStart = WarmStart.fromConfig();
+        boolean warm = false;
+        if (DatabaseUtil.getBooleanConfig("warmstart.enabled", true)) {
+            try {
+                warm = warmStart.start(bookDAO, withCatalog);
+            } catch (IOException e) {
+                ConsoleUtil.printWarning("热启动失败，改为从数据库构建索引: " + e.getMessage());
+            }
+        }
+        if (warm) {
+            ConsoleUtil.printInfo(warmStart.getStatus());
+        } else {
+            ConsoleUtil.withSpinner("正在构建搜索索引", () -> {
+                bookDAO.buildSearchIndexes();
+                return null;
+            });
+        }
+        // 热启动时列式目录在后台对账后由还原的目录载入
+        if (withCatalog && !warm) {
+            ConsoleUtil.withSpinner("正在载入图书目录", () -> {
+                bookDAO.buildCatalog();
+                return null;
+            });
+            ConsoleUtil.printInfo(bookDAO.getCatalog().getStatus());
+        }
+
+        MutationJournal journal = null;
+        if (DatabaseUtil.getBooleanConfig("journal.enabled", true)) {
+            journal = MutationJournal.fromConfig();
+            bookDAO.setJournal(journal);
+            userDAO.setJournal(journal);
+        }
+
+        BackupService backupService = null;
+        if (DatabaseUtil.getBooleanConfig("backup.enabled", true)) {
+            backupService = BackupService.fromConfig();
+            backupService.setJournal(journal);
+            backupService.start();
+        }
+        return new MysqlStorage(userDAO, bookDAO, journal, backupService);
+    }
+
+    public UserDAO getUserDAO() {
+        return userDAO;
+    }
+
+    public BookDAO getBookDAO() {
+        return bookDAO;
+    }
+
+    /**
+     * 连接池、语句缓存、只读副本、图书缓存和备份的运行状态
+     */
+    public String getStatus() {
+        StringBuilder status = new StringBuilder(DatabaseUtil.getStatus());
+        if (bookDAO instanceof CachingBookDAO) {
+            status.append('\n').append(((CachingBookDAO) bookDAO).getCacheStatus());
+        }
+        if (journal != null && journal.getMissedCount() > 0) {
+            status.append("\n变更日志已降级，").append(journal.getMissedCount()).append(" 条已提交的变更未记入日志");
+        }
+        if (backupService != null) {
+            status.append("\n备份 - ").append(backupService.getStatus());
+        }
+        return status.toString();
+    }
+
+    /**
+     * 停止备份，刷完并关闭变更日志，再关闭连接池
+     */
+    @Override
+    public void close() throws IOException, SQLException {
+        if (backupService != null) {
+            backupService.stop();
+        }
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } finally {
+            DatabaseUtil.shutdown();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.flash.backup;
+
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 增量备份段文件，保存一次增量备份的全部记录
+ * <p>
+ * 文件头为魔数、版本、序号和水位；之后逐条写入记录，UPSERT 记录保存整行，
+ * DELETE 记录（墓碑）只保存图书ID；文件尾为记录条数和此前全部字节的CRC32。
+ * 段先写入临时文件，完成后原子重命名，因此目录中的段文件总是完整的。
+ */
+public final class BackupSegment {
+    private static final int MAGIC = 0x464C424B;
+    private static final short VERSION = 1;
+    private static final byte END = 0;
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+
+    private BackupSegment() {
+    }
+
+    /**
+     * 创建段写入器，数据写入同目录下的临时文件，commit() 后原子重命名为 target
+     *
+     * @param watermark 本段覆盖到的数据库时间
+     */
+    public static Writer create(Path target, long sequence, Timestamp watermark) throws IOException {
+        return new Writer(target, sequence, watermark);
+    }
+
+    /**
+     * 顺序读取段中的全部记录，校验和不一致时抛出异常
+     *
+     * @return 记录条数
+     */
+    public static int read(Path file, Consumer<Book> upserts, IntConsumer deletes) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是备份文件: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("不支持的备份文件版本 " + version + ": " + file);
+            }
+            in.readLong();
+            in.readLong();
+
+            int count = 0;
+            byte op;
+            while ((op = in.readByte()) != END) {
+                if (op == UPSERT) {
+                    int id = in.readInt();
+                    String title = in.readUTF();
+                    String author = in.readUTF();
+                    String isbn = in.readUTF();
+                    String category = in.readUTF();
+                    String publishDate = in.readUTF();
+                    String extraInfo = in.readBoolean() ? in.readUTF() : null;
+                    in.readLong();
+                    upserts.accept(BookFactory.createBook(category, id, title, author, isbn, publishDate, extraInfo));
+                } else if (op == DELETE) {
+                    deletes.accept(in.readInt());
+                } else {
+                    throw new IOException("备份文件已损坏，未知记录类型 " + op + ": " + file);
+                }
+                count++;
+            }
+            long expected = crc.getValue();
+            int recorded = in.readInt();
+            long checksum = in.readLong();
+            if (recorded != count || checksum != expected) {
+                throw new IOException("备份文件校验失败: " + file);
+            }
+            return count;
+        } catch (EOFException | UTFDataFormatException e) {
+            throw new IOException("备份文件已损坏: " + file, e);
+        }
+    }
+
+    /**
+     * 读取段文件头中的水位
+     */
+    public static Timestamp readWatermark(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是备份文件: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("不支持的备份文件版本 " + version + ": " + file);
+            }
+            in.readLong();
+            return new Timestamp(in.readLong());
+        } catch (EOFException e) {
+            throw new IOException("备份文件已损坏: " + file, e);
+        }
+    }
+
+    /**
+     * 段写入器，commit() 之前关闭时丢弃临时文件
+     */
+    public static final class Writer implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final CRC32 crc = new CRC32();
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private int count;
+        private boolean committed;
+
+        private Writer(Path target, long sequence, Timestamp watermark) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), crc));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(sequence);
+            out.writeLong(watermark == null ? 0 : watermark.getTime());
+        }
+
+        /**
+         * 写入结果集当前行，列依次为 id, title, author, isbn, category, publish_date, extra_info, update_time
+         */
+        public void writeRow(ResultSet rs) throws SQLException, IOException {
+            out.writeByte(UPSERT);
+            out.writeInt(rs.getInt(1));
+            out.writeUTF(rs.getString(2));
+            out.writeUTF(rs.getString(3));
+            out.writeUTF(rs.getString(4));
+            out.writeUTF(rs.getString(5));
+            out.writeUTF(rs.getString(6));
+            String extraInfo = rs.getString(7);
+            out.writeBoolean(extraInfo != null);
+            if (extraInfo != null) {
+                out.writeUTF(extraInfo);
+            }
+            Timestamp updateTime = rs.getTimestamp(8);
+            out.writeLong(updateTime == null ? 0 : updateTime.getTime());
+            count++;
+        }
+
+        /**
+         * 写入删除墓碑
+         */
+        public void writeDelete(int id) throws IOException {
+            out.writeByte(DELETE);
+            out.writeInt(id);
+            count++;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * 写入文件尾并刷盘，然后原子重命名为正式段文件
+         */
+        public void commit() throws IOException {
+            out.writeByte(END);
+            long checksum = crc.getValue();
+            out.writeInt(count);
+            out.writeLong(checksum);
+            out.flush();
+            channel.force(true);
+            out.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
\ No newline at end of file
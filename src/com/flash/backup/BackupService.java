@@ -0,0 +1,493 @@
+package com.flash.backup;
+
+import com.flash.journal.MutationJournal;
+import com.flash.pojo.Book;
+import com.flash.utils.DatabaseUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 图书目录的后台增量备份服务
+ * <p>
+ * 启动后先续接目录中最近的全量快照（{@link SnapshotFile}）及其增量，没有可用的备份时写一次全量快照，
+ * 之后每个周期只备份 update_time 不早于上次水位的行，
+ * 备份开销与变更量而不是目录大小成正比。水位取每个周期开始时的数据库时间，
+ * 查询时再向前重叠 backup.overlap 毫秒，覆盖周期开始前已写入但稍后才提交的事务。
+ * 删除不会更新 update_time，因此每个周期比较表中的行数和ID之和与已备份的ID集合，
+ * 不一致时才扫描一次全部ID，为消失的ID写入删除墓碑。增量写入 {@link BackupSegment}。
+ * <p>
+ * 备份在独立的守护线程上运行，每个周期从连接池借用自己的连接，不占用菜单会话的连接。
+ */
+public class BackupService {
+    private static final String DB_TIME_SQL = "SELECT CURRENT_TIMESTAMP";
+    /** 列序与 {@link BackupSegment.Writer#writeRow(ResultSet)} 一致 */
+    private static final String BOOK_COLUMNS = "id, title, author, isbn, category, publish_date, extra_info";
+    private static final String FULL_PAGE_SQL =
+            "SELECT " + BOOK_COLUMNS + " FROM books WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CHANGED_PAGE_SQL =
+            "SELECT " + BOOK_COLUMNS + ", update_time FROM books WHERE update_time >= ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String ID_PAGE_SQL =
+            "SELECT id FROM books WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CHECKSUM_SQL = "SELECT COUNT(*), COALESCE(SUM(id), 0) FROM books";
+    private static final int PAGE_SIZE = 1000;
+    private static final String FULL_PREFIX = "full-";
+    private static final String FULL_SUFFIX = ".snap";
+    private static final String DELTA_PREFIX = "delta-";
+    private static final String DELTA_SUFFIX = ".bak";
+
+    private final Path directory;
+    private final long interval;
+    private final long overlap;
+    private final int retainFull;
+    private final ScheduledExecutorService scheduler;
+
+    /** 以下状态只在备份线程上访问 */
+    private final BitSet knownIds = new BitSet();
+    private long knownIdSum;
+    private long sequence;
+    private Timestamp watermark;
+    /** 上次全量快照时变更日志的降级计数 */
+    private long journalMissed;
+    /** 是否已尝试续接目录中已有的备份 */
+    private boolean resumed;
+
+    private volatile String status = "尚未备份";
+    private volatile MutationJournal journal;
+
+    /**
+     * @param directory 备份目录
+     * @param interval 增量备份周期(毫秒)
+     * @param overlap 增量查询相对水位向前重叠的时间(毫秒)
+     * @param retainFull 保留的全量快照个数，更早的快照及其增量会被删除
+     */
+    public BackupService(Path directory, long interval, long overlap, int retainFull) {
+        this.directory = directory;
+        this.interval = Math.max(1000, interval);
+        this.overlap = Math.max(0, overlap);
+        this.retainFull = Math.max(1, retainFull);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "catalog-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 按 database.properties 中的 backup.* 配置创建备份服务
+     */
+    public static BackupService fromConfig() {
+        return new BackupService(
+                Paths.get(DatabaseUtil.getConfig("backup.dir", "backup")),
+                DatabaseUtil.getLongConfig("backup.interval", 5 * 60 * 1000L),
+                DatabaseUtil.getLongConfig("backup.overlap", 5000),
+                DatabaseUtil.getIntConfig("backup.retainFull", 2));
+    }
+
+    /**
+     * 启动后台备份，第一个周期续接已有的备份，无法续接时写入全量快照
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    // 上次进程退出时未写完的段
+                    Files.delete(file);
+                }
+            }
+        }
+        sequence = listBackupFiles(directory).stream().mapToLong(BackupService::sequenceOf).max().orElse(0);
+        scheduler.scheduleWithFixedDelay(this::runCycle, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即执行一次备份并等待完成
+     */
+    public void backupNow() throws InterruptedException {
+        try {
+            scheduler.submit(this::runCycle).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("备份任务执行失败", e.getCause());
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 设置变更日志后，清理快照时一并删除最早保留的快照已覆盖的日志段
+     */
+    public void setJournal(MutationJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 最近一次备份的结果
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    private void runCycle() {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseUtil.getConnection()) {
+            if (!resumed) {
+                resumed = true;
+                resume();
+            }
+            // 日志降级后缺少的变更只能由新的全量快照覆盖
+            MutationJournal log = journal;
+            long missed = log == null ? 0 : log.getMissedCount();
+            boolean full = watermark == null || missed > journalMissed;
+            int records = full ? writeFull(connection) : writeDelta(connection);
+            if (full) {
+                journalMissed = missed;
+            }
+            pruneSegments();
+            status = String.format("%s备份完成，写入 %d 条记录，耗时 %dms，水位 %s",
+                    full ? "全量" : "增量", records, (System.nanoTime() - start) / 1_000_000, watermark);
+        } catch (SQLException | IOException | RuntimeException e) {
+            status = "备份失败: " + e.getMessage();
+            System.err.println("【备份】" + status);
+        }
+    }
+
+    /**
+     * 从最近的全量快照及其增量还原已备份的ID集合，以最后一段的水位继续增量备份。
+     * 备份不可读时保持没有水位，由本周期重新写入全量快照
+     */
+    private void resume() {
+        Map<Integer, Book> catalog = new HashMap<>();
+        Timestamp mark;
+        try {
+            mark = loadCatalog(directory, catalog);
+            if (mark == null) {
+                return;
+            }
+            List<Path> deltas = deltasAfter(directory, sequenceOf(latestSnapshot(directory)));
+            if (!deltas.isEmpty()) {
+                mark = BackupSegment.readWatermark(deltas.get(deltas.size() - 1));
+            }
+        } catch (IOException e) {
+            System.err.println("【备份】无法续接已有备份，将写入全量快照: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        knownIds.clear();
+        knownIdSum = 0;
+        for (int id : catalog.keySet()) {
+            knownIds.set(id);
+            knownIdSum += id;
+        }
+        watermark = mark;
+    }
+
+    /**
+     * 写入全量快照，并以快照开始时的数据库时间作为水位
+     */
+    private int writeFull(Connection connection) throws SQLException, IOException {
+        Timestamp cycleStart = databaseTime(connection);
+        BitSet ids = new BitSet();
+        long idSum = 0;
+        try (SnapshotFile.Writer writer = SnapshotFile.create(fullFile(directory, sequence + 1), cycleStart);
+             PreparedStatement statement = connection.prepareStatement(FULL_PAGE_SQL)) {
+            int afterId = 0;
+            int rows;
+            do {
+                statement.setInt(1, afterId);
+                statement.setInt(2, PAGE_SIZE);
+                rows = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        afterId = rs.getInt(1);
+                        writer.add(afterId, rs.getString(2), rs.getString(3), rs.getString(4),
+                                rs.getString(5), rs.getString(6), rs.getString(7));
+                        ids.set(afterId);
+                        idSum += afterId;
+                        rows++;
+                    }
+                }
+            } while (rows == PAGE_SIZE);
+            writer.commit();
+            sequence++;
+            knownIds.clear();
+            knownIds.or(ids);
+            knownIdSum = idSum;
+            watermark = cycleStart;
+            return (int) writer.getRecordCount();
+        }
+    }
+
+    /**
+     * 写入水位之后变更的行和删除墓碑，没有变更时不生成段文件
+     */
+    private int writeDelta(Connection connection) throws SQLException, IOException {
+        Timestamp cycleStart = databaseTime(connection);
+        // 段未能提交时恢复已备份的ID集合，下个周期重新备份这些变更和删除
+        BitSet idsBefore = (BitSet) knownIds.clone();
+        long idSumBefore = knownIdSum;
+        try (BackupSegment.Writer writer = BackupSegment.create(
+                deltaFile(directory, sequence + 1), sequence + 1, cycleStart)) {
+            try (PreparedStatement statement = connection.prepareStatement(CHANGED_PAGE_SQL)) {
+                Timestamp since = new Timestamp(watermark.getTime() - overlap);
+                int afterId = 0;
+                int rows;
+                do {
+                    statement.setTimestamp(1, since);
+                    statement.setInt(2, afterId);
+                    statement.setInt(3, PAGE_SIZE);
+                    rows = 0;
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            writer.writeRow(rs);
+                            afterId = rs.getInt(1);
+                            if (!knownIds.get(afterId)) {
+                                knownIds.set(afterId);
+                                knownIdSum += afterId;
+                            }
+                            rows++;
+                        }
+                    }
+                } while (rows == PAGE_SIZE);
+            }
+            writeTombstones(connection, writer);
+
+            if (writer.getCount() > 0) {
+                writer.commit();
+                sequence++;
+            }
+            watermark = cycleStart;
+            return writer.getCount();
+        } catch (SQLException | IOException | RuntimeException e) {
+            knownIds.clear();
+            knownIds.or(idsBefore);
+            knownIdSum = idSumBefore;
+            throw e;
+        }
+    }
+
+    /**
+     * 行数与ID之和都和已备份的ID集合一致时认为没有删除，否则扫描全部ID找出被删除的行
+     */
+    private void writeTombstones(Connection connection, BackupSegment.Writer writer)
+            throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(CHECKSUM_SQL);
+             ResultSet rs = statement.executeQuery()) {
+            if (rs.next() && rs.getLong(1) == knownIds.cardinality() && rs.getLong(2) == knownIdSum) {
+                return;
+            }
+        }
+
+        BitSet current = new BitSet();
+        long currentSum = 0;
+        try (PreparedStatement statement = connection.prepareStatement(ID_PAGE_SQL)) {
+            int afterId = 0;
+            int rows;
+            do {
+                statement.setInt(1, afterId);
+                statement.setInt(2, PAGE_SIZE);
+                rows = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        afterId = rs.getInt(1);
+                        current.set(afterId);
+                        currentSum += afterId;
+                        rows++;
+                    }
+                }
+            } while (rows == PAGE_SIZE);
+        }
+        BitSet deleted = (BitSet) knownIds.clone();
+        deleted.andNot(current);
+        for (int id = deleted.nextSetBit(0); id >= 0; id = deleted.nextSetBit(id + 1)) {
+            writer.writeDelete(id);
+        }
+        // 扫描期间新增但尚未备份的行会在下个周期按 update_time 备份
+        knownIds.clear();
+        knownIds.or(current);
+        knownIdSum = currentSum;
+    }
+
+    private static Timestamp databaseTime(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DB_TIME_SQL);
+             ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    /**
+     * 只保留最近 retainFull 个全量快照及其之后的增量
+     */
+    private void pruneSegments() throws IOException {
+        List<Path> files = listBackupFiles(directory);
+        List<Long> fulls = new ArrayList<>();
+        for (Path file : files) {
+            if (isSnapshot(file)) {
+                fulls.add(sequenceOf(file));
+            }
+        }
+        if (fulls.isEmpty()) {
+            return;
+        }
+        long oldestKept = fulls.get(Math.max(0, fulls.size() - retainFull));
+        for (Path file : files) {
+            if (sequenceOf(file) < oldestKept) {
+                Files.delete(file);
+            }
+        }
+        MutationJournal log = journal;
+        if (log != null) {
+            // 按时间点恢复最早从这个快照开始，之前的日志不再需要
+            log.purgeBefore(snapshotWatermark(fullFile(directory, oldestKept)) - overlap);
+        }
+    }
+
+    private static Path fullFile(Path directory, long sequence) {
+        return directory.resolve(String.format("%s%012d%s", FULL_PREFIX, sequence, FULL_SUFFIX));
+    }
+
+    private static Path deltaFile(Path directory, long sequence) {
+        return directory.resolve(String.format("%s%012d%s", DELTA_PREFIX, sequence, DELTA_SUFFIX));
+    }
+
+    private static boolean isSnapshot(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FULL_PREFIX) && name.endsWith(FULL_SUFFIX);
+    }
+
+    private static boolean isDelta(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(DELTA_PREFIX) && name.endsWith(DELTA_SUFFIX);
+    }
+
+    /**
+     * 备份文件名中的序号，全量快照和增量段共用一个递增序列
+     */
+    public static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    /**
+     * 按序号升序列出目录中的快照和增量段
+     */
+    private static List<Path> listBackupFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> isSnapshot(file) || isDelta(file))
+                    .sorted(Comparator.comparingLong(BackupService::sequenceOf))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 最近的全量快照，没有时返回null
+     */
+    public static Path latestSnapshot(Path directory) throws IOException {
+        Path latest = null;
+        for (Path file : listBackupFiles(directory)) {
+            if (isSnapshot(file)) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 水位不晚于 untilMillis 的最近一个全量快照，没有时返回null
+     */
+    public static Path latestSnapshotBefore(Path directory, long untilMillis) throws IOException {
+        Path latest = null;
+        for (Path file : listBackupFiles(directory)) {
+            if (isSnapshot(file) && snapshotWatermark(file) <= untilMillis) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+
+    private static long snapshotWatermark(Path file) throws IOException {
+        try (SnapshotFile snapshot = SnapshotFile.open(file)) {
+            return snapshot.getWatermark().getTime();
+        }
+    }
+
+    /**
+     * 序号大于 sequence 的增量段，按序号升序排列
+     */
+    public static List<Path> deltasAfter(Path directory, long sequence) throws IOException {
+        List<Path> deltas = new ArrayList<>();
+        for (Path file : listBackupFiles(directory)) {
+            if (isDelta(file) && sequenceOf(file) > sequence) {
+                deltas.add(file);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * 从最近的全量快照和其后的增量还原图书目录，快照按块并行解码
+     *
+     * @return 以图书ID升序排列的图书
+     */
+    public static Map<Integer, Book> loadCatalog(Path directory) throws IOException, InterruptedException {
+        Map<Integer, Book> catalog = new TreeMap<>();
+        if (loadCatalog(directory, catalog) == null) {
+            throw new IOException("备份目录中没有全量快照: " + directory);
+        }
+        return catalog;
+    }
+
+    /**
+     * 把最近的全量快照和其后的增量还原到 catalog
+     *
+     * @return 快照的水位，没有快照时返回null
+     */
+    static Timestamp loadCatalog(Path directory, Map<Integer, Book> catalog)
+            throws IOException, InterruptedException {
+        Path snapshotFile = latestSnapshot(directory);
+        if (snapshotFile == null) {
+            return null;
+        }
+        Timestamp watermark;
+        try (SnapshotFile snapshot = SnapshotFile.open(snapshotFile)) {
+            watermark = snapshot.getWatermark();
+            snapshot.readParallel(Runtime.getRuntime().availableProcessors(), books -> {
+                for (Book book : books) {
+                    catalog.put(book.getId(), book);
+                }
+            });
+        }
+        for (Path delta : deltasAfter(directory, sequenceOf(snapshotFile))) {
+            BackupSegment.read(delta, book -> catalog.put(book.getId(), book), catalog::remove);
+        }
+        return watermark;
+    }
+}
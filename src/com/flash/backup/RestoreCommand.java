@@ -0,0 +1,245 @@
+package com.flash.backup;
+
+import com.flash.dao.BatchInsertResult;
+import com.flash.dao.BookDAO;
+import com.flash.dao.UserDAO;
+import com.flash.journal.JournalReader;
+import com.flash.pojo.Book;
+import com.flash.pojo.User;
+import com.flash.utils.ConsoleUtil;
+import com.flash.utils.DatabaseUtil;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 从备份目录恢复图书数据到数据库
+ * <p>
+ * 用法: java com.flash.backup.RestoreCommand [备份目录] [--threads N] [--batch N]
+ * [--journal 日志目录] [--until "yyyy-MM-dd HH:mm:ss"]
+ * <p>
+ * 最近的全量快照按块并行解码，解码好的块在主线程上分批写入数据库，解码与写库同时进行；
+ * 之后按序号依次应用快照之后的增量段，包括删除墓碑，再回放变更日志中快照水位之后的记录。
+ * 指定 --until 时按时间点恢复：选用水位不晚于该时间的最近快照，跳过增量段，
+ * 只回放变更日志中到该时间为止的记录。用户表不在快照中，日志中的用户注册全部回放，已存在的用户跳过。
+ * 图书按原ID写入，已存在的ID被覆盖，数据库中多出的、备份里没有的图书不会被删除。
+ */
+public class RestoreCommand {
+    private final Path directory;
+    private final int threads;
+    private final int batchSize;
+    private final Path journalDirectory;
+    private final Timestamp until;
+    private final long overlap;
+    private final Map<BatchInsertResult.Status, Long> counts = new EnumMap<>(BatchInsertResult.Status.class);
+
+    /**
+     * @param journalDirectory 变更日志目录，null 表示不回放日志
+     * @param until 恢复到的时间点，null 表示恢复到最新
+     * @param overlap 回放日志时相对快照水位向前重叠的时间(毫秒)，覆盖数据库与应用之间的时钟偏差
+     */
+    public RestoreCommand(Path directory, int threads, int batchSize, Path journalDirectory, Timestamp until,
+                          long overlap) {
+        this.directory = directory;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.journalDirectory = journalDirectory;
+        this.until = until;
+        this.overlap = overlap;
+        for (BatchInsertResult.Status status : BatchInsertResult.Status.values()) {
+            counts.put(status, 0L);
+        }
+    }
+
+    public static void main(String[] args) {
+        Path directory = Paths.get(DatabaseUtil.getConfig("backup.dir", "backup"));
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchSize = BookDAO.DEFAULT_BATCH_SIZE;
+        Path journalDirectory = Paths.get(DatabaseUtil.getConfig("journal.dir", "journal"));
+        Timestamp until = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--batch".equals(args[i]) && i + 1 < args.length) {
+                    batchSize = Integer.parseInt(args[++i]);
+                } else if ("--journal".equals(args[i]) && i + 1 < args.length) {
+                    journalDirectory = Paths.get(args[++i]);
+                } else if ("--until".equals(args[i]) && i + 1 < args.length) {
+                    until = Timestamp.valueOf(args[++i]);
+                } else {
+                    directory = Paths.get(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            ConsoleUtil.printError("参数格式错误: " + e.getMessage());
+            System.out.println("用法: java com.flash.backup.RestoreCommand [备份目录] [--threads N] [--batch N] "
+                    + "[--journal 日志目录] [--until \"yyyy-MM-dd HH:mm:ss\"]");
+            System.exit(2);
+        }
+
+        int exitCode = 0;
+        try {
+            new RestoreCommand(directory, threads, batchSize, journalDirectory, until,
+                    DatabaseUtil.getLongConfig("backup.overlap", 5000)).run();
+        } catch (IOException | SQLException | InterruptedException | RuntimeException e) {
+            ConsoleUtil.printError("恢复失败: " + e.getMessage());
+            exitCode = 1;
+        } finally {
+            try {
+                DatabaseUtil.shutdown();
+            } catch (SQLException e) {
+                ConsoleUtil.printWarning(e.getMessage());
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * 执行恢复
+     */
+    public void run() throws IOException, SQLException, InterruptedException {
+        Path snapshotFile = until == null ? BackupService.latestSnapshot(directory)
+                : BackupService.latestSnapshotBefore(directory, until.getTime());
+        if (snapshotFile == null) {
+            throw new IOException(until == null ? "备份目录中没有全量快照: " + directory
+                    : "备份目录中没有 " + until + " 之前的全量快照: " + directory);
+        }
+        boolean hasJournal = journalDirectory != null && !JournalReader.segments(journalDirectory).isEmpty();
+        if (until != null && !hasJournal) {
+            throw new IOException("没有变更日志，无法恢复到指定时间点: " + journalDirectory);
+        }
+        long start = System.nanoTime();
+        DataSource dataSource = DatabaseUtil.getDataSource();
+        try (SnapshotFile snapshot = SnapshotFile.open(snapshotFile)) {
+            BookDAO bookDAO = new BookDAO(dataSource);
+            ConsoleUtil.printInfo(String.format("正在恢复快照 %s（%d 本图书，%d 个数据块，备份时间 %s）",
+                    snapshotFile.getFileName(), snapshot.getRecordCount(), snapshot.getBlockCount(),
+                    snapshot.getWatermark()));
+            long[] restored = {0};
+            snapshot.readParallel(threads, books -> {
+                record(bookDAO.restoreBooks(books, batchSize));
+                restored[0] += books.size();
+                ConsoleUtil.printProgressBar((int) (restored[0] * 1000 / Math.max(1, snapshot.getRecordCount())), 1000);
+            });
+            System.out.println();
+
+            if (until == null) {
+                for (Path delta : BackupService.deltasAfter(directory, BackupService.sequenceOf(snapshotFile))) {
+                    applyDelta(bookDAO, delta);
+                }
+            }
+            if (hasJournal) {
+                replayJournal(bookDAO, new UserDAO(dataSource), snapshot.getWatermark().getTime() - overlap);
+            }
+        }
+        ConsoleUtil.printSuccess(String.format("恢复完成，新增: %d, 覆盖: %d, ISBN冲突: %d, 失败: %d，耗时 %dms",
+                counts.get(BatchInsertResult.Status.INSERTED), counts.get(BatchInsertResult.Status.UPDATED),
+                counts.get(BatchInsertResult.Status.DUPLICATE), counts.get(BatchInsertResult.Status.FAILED),
+                (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * 应用一个增量段：先写入变更的行，再执行删除墓碑
+     */
+    private void applyDelta(BookDAO bookDAO, Path delta) throws IOException, SQLException {
+        List<Book> upserts = new ArrayList<>();
+        List<Integer> deletes = new ArrayList<>();
+        BackupSegment.read(delta, upserts::add, deletes::add);
+        record(bookDAO.restoreBooks(upserts, batchSize));
+        int deleted = 0;
+        for (int id : deletes) {
+            try {
+                if (bookDAO.deleteBook(id)) {
+                    deleted++;
+                }
+            } catch (SQLException e) {
+                // 如仍有借阅记录引用该图书
+                ConsoleUtil.printWarning("图书 " + id + " 删除失败: " + e.getMessage());
+            }
+        }
+        ConsoleUtil.printInfo(String.format("已应用增量 %s（变更 %d，删除 %d）",
+                delta.getFileName(), upserts.size(), deleted));
+    }
+
+    /**
+     * 按顺序回放变更日志：图书记录从 fromMillis 开始，用户注册从头开始，都截止到 until。
+     * 连续的图书写入合并成批，遇到删除或用户注册前先写入已攒下的批
+     */
+    private void replayJournal(BookDAO bookDAO, UserDAO userDAO, long fromMillis)
+            throws IOException, SQLException {
+        List<Book> puts = new ArrayList<>();
+        int[] deleted = {0};
+        int[] users = {0};
+        long replayed = JournalReader.replay(journalDirectory, 0,
+                until == null ? Long.MAX_VALUE : until.getTime(), new JournalReader.Handler<SQLException>() {
+                    @Override
+                    public void bookPut(long timestamp, Book book) throws SQLException {
+                        if (timestamp < fromMillis) {
+                            return;
+                        }
+                        puts.add(book);
+                        if (puts.size() >= batchSize) {
+                            flush();
+                        }
+                    }
+
+                    @Override
+                    public void bookDeleted(long timestamp, int id) throws SQLException {
+                        if (timestamp < fromMillis) {
+                            return;
+                        }
+                        flush();
+                        try {
+                            if (bookDAO.deleteBook(id)) {
+                                deleted[0]++;
+                            }
+                        } catch (SQLException e) {
+                            ConsoleUtil.printWarning("图书 " + id + " 删除失败: " + e.getMessage());
+                        }
+                    }
+
+                    @Override
+                    public void userRegistered(long timestamp, User user) throws SQLException {
+                        flush();
+                        try {
+                            if (userDAO.registerUser(user)) {
+                                users[0]++;
+                            }
+                        } catch (SQLIntegrityConstraintViolationException e) {
+                            // 用户已存在
+                        }
+                    }
+
+                    private void flush() throws SQLException {
+                        if (!puts.isEmpty()) {
+                            record(bookDAO.restoreBooks(puts, batchSize));
+                            puts.clear();
+                        }
+                    }
+                });
+        if (!puts.isEmpty()) {
+            record(bookDAO.restoreBooks(puts, batchSize));
+        }
+        ConsoleUtil.printInfo(String.format("已回放变更日志 %d 条（删除图书 %d，注册用户 %d）%s",
+                replayed, deleted[0], users[0], until == null ? "" : "，截止到 " + until));
+    }
+
+    private void record(BatchInsertResult result) {
+        for (BatchInsertResult.Status status : BatchInsertResult.Status.values()) {
+            counts.merge(status, (long) result.count(status), Long::sum);
+        }
+        for (BatchInsertResult.Row row : result.getRows(BatchInsertResult.Status.FAILED)) {
+            ConsoleUtil.printWarning("图书 " + row.getBook().getId() + " 恢复失败: " + row.getMessage());
+        }
+    }
+}
\ No newline at end of file
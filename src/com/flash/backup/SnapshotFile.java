@@ -0,0 +1,480 @@
+package com.flash.backup;
+
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * 二进制全量快照文件
+ * <p>
+ * 文件由定长文件头、若干数据块、字典和块索引组成。分类和额外信息取值重复度高，存为字典序号；
+ * 书名、作者、ISBN存为变长整数长度前缀的UTF-8；出版日期压缩为 yyyymmdd 整数；
+ * 图书ID按块内差值编码。每个块独立解码并带有CRC32，块索引记录各块的位置、行数和首个ID，
+ * 因此恢复时可以按块并行解码。读取时按块映射文件（MappedByteBuffer），不经过堆内拷贝。
+ * <pre>
+ * 文件头: 魔数 版本 保留 水位 字典偏移 索引偏移 块数 总行数 元数据CRC 文件头CRC
+ * 数据块: 记录...
+ * 字典:   个数 字符串...
+ * 块索引: (偏移 长度 行数 首个ID CRC)...
+ * </pre>
+ */
+public final class SnapshotFile implements Closeable {
+    private static final int MAGIC = 0x464C534E;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 52;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    /** 每块最多的行数，也是并行恢复的最小单位 */
+    private static final int BLOCK_RECORDS = 4096;
+    private static final int MAX_DICTIONARY_SIZE = 65536;
+
+    /** 字典引用：0为null，1为随后内联的字符串，n+2为字典第n项 */
+    private static final int REF_NULL = 0;
+    private static final int REF_INLINE = 1;
+    private static final int REF_BASE = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long watermark;
+    private final long recordCount;
+    private final String[] dictionary;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockRecords;
+    private final int[] blockFirstIds;
+    private final int[] blockChecksums;
+
+    private SnapshotFile(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("快照文件已损坏: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("不是快照文件: " + file);
+            }
+            if (header.getShort(4) != VERSION) {
+                throw new IOException("不支持的快照文件版本 " + header.getShort(4) + ": " + file);
+            }
+            if (crc(header, 0, HEADER_SIZE - 4) != header.getInt(HEADER_SIZE - 4)) {
+                throw new IOException("快照文件头校验失败: " + file);
+            }
+            watermark = header.getLong(8);
+            long dictionaryOffset = header.getLong(16);
+            long indexOffset = header.getLong(24);
+            int blockCount = header.getInt(32);
+            recordCount = header.getLong(36);
+            int metaChecksum = header.getInt(44);
+
+            long metaEnd = indexOffset + (long) blockCount * INDEX_ENTRY_SIZE;
+            if (dictionaryOffset < HEADER_SIZE || indexOffset < dictionaryOffset || metaEnd > channel.size()) {
+                throw new IOException("快照文件已损坏: " + file);
+            }
+            MappedByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY,
+                    dictionaryOffset, metaEnd - dictionaryOffset);
+            if (crc(meta, 0, meta.capacity()) != metaChecksum) {
+                throw new IOException("快照字典或块索引校验失败: " + file);
+            }
+            dictionary = new String[readVarint(meta)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(meta);
+            }
+            meta.position((int) (indexOffset - dictionaryOffset));
+            blockOffsets = new long[blockCount];
+            blockLengths = new int[blockCount];
+            blockRecords = new int[blockCount];
+            blockFirstIds = new int[blockCount];
+            blockChecksums = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blockOffsets[i] = meta.getLong();
+                blockLengths[i] = meta.getInt();
+                blockRecords[i] = meta.getInt();
+                blockFirstIds[i] = meta.getInt();
+                blockChecksums[i] = meta.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("快照文件已损坏: " + file, e);
+        }
+    }
+
+    /**
+     * 打开快照文件，读取并校验文件头、字典和块索引
+     */
+    public static SnapshotFile open(Path file) throws IOException {
+        return new SnapshotFile(file);
+    }
+
+    /**
+     * 创建快照写入器，数据写入同目录下的临时文件，commit() 后原子重命名为 target
+     *
+     * @param watermark 快照对应的数据库时间
+     */
+    public static Writer create(Path target, Timestamp watermark) throws IOException {
+        return new Writer(target, watermark);
+    }
+
+    public Timestamp getWatermark() {
+        return new Timestamp(watermark);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * 解码一个数据块，可由多个线程同时调用
+     */
+    public List<Book> readBlock(int block) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                blockOffsets[block], blockLengths[block]);
+        if (crc(buffer, 0, buffer.capacity()) != blockChecksums[block]) {
+            throw new IOException("快照数据块 " + block + " 校验失败: " + file);
+        }
+        List<Book> books = new ArrayList<>(blockRecords[block]);
+        try {
+            int id = blockFirstIds[block];
+            for (int i = 0; i < blockRecords[block]; i++) {
+                if (i > 0) {
+                    id += zigzagDecode(readVarint(buffer));
+                }
+                String category = readDictionaryString(buffer);
+                String extraInfo = readDictionaryString(buffer);
+                int packedDate = readVarint(buffer);
+                String publishDate = packedDate == 0 ? readString(buffer) : unpackDate(packedDate);
+                String title = readString(buffer);
+                String author = readString(buffer);
+                String isbn = readString(buffer);
+                books.add(BookFactory.createBook(category, id, title, author, isbn, publishDate, extraInfo));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("快照数据块 " + block + " 解码失败: " + file, e);
+        }
+        return books;
+    }
+
+    /**
+     * 用 threads 个线程并行解码全部数据块，解码结果按完成顺序在调用线程上交给 handler
+     * <p>
+     * 同时解码中的块数不超过线程数的两倍，handler 处理较慢时（如写入数据库）解码会随之等待，内存占用有上限。
+     */
+    public <E extends Exception> void readParallel(int threads, BlockHandler<E> handler)
+            throws IOException, InterruptedException, E {
+        int blockCount = getBlockCount();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+            Thread thread = new Thread(task, "snapshot-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<List<Book>> decoded = new ExecutorCompletionService<>(executor);
+            int maxInFlight = Math.max(1, threads) * 2;
+            int submitted = 0;
+            for (int done = 0; done < blockCount; done++) {
+                while (submitted < blockCount && submitted - done < maxInFlight) {
+                    int block = submitted++;
+                    decoded.submit(() -> readBlock(block));
+                }
+                handler.accept(decoded.take().get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("解码快照失败: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 解码完成的数据块的处理器
+     */
+    @FunctionalInterface
+    public interface BlockHandler<E extends Exception> {
+        void accept(List<Book> books) throws E;
+    }
+
+    private String readDictionaryString(ByteBuffer buffer) {
+        int ref = readVarint(buffer);
+        if (ref == REF_NULL) {
+            return null;
+        }
+        return ref == REF_INLINE ? readString(buffer) : dictionary[ref - REF_BASE];
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("变长整数格式错误");
+    }
+
+    private static int zigzagDecode(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * yyyy-MM-dd 压缩为 yyyymmdd，格式不符时返回0，由调用方内联原字符串
+     */
+    private static int packDate(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return 0;
+        }
+        int packed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (i == 4 || i == 7) {
+                continue;
+            }
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            packed = packed * 10 + (c - '0');
+        }
+        return packed;
+    }
+
+    private static String unpackDate(int packed) {
+        return String.format("%04d-%02d-%02d", packed / 10000, packed / 100 % 100, packed % 100);
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(from).limit(from + length);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 快照写入器，按ID升序逐行追加，满一块即通过 FileChannel 写出
+     */
+    public static final class Writer implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final long watermark;
+        private final Map<String, Integer> dictionaryIndex = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private final List<long[]> blocks = new ArrayList<>();
+
+        private ByteBuffer block = ByteBuffer.allocate(256 * 1024);
+        private int blockRecordCount;
+        private int blockFirstId;
+        private int lastId;
+        private long position = HEADER_SIZE;
+        private long recordCount;
+        private boolean committed;
+
+        private Writer(Path target, Timestamp watermark) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.watermark = watermark == null ? 0 : watermark.getTime();
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * 追加一行，extraInfo 可以为null
+         */
+        public void add(int id, String title, String author, String isbn,
+                        String category, String publishDate, String extraInfo) throws IOException {
+            if (blockRecordCount == BLOCK_RECORDS) {
+                flushBlock();
+            }
+            ensureRemaining(64 + 4 * (length(title) + length(author) + length(isbn)
+                    + length(category) + length(publishDate) + length(extraInfo)));
+            if (blockRecordCount == 0) {
+                blockFirstId = id;
+            } else {
+                writeVarint(zigzagEncode(id - lastId));
+            }
+            lastId = id;
+            writeDictionaryString(category);
+            writeDictionaryString(extraInfo);
+            int packedDate = packDate(publishDate);
+            writeVarint(packedDate);
+            if (packedDate == 0) {
+                writeString(publishDate);
+            }
+            writeString(title);
+            writeString(author);
+            writeString(isbn);
+            blockRecordCount++;
+            recordCount++;
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * 写出最后一块、字典、块索引和文件头，刷盘后原子重命名为正式文件
+         */
+        public void commit() throws IOException {
+            flushBlock();
+            long dictionaryOffset = position;
+            block.clear();
+            ensureRemaining(16);
+            writeVarint(dictionary.size());
+            for (String value : dictionary) {
+                ensureRemaining(5 + 4 * value.length());
+                writeString(value);
+            }
+            long indexOffset = dictionaryOffset + block.position();
+            ensureRemaining(blocks.size() * INDEX_ENTRY_SIZE);
+            for (long[] entry : blocks) {
+                block.putLong(entry[0]);
+                block.putInt((int) entry[1]);
+                block.putInt((int) entry[2]);
+                block.putInt((int) entry[3]);
+                block.putInt((int) entry[4]);
+            }
+            block.flip();
+            int metaChecksum = crc(block, 0, block.limit());
+            writeFully(block, dictionaryOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) 0);
+            header.putLong(watermark);
+            header.putLong(dictionaryOffset);
+            header.putLong(indexOffset);
+            header.putInt(blocks.size());
+            header.putLong(recordCount);
+            header.putInt(metaChecksum);
+            header.putInt(crc(header, 0, HEADER_SIZE - 4));
+            header.flip();
+            writeFully(header, 0);
+
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRecordCount == 0) {
+                return;
+            }
+            block.flip();
+            int length = block.limit();
+            int checksum = crc(block, 0, length);
+            writeFully(block, position);
+            blocks.add(new long[]{position, length, blockRecordCount, blockFirstId, checksum});
+            position += length;
+            block.clear();
+            blockRecordCount = 0;
+        }
+
+        private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+            while (buffer.hasRemaining()) {
+                offset += channel.write(buffer, offset);
+            }
+        }
+
+        private void ensureRemaining(int bytes) {
+            if (block.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + bytes));
+                block.flip();
+                larger.put(block);
+                block = larger;
+            }
+        }
+
+        private void writeDictionaryString(String value) {
+            if (value == null) {
+                writeVarint(REF_NULL);
+                return;
+            }
+            Integer index = dictionaryIndex.get(value);
+            if (index == null && dictionary.size() < MAX_DICTIONARY_SIZE) {
+                index = dictionary.size();
+                dictionary.add(value);
+                dictionaryIndex.put(value, index);
+            }
+            if (index == null) {
+                writeVarint(REF_INLINE);
+                writeString(value);
+            } else {
+                writeVarint(index + REF_BASE);
+            }
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            block.put(bytes);
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                block.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            block.put((byte) value);
+        }
+
+        private static int zigzagEncode(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+
+        private static int length(String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.flash.backup;
+
+import com.flash.dao.BookDAO;
+import com.flash.journal.JournalReader;
+import com.flash.pojo.Book;
+import com.flash.pojo.User;
+import com.flash.utils.DatabaseUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 热启动：从本地备份和变更日志还原图书目录并建立搜索索引，不再在启动时全表扫描
+ * <p>
+ * 最近的全量快照按块映射并行解码，再应用其后的增量段和变更日志中快照水位之后的记录，
+ * 得到的目录交给 {@link BookDAO#loadSearchIndexes} 建立索引，搜索立即可用。
+ * 之后在后台线程上用单独的连接按 update_time 与数据库对账，补上其他进程的改动和删除；
+ * 需要列式目录时，对账后用同一份还原的目录载入（{@link BookDAO#loadCatalog}），不再全表扫描。
+ */
+public class WarmStart {
+    private final Path backupDirectory;
+    private final Path journalDirectory;
+    private final long overlap;
+
+    private volatile String status = "尚未载入";
+
+    /**
+     * @param journalDirectory 变更日志目录，null 表示只使用备份
+     * @param overlap 回放日志和对账时相对快照水位向前重叠的时间(毫秒)
+     */
+    public WarmStart(Path backupDirectory, Path journalDirectory, long overlap) {
+        this.backupDirectory = backupDirectory;
+        this.journalDirectory = journalDirectory;
+        this.overlap = Math.max(0, overlap);
+    }
+
+    /**
+     * 按 database.properties 中的 backup.* 和 journal.* 配置创建
+     */
+    public static WarmStart fromConfig() {
+        return new WarmStart(
+                Paths.get(DatabaseUtil.getConfig("backup.dir", "backup")),
+                DatabaseUtil.getBooleanConfig("journal.enabled", true)
+                        ? Paths.get(DatabaseUtil.getConfig("journal.dir", "journal")) : null,
+                DatabaseUtil.getLongConfig("backup.overlap", 5000));
+    }
+
+    /**
+     * 还原图书目录并为 bookDAO 建立搜索索引，成功后在后台开始对账
+     *
+     * @param withCatalog 对账后是否用还原的目录载入 bookDAO 的列式目录
+     * @return 没有本地快照时返回 false，调用方应改用 {@link BookDAO#buildSearchIndexes()}
+     *         和 {@link BookDAO#buildCatalog()}
+     */
+    public boolean start(BookDAO bookDAO, boolean withCatalog) throws IOException, InterruptedException {
+        long begin = System.nanoTime();
+        Map<Integer, Book> catalog = new TreeMap<>();
+        Timestamp watermark = BackupService.loadCatalog(backupDirectory, catalog);
+        if (watermark == null) {
+            status = "没有本地快照";
+            return false;
+        }
+        long from = watermark.getTime() - overlap;
+        if (journalDirectory != null) {
+            JournalReader.replay(journalDirectory, from, Long.MAX_VALUE, new JournalReader.Handler<RuntimeException>() {
+                @Override
+                public void bookPut(long timestamp, Book book) {
+                    catalog.put(book.getId(), book);
+                }
+
+                @Override
+                public void bookDeleted(long timestamp, int id) {
+                    catalog.remove(id);
+                }
+
+                @Override
+                public void userRegistered(long timestamp, User user) {
+                }
+            });
+        }
+        bookDAO.loadSearchIndexes(catalog.values());
+        status = String.format("已从本地载入 %d 本图书，耗时 %dms，正在与数据库对账",
+                catalog.size(), (System.nanoTime() - begin) / 1_000_000);
+
+        Map<Integer, Book> restored = withCatalog ? catalog : null;
+        Thread reconciler = new Thread(() -> reconcile(bookDAO, new Timestamp(from), restored),
+                "catalog-reconcile");
+        reconciler.setDaemon(true);
+        reconciler.start();
+        return true;
+    }
+
+    /**
+     * 当前状态
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @param catalog 还原的目录，为null时不载入列式目录
+     */
+    private void reconcile(BookDAO bookDAO, Timestamp since, Map<Integer, Book> catalog) {
+        long begin = System.nanoTime();
+        try {
+            bookDAO.reconcileSearchIndexes(since);
+            status = String.format("已与数据库对账，耗时 %dms", (System.nanoTime() - begin) / 1_000_000);
+        } catch (SQLException | RuntimeException e) {
+            // 对账失败时索引已被丢弃，搜索回到数据库查询
+            status = "与数据库对账失败: " + e.getMessage();
+        }
+        if (catalog == null) {
+            return;
+        }
+        try {
+            bookDAO.loadCatalog(catalog.values(), since);
+            status += "；" + bookDAO.getCatalog().getStatus();
+        } catch (SQLException | RuntimeException e) {
+            // 目录未启用，读取仍然访问数据库
+            status += "；载入列式目录失败: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.flash.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 按权重限制容量、带过期时间的LRU缓存
+ * <p>
+ * 每个条目的权重由 weigher 计算（如结果列表的长度），总权重超过上限时淘汰最久未访问的条目；
+ * 条目写入超过 ttl 毫秒后视为过期，读取时惰性清除。所有操作在同一把锁内完成。
+ */
+public class LruCache<K, V> {
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxWeight 总权重上限
+     * @param ttlMillis 条目存活时间，0表示不过期
+     * @param weigher 条目权重，至少为1
+     */
+    public LruCache(long maxWeight, long ttlMillis, ToIntFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    /**
+     * 按条目个数限制容量的缓存
+     */
+    public LruCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, value -> 1);
+    }
+
+    /**
+     * 读取缓存，未命中或已过期返回null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            removeEntry(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * 写入从数据源加载的值，并记录加载耗时
+     */
+    public void putLoaded(K key, V value, long loadNanos) {
+        loads.increment();
+        this.loadNanos.add(loadNanos);
+        put(key, value);
+    }
+
+    public synchronized void put(K key, V value) {
+        int weight = Math.max(1, weigher.applyAsInt(value));
+        if (weight > maxWeight) {
+            // 单个条目超过上限时不缓存，同时移除旧值
+            removeEntry(key);
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, weight, System.currentTimeMillis()));
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+        totalWeight += weight;
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && eldest.hasNext()) {
+            Map.Entry<K, Entry<V>> victim = eldest.next();
+            totalWeight -= victim.getValue().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        removeEntry(key);
+    }
+
+    /**
+     * 移除所有满足条件的条目
+     */
+    public synchronized void invalidateIf(BiPredicate<K, V> condition) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (condition.test(entry.getKey(), entry.getValue().value)) {
+                totalWeight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public String getStats() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        long loadCount = loads.sum();
+        return String.format("命中: %d, 未命中: %d, 命中率: %.1f%%, 平均加载: %.2fms, 淘汰: %d, 当前权重: %d/%d",
+                hit, total - hit, total == 0 ? 0.0 : hit * 100.0 / total,
+                loadCount == 0 ? 0.0 : loadNanos.sum() / 1e6 / loadCount,
+                evictions.sum(), currentWeight(), maxWeight);
+    }
+
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private synchronized long currentWeight() {
+        return totalWeight;
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.createdAt > ttlMillis;
+    }
+
+    private void removeEntry(K key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final int weight;
+        final long createdAt;
+
+        Entry(V value, int weight, long createdAt) {
+            this.value = value;
+            this.weight = weight;
+            this.createdAt = createdAt;
+        }
+    }
+}
\ No newline at end of file
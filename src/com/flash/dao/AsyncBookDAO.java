@@ -0,0 +1,118 @@
+package com.flash.dao;
+
+import com.flash.pojo.Book;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link BookRepository} 的异步版本，每个方法在 {@link DaoExecutor} 上执行对应的同步方法
+ * <p>
+ * 互不依赖的查询可以同时发出，总耗时取决于最慢的一个而不是各自之和：
+ * <pre>
+ * CompletableFuture&lt;List&lt;Book&gt;&gt; computers = books.getBooksByCategoryAsync("计算机");
+ * CompletableFuture&lt;List&lt;Book&gt;&gt; novels = books.getBooksByCategoryAsync("文学");
+ * CompletableFuture.allOf(computers, novels).join();
+ * </pre>
+ * 调用失败时 future 以同步方法抛出的 {@link java.sql.SQLException} 结束，超时为
+ * {@link java.sql.SQLTimeoutException}；取消 future 会中断正在执行的调用。
+ * 需要单独的超时时间时用 {@link #withTimeout(long)} 取得视图。
+ */
+public class AsyncBookDAO {
+    private final BookRepository books;
+    private final DaoExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * 每次调用使用执行器的默认超时
+     */
+    public AsyncBookDAO(BookRepository books, DaoExecutor executor) {
+        this(books, executor, executor.getDefaultTimeoutMillis());
+    }
+
+    private AsyncBookDAO(BookRepository books, DaoExecutor executor, long timeoutMillis) {
+        this.books = books;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 返回使用同一存储和执行器、每次调用超时为 timeoutMillis 的视图，0表示不超时
+     */
+    public AsyncBookDAO withTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("超时时间不能为负数: " + timeoutMillis);
+        }
+        return new AsyncBookDAO(books, executor, timeoutMillis);
+    }
+
+    public BookRepository getRepository() {
+        return books;
+    }
+
+    public CompletableFuture<Boolean> addBookAsync(Book book) {
+        return submit(() -> books.addBook(book));
+    }
+
+    public CompletableFuture<BatchInsertResult> addBooksAsync(Collection<? extends Book> input) {
+        return submit(() -> books.addBooks(input));
+    }
+
+    public CompletableFuture<BatchInsertResult> addBooksAsync(Collection<? extends Book> input, int batchSize,
+                                                              boolean upsert) {
+        return submit(() -> books.addBooks(input, batchSize, upsert));
+    }
+
+    public CompletableFuture<Book> getBookByIdAsync(int id) {
+        return submit(() -> books.getBookById(id));
+    }
+
+    public CompletableFuture<Boolean> deleteBookAsync(int id) {
+        return submit(() -> books.deleteBook(id));
+    }
+
+    public CompletableFuture<Boolean> isbnExistsAsync(String isbn) {
+        return submit(() -> books.isbnExists(isbn));
+    }
+
+    public CompletableFuture<List<Book>> getAllBooksAsync() {
+        return submit(books::getAllBooks);
+    }
+
+    public CompletableFuture<List<Book>> getBooksByCategoryAsync(String category) {
+        return submit(() -> books.getBooksByCategory(category));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByTitleAsync(String title) {
+        return submit(() -> books.searchBooksByTitle(title));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByIsbnAsync(String isbn) {
+        return submit(() -> books.searchBooksByIsbn(isbn));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByIsbnPrefixAsync(String prefix) {
+        return submit(() -> books.searchBooksByIsbnPrefix(prefix));
+    }
+
+    public CompletableFuture<BookPage> getAllBooksPageAsync(int afterId, int pageSize) {
+        return submit(() -> books.getAllBooksPage(afterId, pageSize));
+    }
+
+    public CompletableFuture<BookPage> getBooksByCategoryPageAsync(String category, int afterId, int pageSize) {
+        return submit(() -> books.getBooksByCategoryPage(category, afterId, pageSize));
+    }
+
+    public CompletableFuture<BookPage> searchBooksByTitlePageAsync(String title, int afterId, int pageSize) {
+        return submit(() -> books.searchBooksByTitlePage(title, afterId, pageSize));
+    }
+
+    public CompletableFuture<BookPage> searchBooksByIsbnPageAsync(String isbn, int afterId, int pageSize) {
+        return submit(() -> books.searchBooksByIsbnPage(isbn, afterId, pageSize));
+    }
+
+    private <T> CompletableFuture<T> submit(DaoExecutor.Call<T> call) {
+        return executor.submit(call, timeoutMillis);
+    }
+}
@@ -0,0 +1,49 @@
+package com.flash.dao;
+
+import com.flash.pojo.User;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link UserRepository} 的异步版本，约定与 {@link AsyncBookDAO} 相同。
+ */
+public class AsyncUserDAO {
+    private final UserRepository users;
+    private final DaoExecutor executor;
+    private final long timeoutMillis;
+
+    public AsyncUserDAO(UserRepository users, DaoExecutor executor) {
+        this(users, executor, executor.getDefaultTimeoutMillis());
+    }
+
+    private AsyncUserDAO(UserRepository users, DaoExecutor executor, long timeoutMillis) {
+        this.users = users;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 返回每次调用超时为 timeoutMillis 的视图，0表示不超时。
+     */
+    public AsyncUserDAO withTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("超时时间不能为负数: " + timeoutMillis);
+        }
+        return new AsyncUserDAO(users, executor, timeoutMillis);
+    }
+
+    public UserRepository getRepository() {
+        return users;
+    }
+
+    public CompletableFuture<Boolean> registerUserAsync(User user) {
+        return executor.submit(() -> users.registerUser(user), timeoutMillis);
+    }
+
+    /**
+     * 用户名或密码错误时 future 的结果为null。
+     */
+    public CompletableFuture<User> loginUserAsync(String username, String password) {
+        return executor.submit(() -> users.loginUser(username, password), timeoutMillis);
+    }
+}
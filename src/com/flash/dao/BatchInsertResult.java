@@ -0,0 +1,115 @@
+package com.flash.dao;
+
+import com.flash.pojo.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量添加图书的结果，按输入顺序记录每一行的处理结果
+ */
+public class BatchInsertResult {
+    public enum Status {
+        /** 新增成功 */
+        INSERTED,
+        /** 覆盖模式下按ISBN更新了已有图书 */
+        UPDATED,
+        /** ISBN已存在（数据库中或本批次前面的行），未写入 */
+        DUPLICATE,
+        /** 写入失败 */
+        FAILED
+    }
+
+    /**
+     * 单行结果
+     */
+    public static final class Row {
+        private final int index;
+        private final Book book;
+        private final Status status;
+        private final int id;
+        private final String message;
+
+        Row(int index, Book book, Status status, int id, String message) {
+            this.index = index;
+            this.book = book;
+            this.status = status;
+            this.id = id;
+            this.message = message;
+        }
+
+        /**
+         * 在输入集合中的位置，从0开始
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * 新增或更新后的图书ID，重复时为已有图书的ID（未知时为-1），失败时为-1
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * 重复或失败的原因，成功时为null
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final Row[] rows;
+
+    BatchInsertResult(int size) {
+        this.rows = new Row[size];
+    }
+
+    void set(int index, Book book, Status status, int id, String message) {
+        rows[index] = new Row(index, book, status, id, message);
+    }
+
+    public List<Row> getRows() {
+        return Collections.unmodifiableList(Arrays.asList(rows));
+    }
+
+    /**
+     * 获取指定结果的行
+     */
+    public List<Row> getRows(Status status) {
+        List<Row> result = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.status == status) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    public int count(Status status) {
+        int count = 0;
+        for (Row row : rows) {
+            if (row.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("新增: %d, 更新: %d, 重复: %d, 失败: %d",
+                count(Status.INSERTED), count(Status.UPDATED), count(Status.DUPLICATE), count(Status.FAILED));
+    }
+}
\ No newline at end of file
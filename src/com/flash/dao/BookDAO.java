@@ -1,63 +1,277 @@
 package com.flash.dao;
 
 import com.flash.factory.BookFactory;
+import com.flash.index.IsbnIndex;
+import com.flash.index.TitleIndex;
+import com.flash.journal.MutationJournal;
 import com.flash.pojo.Book;
-import com.flash.pojo.ComputerBook;
-import com.flash.pojo.LiteratureBook;
+import com.flash.pojo.BookSummary;
+import com.flash.storage.ColumnarCatalog;
+import com.flash.utils.ReplicaRouter;
 
+import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 /**
  * 图书数据访问对象，提供图书相关的数据库操作。
+ * <p>
+ * 列表查询均按主键做键集分页（id > ? ORDER BY id LIMIT ?），每页一次往返，
+ * 页与页之间不占用游标，流式读取时内存占用只与每页大小有关。
+ * 查询只选取用到的列，不取时间戳：列表显示的摘要（{@link BookSummary}）比图书对象少取额外信息，
+ * 两者都按固定的列序号读取，不再逐行按列名查找。
+ * 构建搜索索引（{@link #buildSearchIndexes()}）后，书名和ISBN搜索改由内存索引求出匹配ID，
+ * 数据库只负责按ID取回这些行；ISBN查重也直接由索引回答，不再依赖唯一键冲突。
+ * 载入列式目录（{@link #buildCatalog()}，或热启动时的 {@link #loadCatalog}）后，按ID读取、浏览、按分类查询和索引搜索取回的行
+ * 都由内存中的目录回答，数据库只处理写入和 LIKE 查询。
+ * 设置变更日志（{@link #setJournal(MutationJournal)}）后，每次写入在数据库提交之后记入日志，
+ * 日志落盘后方法才返回；此时数据已提交，日志写入失败不会让操作失败，只把日志标记为降级。
+ * <p>
+ * 每次操作从数据源借用连接，操作结束即归还，同一对象可被多个线程并发使用。
+ * 当前线程开启了 {@link UnitOfWork} 时改用事务的连接，索引和日志的更新推迟到事务提交之后。
+ * 指定读数据源（如 {@link ReplicaRouter}）时，查询和分页读取从读数据源借用连接，
+ * 写入、写入中的查重和搜索索引的构建与对账仍使用主数据源；写入提交后标记当前会话，保证读己之写。
  */
-public class BookDAO {
-    private Connection connection;
+public class BookDAO implements BookRepository {
+    /** 默认每页读取的行数 */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    /** 批量添加时每个事务默认写入的行数 */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
 
-    public BookDAO(Connection connection) {
-        this.connection = connection;
+    private static final String INSERT_SQL =
+            "INSERT INTO books (title, author, isbn, category, publish_date, extra_info) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_BY_ISBN_SQL =
+            "UPDATE books SET title = ?, author = ?, category = ?, publish_date = ?, extra_info = ? WHERE isbn = ?";
+    private static final String RESTORE_SQL =
+            "INSERT INTO books (id, title, author, isbn, category, publish_date, extra_info) VALUES ";
+    private static final String RESTORE_ROW = "(?, ?, ?, ?, ?, ?, ?)";
+    private static final String RESTORE_UPDATE = " ON DUPLICATE KEY UPDATE title = VALUES(title), "
+            + "author = VALUES(author), isbn = VALUES(isbn), category = VALUES(category), "
+            + "publish_date = VALUES(publish_date), extra_info = VALUES(extra_info)";
+    /** 一条多行 INSERT 最多包含的行数，控制语句大小和占位符个数 */
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    /** 图书对象用到的列，读取时按下面的列序号取值 */
+    private static final String BOOK_COLUMNS = "id, title, author, isbn, category, publish_date, extra_info";
+    /** 列表摘要用到的列，是 BOOK_COLUMNS 的前六列 */
+    private static final String SUMMARY_COLUMNS = "id, title, author, isbn, category, publish_date";
+    private static final int COLUMN_ID = 1;
+    private static final int COLUMN_TITLE = 2;
+    private static final int COLUMN_AUTHOR = 3;
+    private static final int COLUMN_ISBN = 4;
+    private static final int COLUMN_CATEGORY = 5;
+    private static final int COLUMN_PUBLISH_DATE = 6;
+    private static final int COLUMN_EXTRA_INFO = 7;
+
+    private static final String ALL_PAGE_FROM = " FROM books WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CATEGORY_PAGE_FROM = " FROM books WHERE category = ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String TITLE_PAGE_FROM = " FROM books WHERE title LIKE ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String ISBN_PAGE_FROM = " FROM books WHERE isbn LIKE ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String ALL_PAGE_SQL = "SELECT " + BOOK_COLUMNS + ALL_PAGE_FROM;
+    private static final String CATEGORY_PAGE_SQL = "SELECT " + BOOK_COLUMNS + CATEGORY_PAGE_FROM;
+    private static final String TITLE_PAGE_SQL = "SELECT " + BOOK_COLUMNS + TITLE_PAGE_FROM;
+    private static final String ISBN_PAGE_SQL = "SELECT " + BOOK_COLUMNS + ISBN_PAGE_FROM;
+    private static final String ALL_SUMMARY_SQL = "SELECT " + SUMMARY_COLUMNS + ALL_PAGE_FROM;
+    private static final String CATEGORY_SUMMARY_SQL = "SELECT " + SUMMARY_COLUMNS + CATEGORY_PAGE_FROM;
+    private static final String TITLE_SUMMARY_SQL = "SELECT " + SUMMARY_COLUMNS + TITLE_PAGE_FROM;
+    private static final String ISBN_SUMMARY_SQL = "SELECT " + SUMMARY_COLUMNS + ISBN_PAGE_FROM;
+    private static final String BY_ID_SQL = "SELECT " + BOOK_COLUMNS + " FROM books WHERE id = ?";
+    private static final String ISBN_BY_ID_SQL = "SELECT isbn FROM books WHERE id = ?";
+    private static final String SEARCH_INDEX_PAGE_SQL =
+            "SELECT id, title, isbn FROM books WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CHANGED_INDEX_PAGE_SQL =
+            "SELECT id, title, isbn FROM books WHERE update_time >= ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String CHANGED_PAGE_SQL =
+            "SELECT " + BOOK_COLUMNS + " FROM books WHERE update_time >= ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String ID_PAGE_SQL = "SELECT id FROM books WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CHECKSUM_SQL = "SELECT COUNT(*), COALESCE(SUM(id), 0) FROM books";
+    /** 按ID取行时IN列表占位符数量的最小档位，档位按2的幂增长以便复用缓存的语句 */
+    private static final int MIN_ID_BATCH = 8;
+
+    private final DataSource dataSource;
+    private final DataSource readDataSource;
+    private final int fetchSize;
+    private volatile TitleIndex titleIndex;
+    private volatile IsbnIndex isbnIndex;
+    private volatile ColumnarCatalog catalog;
+    /** 正在载入的目录，载入期间的写入也要同步给它 */
+    private volatile ColumnarCatalog loadingCatalog;
+    private volatile MutationJournal journal;
+    /** 索引由本地快照载入、尚未与数据库对账时为false，此时ISBN查重仍查询数据库 */
+    private volatile boolean indexesVerified = true;
+
+    public BookDAO(DataSource dataSource) {
+        this(dataSource, dataSource, DEFAULT_FETCH_SIZE);
+    }
+
+    public BookDAO(DataSource dataSource, DataSource readDataSource) {
+        this(dataSource, readDataSource, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * @param readDataSource 查询使用的数据源，与 dataSource 相同时不做读写分离
+     * @param fetchSize      流式读取时每页的行数
+     */
+    public BookDAO(DataSource dataSource, DataSource readDataSource, int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + fetchSize);
+        }
+        this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.fetchSize = fetchSize;
     }
 
     /**
      * 添加图书。
      */
     public boolean addBook(Book book) throws SQLException {
-        String sql = "INSERT INTO books (title, author, isbn, category, publish_date, extra_info) " +
-                    "VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthor());
-            stmt.setString(3, book.getIsbn());
-            stmt.setString(4, book.getCategory());
-            stmt.setString(5, book.getPublishDate());
-            
-            // 根据不同类型的图书获取额外信息
-            String extraInfo = "";
-            if (book instanceof ComputerBook) {
-                extraInfo = ((ComputerBook) book).getProgrammingLanguage();
-            } else if (book instanceof LiteratureBook) {
-                extraInfo = ((LiteratureBook) book).getGenre();
+        IsbnIndex verified = verifiedIsbnIndex();
+        if (verified != null && verified.findExact(book.getIsbn()) >= 0) {
+            throw new SQLIntegrityConstraintViolationException("ISBN已存在: " + book.getIsbn());
+        }
+        try (ConnectionLease lease = lease();
+             PreparedStatement stmt = lease.connection().prepareStatement(INSERT_SQL + INSERT_ROW,
+                     Statement.RETURN_GENERATED_KEYS)) {
+            bindBook(stmt, 1, book);
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+            lease.afterCommit(this::recordWrite);
+            if (titleIndex != null || isbnIndex != null || journal != null
+                    || catalog != null || loadingCatalog != null) {
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        int id = keys.getInt(1);
+                        lease.afterCommit(() -> {
+                            indexBook(id, book, true);
+                            catalogPut(id, book);
+                            MutationJournal log = journal;
+                            if (log != null) {
+                                try {
+                                    log.logBookPut(id, book);
+                                } catch (IOException e) {
+                                    log.markDegraded("图书已保存(ID: " + id + ")", e);
+                                }
+                            }
+                        });
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 以默认批大小批量添加图书，ISBN已存在的行记为重复
+     */
+    public BatchInsertResult addBooks(Collection<? extends Book> books) throws SQLException {
+        return addBooks(books, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * 批量添加图书
+     * <p>
+     * 每 batchSize 行一个事务：先查出本批中已存在的ISBN，其余行合并成多行 INSERT 一次写入，
+     * 覆盖模式下已存在的行用批量 UPDATE 按ISBN更新。批内出现唯一键冲突（如并发写入）或其他错误时，
+     * 回滚该批并逐行重试，从而给出每一行的结果；一批失败不影响已提交的批次。
+     * 同一次调用中ISBN重复的行，只有第一行会写入。在 {@link UnitOfWork} 中每批对应一个保存点，
+     * 失败时回滚到保存点，是否最终提交由事务决定。
+     *
+     * @param upsert true 时ISBN已存在的图书按ISBN更新，false 时记为重复
+     */
+    public BatchInsertResult addBooks(Collection<? extends Book> books, int batchSize, boolean upsert)
+            throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("每批行数必须大于0: " + batchSize);
+        }
+        List<Book> input = new ArrayList<>(books);
+        BatchInsertResult result = new BatchInsertResult(input.size());
+        Set<String> seen = new HashSet<>();
+        try (ConnectionLease lease = lease()) {
+            lease.begin();
+            for (int from = 0; from < input.size(); from += batchSize) {
+                int to = Math.min(input.size(), from + batchSize);
+                writeBatch(lease, input, from, to, upsert, seen, result);
+                int batchFrom = from;
+                lease.afterCommit(() -> {
+                    recordWrite();
+                    indexRows(result, batchFrom, to);
+                    journalRows(result, batchFrom, to);
+                });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按原ID恢复图书，用于从备份还原
+     * <p>
+     * 每 batchSize 行一个事务，用多行 INSERT ... ON DUPLICATE KEY UPDATE 写入：ID不存在的行新增，
+     * 已存在的行按备份内容覆盖。ISBN已被其他ID的图书占用的行记为重复，不会写入。
+     * 某一批写入失败时回滚并逐行重试。恢复不维护内存搜索索引和列式目录，完成后两者都被丢弃，
+     * 需要时重新调用 {@link #buildSearchIndexes()} 和 {@link #buildCatalog()}。
+     */
+    public BatchInsertResult restoreBooks(Collection<? extends Book> books, int batchSize) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("每批行数必须大于0: " + batchSize);
+        }
+        titleIndex = null;
+        isbnIndex = null;
+        catalog = null;
+        List<Book> input = new ArrayList<>(books);
+        BatchInsertResult result = new BatchInsertResult(input.size());
+        try (ConnectionLease lease = lease()) {
+            lease.begin();
+            for (int from = 0; from < input.size(); from += batchSize) {
+                int to = Math.min(input.size(), from + batchSize);
+                restoreBatch(lease, input, from, to, result);
+                int batchFrom = from;
+                lease.afterCommit(() -> {
+                    recordWrite();
+                    journalRows(result, batchFrom, to);
+                });
             }
-            stmt.setString(6, extraInfo);
-            
-            return stmt.executeUpdate() > 0;
         }
+        return result;
     }
 
     /**
      * 根据分类查询图书。
      */
     public List<Book> getBooksByCategory(String category) throws SQLException {
-        String sql = "SELECT * FROM books WHERE category = ?";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setString(1, category);
-        ResultSet resultSet = statement.executeQuery();
-        List<Book> books = new ArrayList<>();
-        while (resultSet.next()) {
-            books.add(createBookFromResultSet(resultSet));
+        return BookPages.collect(streamBooksByCategory(category));
+    }
+
+    /**
+     * 根据ID查询图书，不存在时返回null
+     */
+    public Book getBookById(int id) throws SQLException {
+        ColumnarCatalog resident = readableCatalog();
+        if (resident != null) {
+            return resident.get(id, ColumnarCatalog.Row::toBook);
+        }
+        try (ConnectionLease lease = readLease();
+             PreparedStatement statement = lease.connection().prepareStatement(BY_ID_SQL)) {
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? mapBook(resultSet) : null;
+            }
         }
-        return books;
     }
 
     /**
@@ -65,66 +279,1156 @@ public class BookDAO {
      */
     public boolean deleteBook(int id) throws SQLException {
         String sql = "DELETE FROM books WHERE id = ?";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setInt(1, id);
-        return statement.executeUpdate() > 0;
+        try (ConnectionLease lease = lease();
+             PreparedStatement statement = lease.connection().prepareStatement(sql)) {
+            // 先取出ISBN，ISBN索引可以二分定位而不必逐个槽位比较ID
+            String isbn = isbnIndex != null ? isbnOf(lease, id) : null;
+            statement.setInt(1, id);
+            if (statement.executeUpdate() == 0) {
+                return false;
+            }
+            lease.afterCommit(() -> {
+                recordWrite();
+                catalogRemove(id);
+                TitleIndex titles = titleIndex;
+                if (titles != null) {
+                    titles.remove(id);
+                }
+                IsbnIndex isbns = isbnIndex;
+                if (isbns != null) {
+                    isbns.remove(id, isbn);
+                }
+                MutationJournal log = journal;
+                if (log != null) {
+                    try {
+                        log.logBookDelete(id);
+                    } catch (IOException e) {
+                        log.markDegraded("图书已删除(ID: " + id + ")", e);
+                    }
+                }
+            });
+            return true;
+        }
+    }
+
+    /**
+     * 图书的ISBN，已载入目录时从目录读取，否则在同一个连接上查询；不存在时返回null
+     */
+    private String isbnOf(ConnectionLease lease, int id) throws SQLException {
+        ColumnarCatalog resident = catalog;
+        if (resident != null && resident.contains(id)) {
+            return resident.get(id, ColumnarCatalog.Row::getIsbn);
+        }
+        try (PreparedStatement statement = lease.connection().prepareStatement(ISBN_BY_ID_SQL)) {
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * 设置变更日志，null 表示不记录
+     */
+    public void setJournal(MutationJournal journal) {
+        this.journal = journal;
     }
 
     /**
      * 获取所有图书。
      */
     public List<Book> getAllBooks() throws SQLException {
-        String sql = "SELECT * FROM books";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        ResultSet resultSet = statement.executeQuery();
-        List<Book> books = new ArrayList<>();
-        while (resultSet.next()) {
-            books.add(createBookFromResultSet(resultSet));
-        }
-        return books;
+        return BookPages.collect(streamAllBooks());
     }
 
     /**
      * 按书名搜索图书
      */
     public List<Book> searchBooksByTitle(String title) throws SQLException {
-        String sql = "SELECT * FROM books WHERE title LIKE ?";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setString(1, "%" + title + "%");
-        return executeBookQuery(statement);
+        return BookPages.collect(streamBooksByTitle(title));
     }
 
     /**
      * 按ISBN搜索图书
      */
     public List<Book> searchBooksByIsbn(String isbn) throws SQLException {
-        String sql = "SELECT * FROM books WHERE isbn LIKE ?";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setString(1, "%" + isbn + "%");
-        return executeBookQuery(statement);
+        return BookPages.collect(streamBooksByIsbn(isbn));
+    }
+
+    /**
+     * 分页获取图书
+     *
+     * @param afterId 上一页的 {@link BookPage#getLastId()}，首页传0
+     */
+    public BookPage getAllBooksPage(int afterId, int pageSize) throws SQLException {
+        return browsePage(ALL_PAGE_SQL, null, afterId, pageSize);
+    }
+
+    /**
+     * 按分类分页获取图书
+     */
+    public BookPage getBooksByCategoryPage(String category, int afterId, int pageSize) throws SQLException {
+        return browsePage(CATEGORY_PAGE_SQL, category, afterId, pageSize);
+    }
+
+    /**
+     * 按书名关键字分页搜索图书
+     */
+    public BookPage searchBooksByTitlePage(String title, int afterId, int pageSize) throws SQLException {
+        TitleIndex index = titleIndexFor(title);
+        if (index != null) {
+            return queryPageByIds(index.search(title), afterId, pageSize);
+        }
+        return queryPage(TITLE_PAGE_SQL, "%" + title + "%", afterId, pageSize);
+    }
+
+    /**
+     * 按ISBN关键字分页搜索图书
+     */
+    public BookPage searchBooksByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException {
+        IsbnIndex index = isbnIndexFor(isbn);
+        if (index != null) {
+            return queryPageByIds(index.findContaining(isbn), afterId, pageSize);
+        }
+        return queryPage(ISBN_PAGE_SQL, "%" + isbn + "%", afterId, pageSize);
+    }
+
+    /**
+     * 流式读取所有图书，按ID升序逐页加载
+     * <p>
+     * 读取失败时抛出 {@link UncheckedSQLException}。
+     */
+    public Stream<Book> streamAllBooks() {
+        return stream((afterId, pageSize) -> browsePage(ALL_PAGE_SQL, null, afterId, pageSize));
+    }
+
+    /**
+     * 流式读取指定分类的图书
+     */
+    public Stream<Book> streamBooksByCategory(String category) {
+        return stream((afterId, pageSize) -> browsePage(CATEGORY_PAGE_SQL, category, afterId, pageSize));
+    }
+
+    /**
+     * 流式按书名关键字搜索图书
+     */
+    public Stream<Book> streamBooksByTitle(String title) {
+        TitleIndex index = titleIndexFor(title);
+        if (index != null) {
+            int[] ids = index.search(title);
+            return stream((afterId, pageSize) -> queryPageByIds(ids, afterId, pageSize));
+        }
+        String pattern = "%" + title + "%";
+        return stream((afterId, pageSize) -> queryPage(TITLE_PAGE_SQL, pattern, afterId, pageSize));
+    }
+
+    /**
+     * 流式按ISBN关键字搜索图书
+     */
+    public Stream<Book> streamBooksByIsbn(String isbn) {
+        IsbnIndex index = isbnIndexFor(isbn);
+        if (index != null) {
+            int[] ids = index.findContaining(isbn);
+            return stream((afterId, pageSize) -> queryPageByIds(ids, afterId, pageSize));
+        }
+        String pattern = "%" + isbn + "%";
+        return stream((afterId, pageSize) -> queryPage(ISBN_PAGE_SQL, pattern, afterId, pageSize));
+    }
+
+    /**
+     * 流式读取所有图书的摘要，只查询列表显示的列
+     */
+    public Stream<BookSummary> streamAllSummaries() {
+        return BookPages.streamRows((afterId, pageSize) -> browseRows(ALL_SUMMARY_SQL, null, afterId, pageSize,
+                BookDAO::mapSummary, ColumnarCatalog.Row::toSummary, BookSummary::getId), fetchSize);
+    }
+
+    public Stream<BookSummary> streamSummariesByCategory(String category) {
+        return BookPages.streamRows((afterId, pageSize) -> browseRows(CATEGORY_SUMMARY_SQL, category, afterId,
+                pageSize, BookDAO::mapSummary, ColumnarCatalog.Row::toSummary, BookSummary::getId), fetchSize);
+    }
+
+    public Stream<BookSummary> streamSummariesByTitle(String title) {
+        TitleIndex index = titleIndexFor(title);
+        if (index != null) {
+            return streamSummariesByIds(index.search(title));
+        }
+        return streamSummaries(TITLE_SUMMARY_SQL, "%" + title + "%");
+    }
+
+    public Stream<BookSummary> streamSummariesByIsbn(String isbn) {
+        IsbnIndex index = isbnIndexFor(isbn);
+        if (index != null) {
+            return streamSummariesByIds(index.findContaining(isbn));
+        }
+        return streamSummaries(ISBN_SUMMARY_SQL, "%" + isbn + "%");
+    }
+
+    /**
+     * 分页获取图书摘要，只查询列表显示的列
+     */
+    public SummaryPage getAllSummariesPage(int afterId, int pageSize) throws SQLException {
+        return summaryPage(browseRows(ALL_SUMMARY_SQL, null, afterId, pageSize, BookDAO::mapSummary,
+                ColumnarCatalog.Row::toSummary, BookSummary::getId));
+    }
+
+    public SummaryPage getSummariesByCategoryPage(String category, int afterId, int pageSize)
+            throws SQLException {
+        return summaryPage(browseRows(CATEGORY_SUMMARY_SQL, category, afterId, pageSize, BookDAO::mapSummary,
+                ColumnarCatalog.Row::toSummary, BookSummary::getId));
+    }
+
+    public SummaryPage searchSummariesByTitlePage(String title, int afterId, int pageSize) throws SQLException {
+        TitleIndex index = titleIndexFor(title);
+        if (index != null) {
+            return summaryPage(queryRowsByIds(SUMMARY_COLUMNS, index.search(title), afterId, pageSize,
+                    BookDAO::mapSummary, ColumnarCatalog.Row::toSummary));
+        }
+        return summaryPage(queryRows(TITLE_SUMMARY_SQL, "%" + title + "%", afterId, pageSize,
+                BookDAO::mapSummary));
+    }
+
+    public SummaryPage searchSummariesByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException {
+        IsbnIndex index = isbnIndexFor(isbn);
+        if (index != null) {
+            return summaryPage(queryRowsByIds(SUMMARY_COLUMNS, index.findContaining(isbn), afterId, pageSize,
+                    BookDAO::mapSummary, ColumnarCatalog.Row::toSummary));
+        }
+        return summaryPage(queryRows(ISBN_SUMMARY_SQL, "%" + isbn + "%", afterId, pageSize,
+                BookDAO::mapSummary));
+    }
+
+    private static SummaryPage summaryPage(BookPages.Rows<BookSummary> rows) {
+        return new SummaryPage(rows.items, rows.lastId, rows.hasMore);
+    }
+
+    private Stream<BookSummary> streamSummaries(String sql, String filter) {
+        return BookPages.streamRows((afterId, pageSize) ->
+                queryRows(sql, filter, afterId, pageSize, BookDAO::mapSummary), fetchSize);
+    }
+
+    private Stream<BookSummary> streamSummariesByIds(int[] ids) {
+        return BookPages.streamRows((afterId, pageSize) ->
+                queryRowsByIds(SUMMARY_COLUMNS, ids, afterId, pageSize, BookDAO::mapSummary,
+                        ColumnarCatalog.Row::toSummary), fetchSize);
+    }
+
+    /**
+     * 按页流式读取 query 的全部结果
+     */
+    private Stream<Book> stream(BookPages.PageQuery query) {
+        return BookPages.stream(query, fetchSize);
+    }
+
+    /**
+     * 浏览和按分类查询：载入了目录时从目录读取，否则执行 sql
+     *
+     * @param category 分类，不筛选时为null
+     */
+    private BookPage browsePage(String sql, String category, int afterId, int pageSize) throws SQLException {
+        BookPages.Rows<Book> rows = browseRows(sql, category, afterId, pageSize, BookDAO::mapBook,
+                ColumnarCatalog.Row::toBook, Book::getId);
+        return new BookPage(rows.items, rows.lastId, rows.hasMore);
+    }
+
+    private <T> BookPages.Rows<T> browseRows(String sql, String category, int afterId, int pageSize,
+                                             RowMapper<T> mapper, Function<ColumnarCatalog.Row, T> reader,
+                                             ToIntFunction<T> idOf) throws SQLException {
+        ColumnarCatalog resident = readableCatalog();
+        if (resident == null) {
+            return queryRows(sql, category, afterId, pageSize, mapper);
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + pageSize);
+        }
+        List<T> items = resident.scan(afterId, category, pageSize + 1, reader);
+        boolean hasMore = items.size() > pageSize;
+        if (hasMore) {
+            items.remove(pageSize);
+        }
+        int lastId = items.isEmpty() ? afterId : idOf.applyAsInt(items.get(items.size() - 1));
+        return new BookPages.Rows<>(items, lastId, hasMore);
+    }
+
+    private BookPage queryPage(String sql, String filter, int afterId, int pageSize) throws SQLException {
+        BookPages.Rows<Book> rows = queryRows(sql, filter, afterId, pageSize, BookDAO::mapBook);
+        return new BookPage(rows.items, rows.lastId, rows.hasMore);
+    }
+
+    /**
+     * 读取 afterId 之后的一页，多取一行用于判断是否还有下一页
+     *
+     * @param filter 第一个查询参数，无过滤条件时为null
+     */
+    private <T> BookPages.Rows<T> queryRows(String sql, String filter, int afterId, int pageSize,
+                                            RowMapper<T> mapper) throws SQLException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + pageSize);
+        }
+        try (ConnectionLease lease = readLease();
+             PreparedStatement statement = lease.connection().prepareStatement(sql)) {
+            int index = 1;
+            if (filter != null) {
+                statement.setString(index++, filter);
+            }
+            statement.setInt(index++, afterId);
+            statement.setInt(index, pageSize + 1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                List<T> items = new ArrayList<>(Math.min(pageSize, fetchSize));
+                int lastId = afterId;
+                while (resultSet.next()) {
+                    if (items.size() == pageSize) {
+                        return new BookPages.Rows<>(items, lastId, true);
+                    }
+                    items.add(mapper.map(resultSet));
+                    lastId = resultSet.getInt(COLUMN_ID);
+                }
+                return new BookPages.Rows<>(items, lastId, false);
+            }
+        }
+    }
+
+    /**
+     * 按ISBN前缀查找图书，构建索引后为内存二分查找
+     */
+    public List<Book> searchBooksByIsbnPrefix(String prefix) throws SQLException {
+        IsbnIndex index = isbnIndexFor(prefix);
+        if (index != null) {
+            int[] ids = index.findByPrefix(prefix);
+            return BookPages.collect(stream((afterId, pageSize) -> queryPageByIds(ids, afterId, pageSize)));
+        }
+        String pattern = prefix + "%";
+        return BookPages.collect(stream((afterId, pageSize) -> queryPage(ISBN_PAGE_SQL, pattern, afterId, pageSize)));
+    }
+
+    /**
+     * 判断ISBN是否已存在，构建索引后不访问数据库
+     */
+    public boolean isbnExists(String isbn) throws SQLException {
+        IsbnIndex index = verifiedIsbnIndex();
+        if (index != null) {
+            return index.findExact(isbn) >= 0;
+        }
+        String sql = "SELECT 1 FROM books WHERE isbn = ?";
+        try (ConnectionLease lease = readLease();
+             PreparedStatement statement = lease.connection().prepareStatement(sql)) {
+            statement.setString(1, isbn);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * 从数据库分页读取 id, title, isbn 构建书名索引和ISBN索引，
+     * 此后搜索、查重和增删图书都会使用并维护这两个索引
+     */
+    public void buildSearchIndexes() throws SQLException {
+        TitleIndex titles = new TitleIndex();
+        IsbnIndex isbns = new IsbnIndex();
+        int afterId = 0;
+        boolean hasMore = true;
+        try (ConnectionLease lease = lease();
+             PreparedStatement statement = lease.connection().prepareStatement(SEARCH_INDEX_PAGE_SQL)) {
+            while (hasMore) {
+                statement.setInt(1, afterId);
+                statement.setInt(2, fetchSize);
+                int rows = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        afterId = resultSet.getInt(1);
+                        titles.add(afterId, resultSet.getString(2));
+                        isbns.add(afterId, resultSet.getString(3));
+                        rows++;
+                    }
+                }
+                hasMore = rows == fetchSize;
+            }
+        }
+        titleIndex = titles;
+        isbnIndex = isbns;
+        indexesVerified = true;
+    }
+
+    /**
+     * 从数据库分页读取全部图书，载入堆外的列式目录（{@link ColumnarCatalog}）
+     * <p>
+     * 载入期间的写入同时记入正在载入的目录，载入完成后才开始使用。目录只同步本对象的写入，
+     * 其他进程改动数据库后需要重新载入；事务中的读取仍然访问数据库。
+     */
+    public void buildCatalog() throws SQLException {
+        ColumnarCatalog loading = new ColumnarCatalog();
+        loading.startLoading();
+        loadingCatalog = loading;
+        try {
+            int afterId = 0;
+            boolean hasMore = true;
+            try (ConnectionLease lease = lease();
+                 PreparedStatement statement = lease.connection().prepareStatement(ALL_PAGE_SQL)) {
+                while (hasMore) {
+                    statement.setInt(1, afterId);
+                    statement.setInt(2, fetchSize);
+                    int rows = 0;
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            afterId = resultSet.getInt(COLUMN_ID);
+                            loading.load(afterId, mapBook(resultSet));
+                            rows++;
+                        }
+                    }
+                    hasMore = rows == fetchSize;
+                }
+            }
+            loading.finishLoading();
+            // 先启用再清除载入中的引用，期间的写入至少同步到其中一个
+            catalog = loading;
+        } finally {
+            if (loadingCatalog == loading) {
+                loadingCatalog = null;
+            }
+        }
+    }
+
+    /**
+     * 用已在内存中的图书目录（如从本地快照和变更日志还原的目录）载入列式目录，
+     * 再只从数据库补上 update_time 不早于 since 的行和已删除的行，不做全表扫描
+     * <p>
+     * 与 {@link #buildCatalog()} 一样，载入期间的写入同时记入正在载入的目录，完成后才开始使用。
+     */
+    public void loadCatalog(Collection<? extends Book> books, Timestamp since) throws SQLException {
+        ColumnarCatalog loading = new ColumnarCatalog();
+        loading.startLoading();
+        loadingCatalog = loading;
+        try {
+            for (Book book : books) {
+                loading.load(book.getId(), book);
+            }
+            try (ConnectionLease lease = lease()) {
+                Connection connection = lease.connection();
+                int afterId = 0;
+                boolean hasMore = true;
+                try (PreparedStatement statement = connection.prepareStatement(CHANGED_PAGE_SQL)) {
+                    statement.setTimestamp(1, since);
+                    while (hasMore) {
+                        statement.setInt(2, afterId);
+                        statement.setInt(3, fetchSize);
+                        int rows = 0;
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                afterId = resultSet.getInt(COLUMN_ID);
+                                loading.load(afterId, mapBook(resultSet));
+                                rows++;
+                            }
+                        }
+                        hasMore = rows == fetchSize;
+                    }
+                }
+                // 取自扫描之前，其中的图书要么来自快照要么已提交，扫描中找不到即已被删除
+                for (int id : deletedAmong(connection, loading.ids())) {
+                    loading.remove(id);
+                }
+            }
+            loading.finishLoading();
+            catalog = loading;
+        } finally {
+            if (loadingCatalog == loading) {
+                loadingCatalog = null;
+            }
+        }
+    }
+
+    /**
+     * 已载入的列式目录，未载入时返回null
+     */
+    public ColumnarCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * 用已在内存中的图书目录（如从本地快照和变更日志还原的目录）构建搜索索引，不访问数据库
+     * <p>
+     * 索引立即用于搜索，但在 {@link #reconcileSearchIndexes(Timestamp)} 完成之前
+     * 可能缺少其他进程的改动，因此这期间ISBN查重仍然查询数据库。
+     */
+    public void loadSearchIndexes(Collection<? extends Book> books) {
+        TitleIndex titles = new TitleIndex();
+        int[] ids = new int[books.size()];
+        String[] isbnValues = new String[books.size()];
+        int count = 0;
+        for (Book book : books) {
+            titles.add(book.getId(), book.getTitle());
+            ids[count] = book.getId();
+            isbnValues[count++] = book.getIsbn();
+        }
+        IsbnIndex isbns = new IsbnIndex();
+        isbns.addAll(ids, isbnValues);
+        indexesVerified = false;
+        titleIndex = titles;
+        isbnIndex = isbns;
+    }
+
+    /**
+     * 把数据库中 update_time 不早于 since 的行和已删除的行同步到搜索索引，完成后ISBN查重改用索引
+     * <p>
+     * 删除通过比较行数和ID之和发现，不一致时再扫描全部ID。对账期间独占一个借用的连接，
+     * 可以在后台线程上执行，与本对象上的其他操作并发。失败时丢弃索引，之后的搜索回到数据库查询。
+     */
+    public void reconcileSearchIndexes(Timestamp since) throws SQLException {
+        TitleIndex titles = titleIndex;
+        IsbnIndex isbns = isbnIndex;
+        if (titles == null || isbns == null) {
+            return;
+        }
+        try (ConnectionLease lease = lease()) {
+            Connection connection = lease.connection();
+            int afterId = 0;
+            boolean hasMore = true;
+            // ISBN变化的行攒到最后一次替换，不在每行上移动整个数组
+            int[] changedIds = new int[16];
+            String[] changedIsbns = new String[16];
+            int changed = 0;
+            try (PreparedStatement statement = connection.prepareStatement(CHANGED_INDEX_PAGE_SQL)) {
+                statement.setTimestamp(1, since);
+                while (hasMore) {
+                    statement.setInt(2, afterId);
+                    statement.setInt(3, fetchSize);
+                    int rows = 0;
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            afterId = resultSet.getInt(1);
+                            titles.add(afterId, resultSet.getString(2));
+                            String isbn = resultSet.getString(3);
+                            if (isbns.findExact(isbn) != afterId) {
+                                if (changed == changedIds.length) {
+                                    changedIds = Arrays.copyOf(changedIds, changed * 2);
+                                    changedIsbns = Arrays.copyOf(changedIsbns, changed * 2);
+                                }
+                                changedIds[changed] = afterId;
+                                changedIsbns[changed++] = isbn;
+                            }
+                            rows++;
+                        }
+                    }
+                    hasMore = rows == fetchSize;
+                }
+            }
+            if (changed > 0) {
+                int[] ids = Arrays.copyOf(changedIds, changed);
+                isbns.replaceAll(ids, ids, Arrays.copyOf(changedIsbns, changed));
+            }
+            removeDeletedFromIndexes(connection, titles, isbns);
+        } catch (SQLException | RuntimeException e) {
+            if (titleIndex == titles) {
+                titleIndex = null;
+                isbnIndex = null;
+            }
+            throw e;
+        }
+        if (titleIndex == titles) {
+            indexesVerified = true;
+        }
+    }
+
+    private void removeDeletedFromIndexes(Connection connection, TitleIndex titles, IsbnIndex isbns)
+            throws SQLException {
+        // indexed 取自扫描之前，其中的图书都已提交，扫描中找不到即已被删除
+        int[] deleted = deletedAmong(connection, titles.ids());
+        for (int id : deleted) {
+            titles.remove(id);
+        }
+        isbns.removeAll(deleted);
+    }
+
+    /**
+     * known 中已不在数据库里的ID：先比较行数和ID之和，一致时返回空数组，不一致时再扫描全部ID
+     */
+    private int[] deletedAmong(Connection connection, int[] known) throws SQLException {
+        long knownSum = 0;
+        for (int id : known) {
+            knownSum += id;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(CHECKSUM_SQL);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            if (resultSet.getLong(1) == known.length && resultSet.getLong(2) == knownSum) {
+                return new int[0];
+            }
+        }
+        BitSet present = new BitSet();
+        int afterId = 0;
+        boolean hasMore = true;
+        try (PreparedStatement statement = connection.prepareStatement(ID_PAGE_SQL)) {
+            while (hasMore) {
+                statement.setInt(1, afterId);
+                statement.setInt(2, fetchSize);
+                int rows = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        afterId = resultSet.getInt(1);
+                        present.set(afterId);
+                        rows++;
+                    }
+                }
+                hasMore = rows == fetchSize;
+            }
+        }
+        int[] deleted = new int[known.length];
+        int count = 0;
+        for (int id : known) {
+            if (!present.get(id)) {
+                deleted[count++] = id;
+            }
+        }
+        return Arrays.copyOf(deleted, count);
+    }
+
+    /**
+     * 可用于ISBN查重的索引：完整且已与数据库对账，否则返回null
+     */
+    private IsbnIndex verifiedIsbnIndex() {
+        IsbnIndex index = isbnIndex;
+        return index != null && indexesVerified && index.isComplete() ? index : null;
+    }
+
+    /**
+     * 关键字可以走索引时返回书名索引；空关键字或含 LIKE 通配符时仍交给数据库
+     */
+    private TitleIndex titleIndexFor(String title) {
+        TitleIndex index = titleIndex;
+        if (index == null || title == null || title.isEmpty()
+                || title.indexOf('%') >= 0 || title.indexOf('_') >= 0) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * 关键字可以走索引时返回ISBN索引；索引不完整、空关键字或含 LIKE 通配符时仍交给数据库
+     */
+    private IsbnIndex isbnIndexFor(String isbn) {
+        IsbnIndex index = isbnIndex;
+        if (index == null || !index.isComplete() || isbn == null || isbn.isEmpty()
+                || isbn.indexOf('%') >= 0 || isbn.indexOf('_') >= 0 || IsbnIndex.normalize(isbn) == null) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * 在已排好序的ID中取 afterId 之后的一页，再按ID从数据库取回这些行
+     */
+    private BookPage queryPageByIds(int[] ids, int afterId, int pageSize) throws SQLException {
+        BookPages.Rows<Book> rows = queryRowsByIds(BOOK_COLUMNS, ids, afterId, pageSize, BookDAO::mapBook,
+                ColumnarCatalog.Row::toBook);
+        return new BookPage(rows.items, rows.lastId, rows.hasMore);
+    }
+
+    private <T> BookPages.Rows<T> queryRowsByIds(String columns, int[] ids, int afterId, int pageSize,
+                                                 RowMapper<T> mapper, Function<ColumnarCatalog.Row, T> reader)
+            throws SQLException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + pageSize);
+        }
+        int pos = Arrays.binarySearch(ids, afterId);
+        int from = pos >= 0 ? pos + 1 : -pos - 1;
+        int to = Math.min(ids.length, from + pageSize);
+        if (from >= to) {
+            return new BookPages.Rows<>(new ArrayList<>(), afterId, false);
+        }
+        ColumnarCatalog resident = readableCatalog();
+        if (resident != null) {
+            return new BookPages.Rows<>(resident.get(ids, from, to, reader), ids[to - 1], to < ids.length);
+        }
+
+        int placeholders = Math.max(MIN_ID_BATCH, Integer.highestOneBit(to - from - 1) << 1);
+        String sql = "SELECT " + columns + " FROM books WHERE id IN ("
+                + String.join(", ", Collections.nCopies(placeholders, "?")) + ") ORDER BY id";
+        try (ConnectionLease lease = readLease();
+             PreparedStatement statement = lease.connection().prepareStatement(sql)) {
+            for (int i = 0; i < placeholders; i++) {
+                // 不足的占位符重复最后一个ID补齐
+                statement.setInt(i + 1, ids[Math.min(from + i, to - 1)]);
+            }
+            List<T> items = new ArrayList<>(to - from);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    items.add(mapper.map(resultSet));
+                }
+            }
+            return new BookPages.Rows<>(items, ids[to - 1], to < ids.length);
+        }
+    }
+
+    /**
+     * 在一个事务中写入 input[from, to)
+     */
+    private void writeBatch(ConnectionLease lease, List<Book> input, int from, int to, boolean upsert,
+                            Set<String> seen, BatchInsertResult result) throws SQLException {
+        Connection connection = lease.connection();
+        Map<String, Integer> existing = findExistingIsbns(connection, input, from, to);
+        List<Integer> inserts = new ArrayList<>();
+        List<Integer> updates = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Book book = input.get(i);
+            String key = isbnKey(book.getIsbn());
+            Integer existingId = key == null ? null : existing.get(key);
+            if (key != null && !seen.add(key)) {
+                result.set(i, book, BatchInsertResult.Status.DUPLICATE, existingId == null ? -1 : existingId,
+                        "ISBN在本批数据中重复: " + book.getIsbn());
+            } else if (existingId == null) {
+                inserts.add(i);
+            } else if (upsert) {
+                updates.add(i);
+            } else {
+                result.set(i, book, BatchInsertResult.Status.DUPLICATE, existingId, "ISBN已存在: " + book.getIsbn());
+            }
+        }
+
+        int[] ids;
+        try {
+            ids = insertRows(connection, input, inserts);
+            updateRows(connection, input, updates);
+            lease.commit();
+        } catch (SQLException e) {
+            lease.rollback();
+            writeRowByRow(lease, input, inserts, updates, upsert, existing, result);
+            return;
+        }
+        for (int j = 0; j < inserts.size(); j++) {
+            result.set(inserts.get(j), input.get(inserts.get(j)), BatchInsertResult.Status.INSERTED, ids[j], null);
+        }
+        for (int i : updates) {
+            result.set(i, input.get(i), BatchInsertResult.Status.UPDATED, existing.get(isbnKey(input.get(i).getIsbn())),
+                    null);
+        }
+    }
+
+    /**
+     * 整批写入失败后逐行写入，每行单独提交
+     */
+    private void writeRowByRow(ConnectionLease lease, List<Book> input, List<Integer> inserts, List<Integer> updates,
+                               boolean upsert, Map<String, Integer> existing, BatchInsertResult result)
+            throws SQLException {
+        Connection connection = lease.connection();
+        List<Integer> rows = new ArrayList<>(inserts);
+        rows.addAll(updates);
+        Collections.sort(rows);
+        for (int i : rows) {
+            Book book = input.get(i);
+            Integer existingId = existing.get(isbnKey(book.getIsbn()));
+            try {
+                if (existingId == null) {
+                    int id = insertRows(connection, input, Collections.singletonList(i))[0];
+                    lease.commit();
+                    result.set(i, book, BatchInsertResult.Status.INSERTED, id, null);
+                    continue;
+                }
+            } catch (SQLIntegrityConstraintViolationException e) {
+                lease.rollback();
+                if (!upsert) {
+                    result.set(i, book, BatchInsertResult.Status.DUPLICATE, -1, "ISBN已存在: " + book.getIsbn());
+                    continue;
+                }
+            } catch (SQLException e) {
+                lease.rollback();
+                result.set(i, book, BatchInsertResult.Status.FAILED, -1, e.getMessage());
+                continue;
+            }
+            // ISBN已存在且为覆盖模式
+            try {
+                if (updateRows(connection, input, Collections.singletonList(i))[0] == 0) {
+                    lease.rollback();
+                    result.set(i, book, BatchInsertResult.Status.FAILED, -1, "ISBN不存在，更新失败: " + book.getIsbn());
+                    continue;
+                }
+                lease.commit();
+                int id = existingId != null ? existingId : findIdByIsbn(connection, book.getIsbn());
+                result.set(i, book, BatchInsertResult.Status.UPDATED, id, null);
+            } catch (SQLException e) {
+                lease.rollback();
+                result.set(i, book, BatchInsertResult.Status.FAILED, -1, e.getMessage());
+            }
+        }
+    }
+
+    private void restoreBatch(ConnectionLease lease, List<Book> input, int from, int to, BatchInsertResult result)
+            throws SQLException {
+        Connection connection = lease.connection();
+        Map<String, Integer> isbnOwners = findExistingIsbns(connection, input, from, to);
+        Set<Integer> existingIds = findExistingIds(connection, input, from, to);
+        List<Integer> rows = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Book book = input.get(i);
+            Integer owner = isbnOwners.get(isbnKey(book.getIsbn()));
+            if (owner != null && owner != book.getId()) {
+                result.set(i, book, BatchInsertResult.Status.DUPLICATE, owner, "ISBN已被图书 " + owner + " 使用");
+            } else {
+                rows.add(i);
+            }
+        }
+
+        try {
+            upsertRows(connection, input, rows);
+            lease.commit();
+        } catch (SQLException e) {
+            lease.rollback();
+            for (int i : rows) {
+                try {
+                    upsertRows(connection, input, Collections.singletonList(i));
+                    lease.commit();
+                } catch (SQLException rowError) {
+                    lease.rollback();
+                    result.set(i, input.get(i), BatchInsertResult.Status.FAILED, -1, rowError.getMessage());
+                    continue;
+                }
+                recordRestored(input, i, existingIds, result);
+            }
+            return;
+        }
+        for (int i : rows) {
+            recordRestored(input, i, existingIds, result);
+        }
+    }
+
+    private static void recordRestored(List<Book> input, int i, Set<Integer> existingIds, BatchInsertResult result) {
+        Book book = input.get(i);
+        result.set(i, book, existingIds.contains(book.getId())
+                ? BatchInsertResult.Status.UPDATED : BatchInsertResult.Status.INSERTED, book.getId(), null);
+    }
+
+    /**
+     * 按原ID写入指定行，ID已存在时覆盖
+     */
+    private void upsertRows(Connection connection, List<Book> input, List<Integer> rows) throws SQLException {
+        for (int start = 0; start < rows.size(); start += MAX_ROWS_PER_INSERT) {
+            int count = Math.min(MAX_ROWS_PER_INSERT, rows.size() - start);
+            String sql = RESTORE_SQL + String.join(", ", Collections.nCopies(count, RESTORE_ROW)) + RESTORE_UPDATE;
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int j = 0; j < count; j++) {
+                    Book book = input.get(rows.get(start + j));
+                    statement.setInt(j * 7 + 1, book.getId());
+                    bindBook(statement, j * 7 + 2, book);
+                }
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * 查询 input[from, to) 中已存在于数据库的图书ID
+     */
+    private Set<Integer> findExistingIds(Connection connection, List<Book> input, int from, int to) throws SQLException {
+        Set<Integer> existing = new HashSet<>();
+        for (int start = from; start < to; start += MAX_ROWS_PER_INSERT) {
+            int end = Math.min(to, start + MAX_ROWS_PER_INSERT);
+            String sql = "SELECT id FROM books WHERE id IN ("
+                    + String.join(", ", Collections.nCopies(end - start, "?")) + ")";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = start; i < end; i++) {
+                    statement.setInt(i - start + 1, input.get(i).getId());
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.add(resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 查询 input[from, to) 中已存在于数据库的ISBN，索引完整时直接查索引
+     *
+     * @return 规范化ISBN到图书ID的映射
+     */
+    private Map<String, Integer> findExistingIsbns(Connection connection, List<Book> input, int from, int to)
+            throws SQLException {
+        Map<String, Integer> existing = new HashMap<>();
+        IsbnIndex index = verifiedIsbnIndex();
+        List<String> lookups = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            String isbn = input.get(i).getIsbn();
+            if (isbn == null) {
+                continue;
+            }
+            if (index != null && IsbnIndex.normalize(isbn) != null) {
+                int id = index.findExact(isbn);
+                if (id >= 0) {
+                    existing.put(isbnKey(isbn), id);
+                }
+            } else {
+                lookups.add(isbn);
+            }
+        }
+        for (int start = 0; start < lookups.size(); start += MAX_ROWS_PER_INSERT) {
+            List<String> slice = lookups.subList(start, Math.min(lookups.size(), start + MAX_ROWS_PER_INSERT));
+            String sql = "SELECT id, isbn FROM books WHERE isbn IN ("
+                    + String.join(", ", Collections.nCopies(slice.size(), "?")) + ")";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < slice.size(); i++) {
+                    statement.setString(i + 1, slice.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.put(isbnKey(resultSet.getString(2)), resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    private int findIdByIsbn(Connection connection, String isbn) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM books WHERE isbn = ?")) {
+            statement.setString(1, isbn);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * 用多行 INSERT 写入指定行
+     *
+     * @return 与 rows 一一对应的自增ID，驱动未返回时为-1
+     */
+    private int[] insertRows(Connection connection, List<Book> input, List<Integer> rows) throws SQLException {
+        int[] ids = new int[rows.size()];
+        Arrays.fill(ids, -1);
+        for (int start = 0; start < rows.size(); start += MAX_ROWS_PER_INSERT) {
+            int count = Math.min(MAX_ROWS_PER_INSERT, rows.size() - start);
+            String sql = INSERT_SQL + String.join(", ", Collections.nCopies(count, INSERT_ROW));
+            try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int j = 0; j < count; j++) {
+                    bindBook(statement, j * 6 + 1, input.get(rows.get(start + j)));
+                }
+                statement.executeUpdate();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (int j = start; j < start + count && keys.next(); j++) {
+                        ids[j] = keys.getInt(1);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 按ISBN批量更新指定行
+     *
+     * @return 每行的更新行数
+     */
+    private int[] updateRows(Connection connection, List<Book> input, List<Integer> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_BY_ISBN_SQL)) {
+            for (int i : rows) {
+                Book book = input.get(i);
+                statement.setString(1, book.getTitle());
+                statement.setString(2, book.getAuthor());
+                statement.setString(3, book.getCategory());
+                statement.setString(4, book.getPublishDate());
+                statement.setString(5, BookFactory.getExtraInfo(book));
+                statement.setString(6, book.getIsbn());
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    /**
+     * 从 offset 开始依次绑定 INSERT 的六个字段
+     */
+    private static void bindBook(PreparedStatement statement, int offset, Book book) throws SQLException {
+        statement.setString(offset, book.getTitle());
+        statement.setString(offset + 1, book.getAuthor());
+        statement.setString(offset + 2, book.getIsbn());
+        statement.setString(offset + 3, book.getCategory());
+        statement.setString(offset + 4, book.getPublishDate());
+        statement.setString(offset + 5, BookFactory.getExtraInfo(book));
+    }
+
+    /**
+     * 与数据库不区分大小写的唯一键比较一致的ISBN键
+     */
+    private static String isbnKey(String isbn) {
+        return isbn == null ? null : isbn.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 把 result[from, to) 中写入成功的行记入变更日志，整批只等待一次落盘；这些行已提交，写入失败时只把日志标记为降级
+     */
+    private void journalRows(BatchInsertResult result, int from, int to) {
+        MutationJournal log = journal;
+        if (log == null) {
+            return;
+        }
+        try {
+            long lsn = 0;
+            for (BatchInsertResult.Row row : result.getRows().subList(from, to)) {
+                if ((row.getStatus() == BatchInsertResult.Status.INSERTED
+                        || row.getStatus() == BatchInsertResult.Status.UPDATED) && row.getId() > 0) {
+                    lsn = log.appendBookPut(row.getId(), row.getBook());
+                }
+            }
+            if (lsn > 0) {
+                log.awaitDurable(lsn);
+            }
+        } catch (IOException e) {
+            log.markDegraded("图书已批量保存", e);
+        }
+    }
+
+    /**
+     * 把 result[from, to) 中写入成功的行同步到列式目录和内存索引，新增行的ISBN整批并入索引
+     */
+    private void indexRows(BatchInsertResult result, int from, int to) {
+        if (catalog != null || loadingCatalog != null) {
+            for (BatchInsertResult.Row row : result.getRows().subList(from, to)) {
+                if (row.getId() > 0 && (row.getStatus() == BatchInsertResult.Status.INSERTED
+                        || row.getStatus() == BatchInsertResult.Status.UPDATED)) {
+                    catalogPut(row.getId(), row.getBook());
+                }
+            }
+        }
+        TitleIndex titles = titleIndex;
+        IsbnIndex isbns = isbnIndex;
+        if (titles == null && isbns == null) {
+            return;
+        }
+        int[] insertedIds = new int[to - from];
+        String[] insertedIsbns = new String[to - from];
+        int inserted = 0;
+        for (BatchInsertResult.Row row : result.getRows().subList(from, to)) {
+            if (row.getId() <= 0) {
+                continue;
+            }
+            if (row.getStatus() == BatchInsertResult.Status.INSERTED) {
+                insertedIds[inserted] = row.getId();
+                insertedIsbns[inserted++] = row.getBook().getIsbn();
+            } else if (row.getStatus() != BatchInsertResult.Status.UPDATED) {
+                continue;
+            }
+            if (titles != null) {
+                titles.add(row.getId(), row.getBook().getTitle());
+            }
+        }
+        if (isbns != null && inserted > 0) {
+            isbns.addAll(Arrays.copyOf(insertedIds, inserted), Arrays.copyOf(insertedIsbns, inserted));
+        }
+    }
+
+    /**
+     * 新增或更新图书后同步内存索引，更新按ISBN匹配，ISBN索引无需变动
+     */
+    private void indexBook(int id, Book book, boolean inserted) {
+        TitleIndex titles = titleIndex;
+        if (titles != null) {
+            titles.add(id, book.getTitle());
+        }
+        IsbnIndex isbns = isbnIndex;
+        if (isbns != null && inserted) {
+            isbns.add(id, book.getIsbn());
+        }
+    }
+
+    /**
+     * 借用本次操作的连接，当前线程开启了事务时使用事务的连接
+     */
+    private ConnectionLease lease() throws SQLException {
+        return ConnectionLease.open(dataSource);
+    }
+
+    /**
+     * 借用查询的连接：有事务时使用事务的连接，否则从读数据源借用
+     */
+    private ConnectionLease readLease() throws SQLException {
+        return ConnectionLease.openForRead(dataSource, readDataSource);
+    }
+
+    private void recordWrite() {
+        ReplicaRouter.recordWrite(readDataSource);
+    }
+
+    /**
+     * 可以回答读取的目录：已载入，且当前线程不在事务中（事务中未提交的改动只在数据库里）
+     */
+    private ColumnarCatalog readableCatalog() {
+        ColumnarCatalog resident = catalog;
+        return resident != null && !inUnitOfWork() ? resident : null;
+    }
+
+    private void catalogPut(int id, Book book) {
+        ColumnarCatalog resident = catalog;
+        if (resident != null) {
+            resident.put(id, book);
+        }
+        ColumnarCatalog loading = loadingCatalog;
+        if (loading != null && loading != resident) {
+            loading.put(id, book);
+        }
+    }
+
+    private void catalogRemove(int id) {
+        ColumnarCatalog resident = catalog;
+        if (resident != null) {
+            resident.remove(id);
+        }
+        ColumnarCatalog loading = loadingCatalog;
+        if (loading != null && loading != resident) {
+            loading.remove(id);
+        }
     }
 
     /**
-     * 执行查询并返回图书列表
+     * 当前线程是否在本对象的数据源上开启了事务
      */
-    private List<Book> executeBookQuery(PreparedStatement statement) throws SQLException {
-        ResultSet resultSet = statement.executeQuery();
-        List<Book> books = new ArrayList<>();
-        while (resultSet.next()) {
-            books.add(createBookFromResultSet(resultSet));
+    protected boolean inUnitOfWork() {
+        return UnitOfWork.current(dataSource) != null;
+    }
+
+    /**
+     * 当前操作的写入提交后执行 action：不在事务中时立即执行，否则推迟到事务提交之后
+     */
+    protected void afterCommit(UnitOfWork.CommitAction action) throws SQLException {
+        UnitOfWork work = UnitOfWork.current(dataSource);
+        if (work != null) {
+            work.afterCommit(action);
+        } else {
+            action.run();
         }
-        return books;
     }
 
-    private Book createBookFromResultSet(ResultSet rs) throws SQLException {
+    /**
+     * 把结果集的当前行转为一个对象
+     */
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * 按 BOOK_COLUMNS 的列序号读取图书
+     */
+    private static Book mapBook(ResultSet rs) throws SQLException {
         return BookFactory.createBook(
-            rs.getString("category"),
-            rs.getInt("id"),
-            rs.getString("title"),
-            rs.getString("author"),
-            rs.getString("isbn"),
-            rs.getString("publish_date"),
-            rs.getString("extra_info")
+            rs.getString(COLUMN_CATEGORY),
+            rs.getInt(COLUMN_ID),
+            rs.getString(COLUMN_TITLE),
+            rs.getString(COLUMN_AUTHOR),
+            rs.getString(COLUMN_ISBN),
+            rs.getString(COLUMN_PUBLISH_DATE),
+            rs.getString(COLUMN_EXTRA_INFO)
         );
     }
+
+    /**
+     * 按 SUMMARY_COLUMNS 的列序号读取图书摘要
+     */
+    private static BookSummary mapSummary(ResultSet rs) throws SQLException {
+        return new BookSummary(rs.getInt(COLUMN_ID), rs.getString(COLUMN_TITLE), rs.getString(COLUMN_AUTHOR),
+                rs.getString(COLUMN_ISBN), rs.getString(COLUMN_CATEGORY), rs.getString(COLUMN_PUBLISH_DATE));
+    }
 }
@@ -0,0 +1,35 @@
+package com.flash.dao;
+
+import com.flash.pojo.Book;
+
+import java.util.List;
+
+/**
+ * 按主键分页读取的一页图书，lastId 作为下一页查询的起点
+ */
+public class BookPage {
+    private final List<Book> books;
+    private final int lastId;
+    private final boolean hasMore;
+
+    public BookPage(List<Book> books, int lastId, boolean hasMore) {
+        this.books = books;
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    /**
+     * 本页最后一本图书的ID，空页时为查询起点
+     */
+    public int getLastId() {
+        return lastId;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
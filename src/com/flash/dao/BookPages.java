@@ -0,0 +1,119 @@
+package com.flash.dao;
+
+import com.flash.pojo.Book;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 把按ID分页的查询包装成惰性流，供各个 {@link BookRepository} 实现共用
+ */
+final class BookPages {
+
+    /**
+     * 按起点读取一页图书
+     */
+    @FunctionalInterface
+    interface PageQuery {
+        BookPage load(int afterId, int pageSize) throws SQLException;
+    }
+
+    /**
+     * 按主键分页读取的一页任意行，如图书摘要
+     */
+    static final class Rows<T> {
+        final List<T> items;
+        final int lastId;
+        final boolean hasMore;
+
+        Rows(List<T> items, int lastId, boolean hasMore) {
+            this.items = items;
+            this.lastId = lastId;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /**
+     * 按起点读取一页任意行
+     */
+    @FunctionalInterface
+    interface RowsQuery<T> {
+        Rows<T> load(int afterId, int pageSize) throws SQLException;
+    }
+
+    private BookPages() {
+    }
+
+    /**
+     * 惰性分页读取，流被消费到当前页末尾时才查询下一页
+     */
+    static Stream<Book> stream(PageQuery query, int pageSize) {
+        return streamRows((afterId, size) -> {
+            BookPage page = query.load(afterId, size);
+            return new Rows<>(page.getBooks(), page.getLastId(), page.hasMore());
+        }, pageSize);
+    }
+
+    static <T> Stream<T> streamRows(RowsQuery<T> query, int pageSize) {
+        Iterator<T> iterator = new PageIterator<>(query, pageSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    /**
+     * 读完整个流，把分页读取失败还原为 SQLException
+     */
+    static <T> List<T> collect(Stream<T> books) throws SQLException {
+        try {
+            return books.collect(Collectors.toList());
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 惰性分页迭代器，当前页读完后才查询下一页
+     */
+    private static class PageIterator<T> implements Iterator<T> {
+        private final RowsQuery<T> query;
+        private final int pageSize;
+        private Rows<T> page;
+        private Iterator<T> current;
+
+        PageIterator(RowsQuery<T> query, int pageSize) {
+            this.query = query;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                if (page != null && !page.hasMore) {
+                    return false;
+                }
+                try {
+                    page = query.load(page == null ? 0 : page.lastId, pageSize);
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException("分页读取图书失败: " + e.getMessage(), e);
+                }
+                current = page.items.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
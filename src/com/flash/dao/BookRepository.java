@@ -0,0 +1,108 @@
+package com.flash.dao;
+
+import com.flash.pojo.Book;
+import com.flash.pojo.BookSummary;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 图书存储接口，{@link BookDAO} 基于 MySQL 实现，{@link EmbeddedBookDAO} 基于本地文件实现
+ * <p>
+ * 存储错误统一以 {@link SQLException} 报告，ISBN重复为 {@link java.sql.SQLIntegrityConstraintViolationException}；
+ * 流式方法在读取失败时抛出 {@link UncheckedSQLException}。
+ */
+public interface BookRepository {
+    /**
+     * 添加图书
+     */
+    boolean addBook(Book book) throws SQLException;
+
+    /**
+     * 以默认批大小批量添加图书，ISBN已存在的行记为重复
+     */
+    BatchInsertResult addBooks(Collection<? extends Book> books) throws SQLException;
+
+    /**
+     * 批量添加图书，同一次调用中ISBN重复的行只有第一行会写入
+     *
+     * @param upsert true 时ISBN已存在的图书按ISBN更新，false 时记为重复
+     */
+    BatchInsertResult addBooks(Collection<? extends Book> books, int batchSize, boolean upsert)
+            throws SQLException;
+
+    /**
+     * 根据ID查询图书，不存在时返回null
+     */
+    Book getBookById(int id) throws SQLException;
+
+    /**
+     * 删除图书
+     */
+    boolean deleteBook(int id) throws SQLException;
+
+    /**
+     * 判断ISBN是否已存在
+     */
+    boolean isbnExists(String isbn) throws SQLException;
+
+    List<Book> getAllBooks() throws SQLException;
+
+    List<Book> getBooksByCategory(String category) throws SQLException;
+
+    List<Book> searchBooksByTitle(String title) throws SQLException;
+
+    List<Book> searchBooksByIsbn(String isbn) throws SQLException;
+
+    List<Book> searchBooksByIsbnPrefix(String prefix) throws SQLException;
+
+    /**
+     * 分页获取图书，按ID升序
+     *
+     * @param afterId 上一页的 {@link BookPage#getLastId()}，首页传0
+     */
+    BookPage getAllBooksPage(int afterId, int pageSize) throws SQLException;
+
+    BookPage getBooksByCategoryPage(String category, int afterId, int pageSize) throws SQLException;
+
+    BookPage searchBooksByTitlePage(String title, int afterId, int pageSize) throws SQLException;
+
+    BookPage searchBooksByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException;
+
+    /**
+     * 流式读取所有图书，按ID升序逐页加载
+     */
+    Stream<Book> streamAllBooks();
+
+    Stream<Book> streamBooksByCategory(String category);
+
+    Stream<Book> streamBooksByTitle(String title);
+
+    Stream<Book> streamBooksByIsbn(String isbn);
+
+    /**
+     * 流式读取所有图书的摘要，供列表显示；条件与对应的 stream 方法相同
+     */
+    Stream<BookSummary> streamAllSummaries();
+
+    Stream<BookSummary> streamSummariesByCategory(String category);
+
+    Stream<BookSummary> streamSummariesByTitle(String title);
+
+    Stream<BookSummary> streamSummariesByIsbn(String isbn);
+
+    /**
+     * 分页读取图书摘要，供逐页浏览的列表；条件与对应的 Page 方法相同
+     *
+     * @param afterId 上一页的 {@link SummaryPage#getLastId()}，首页传0
+     */
+    SummaryPage getAllSummariesPage(int afterId, int pageSize) throws SQLException;
+
+    SummaryPage getSummariesByCategoryPage(String category, int afterId, int pageSize) throws SQLException;
+
+    SummaryPage searchSummariesByTitlePage(String title, int afterId, int pageSize) throws SQLException;
+
+    SummaryPage searchSummariesByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException;
+}
@@ -0,0 +1,605 @@
+package com.flash.dao;
+
+import com.flash.cache.LruCache;
+import com.flash.pojo.Book;
+import com.flash.pojo.BookSummary;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 带读穿透缓存的图书数据访问对象
+ * <p>
+ * 按ID缓存图书实体，按（查询类型, 参数）缓存查询结果，两者都是带过期时间的LRU缓存，
+ * 查询结果按列表长度计权重。流式查询只有在完整读完且结果不超过单条上限时才写入缓存。
+ * addBook 只使可能包含新书的查询失效，deleteBook 只使包含该书的查询失效。
+ * 每次写操作递增版本号，加载期间发生过写操作的结果不再写入缓存，避免缓存旧数据。
+ * 在 {@link UnitOfWork} 中的读取直接访问数据库，既不读也不写缓存；事务中的写操作
+ * 在事务提交之后才使缓存失效。
+ * 摘要查询命中同条件的缓存图书时由缓存的图书转换，否则查摘要缓存，未命中时查询摘要列，
+ * 与流式查询一样读完才写入摘要缓存。
+ * 分页查询按（查询类型, 参数, 起点ID, 每页行数）缓存整页，摘要页未命中时也可由同一页的缓存图书转换；
+ * 失效规则与完整结果相同。摘要、分页和摘要分页缓存各自计权，上限与查询缓存相同。
+ */
+public class CachingBookDAO extends BookDAO {
+    private final LruCache<Integer, Book> bookCache;
+    private final LruCache<QueryKey, List<Book>> queryCache;
+    private final LruCache<QueryKey, List<BookSummary>> summaryCache;
+    private final LruCache<QueryKey, BookPage> pageCache;
+    private final LruCache<QueryKey, SummaryPage> summaryPageCache;
+    /** 单个查询结果可缓存的最大行数，避免一次大查询冲掉整个缓存 */
+    private final int maxResultSize;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @param maxCachedBooks 实体缓存条目数上限，也是所有缓存查询结果的总行数上限
+     * @param ttlMillis 缓存条目的存活时间，0表示不过期
+     */
+    public CachingBookDAO(DataSource dataSource, int maxCachedBooks, long ttlMillis) {
+        this(dataSource, dataSource, maxCachedBooks, ttlMillis);
+    }
+
+    /**
+     * @param readDataSource 缓存未命中时查询使用的数据源
+     */
+    public CachingBookDAO(DataSource dataSource, DataSource readDataSource, int maxCachedBooks, long ttlMillis) {
+        super(dataSource, readDataSource);
+        this.bookCache = new LruCache<>(maxCachedBooks, ttlMillis);
+        this.queryCache = new LruCache<>(maxCachedBooks, ttlMillis, List::size);
+        this.summaryCache = new LruCache<>(maxCachedBooks, ttlMillis, List::size);
+        this.pageCache = new LruCache<>(maxCachedBooks, ttlMillis, page -> page.getBooks().size());
+        this.summaryPageCache = new LruCache<>(maxCachedBooks, ttlMillis, page -> page.getSummaries().size());
+        this.maxResultSize = Math.max(1, maxCachedBooks / 4);
+    }
+
+    @Override
+    public Book getBookById(int id) throws SQLException {
+        if (inUnitOfWork()) {
+            return super.getBookById(id);
+        }
+        Book cached = bookCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        Book book = super.getBookById(id);
+        if (book != null) {
+            synchronized (queryCache) {
+                if (version.get() == loadVersion) {
+                    bookCache.putLoaded(id, book, System.nanoTime() - start);
+                }
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public boolean addBook(Book book) throws SQLException {
+        boolean added = super.addBook(book);
+        if (added) {
+            afterCommit(() -> {
+                version.incrementAndGet();
+                invalidateQueries((key, ids) -> key.mayContain(book));
+            });
+        }
+        return added;
+    }
+
+    /**
+     * 批量写入后按行失效；写入行数超过单条结果上限时直接清空查询缓存
+     */
+    @Override
+    public BatchInsertResult addBooks(Collection<? extends Book> books, int batchSize, boolean upsert)
+            throws SQLException {
+        BatchInsertResult result;
+        try {
+            result = super.addBooks(books, batchSize, upsert);
+        } catch (SQLException | RuntimeException e) {
+            // 出错之前可能已有批次提交，进行中的加载结果不再写入缓存
+            version.incrementAndGet();
+            throw e;
+        }
+        afterCommit(() -> {
+            version.incrementAndGet();
+            invalidateWritten(result);
+        });
+        return result;
+    }
+
+    private void invalidateWritten(BatchInsertResult result) {
+        List<BatchInsertResult.Row> inserted = result.getRows(BatchInsertResult.Status.INSERTED);
+        List<BatchInsertResult.Row> updated = result.getRows(BatchInsertResult.Status.UPDATED);
+        for (BatchInsertResult.Row row : updated) {
+            bookCache.invalidate(row.getId());
+        }
+        if (inserted.size() + updated.size() > maxResultSize) {
+            invalidateAllQueries();
+            return;
+        }
+        Set<Integer> updatedIds = new HashSet<>();
+        for (BatchInsertResult.Row row : updated) {
+            updatedIds.add(row.getId());
+        }
+        invalidateQueries((key, ids) -> {
+            for (BatchInsertResult.Row row : inserted) {
+                if (key.mayContain(row.getBook())) {
+                    return true;
+                }
+            }
+            for (BatchInsertResult.Row row : updated) {
+                if (key.mayContain(row.getBook())) {
+                    return true;
+                }
+            }
+            for (int id : ids) {
+                if (updatedIds.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public boolean deleteBook(int id) throws SQLException {
+        boolean deleted = super.deleteBook(id);
+        if (deleted) {
+            afterCommit(() -> {
+                version.incrementAndGet();
+                bookCache.invalidate(id);
+                invalidateQueries((key, ids) -> contains(ids, id));
+            });
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Book> getAllBooks() throws SQLException {
+        return collect(streamAllBooks());
+    }
+
+    @Override
+    public List<Book> getBooksByCategory(String category) throws SQLException {
+        return collect(streamBooksByCategory(category));
+    }
+
+    @Override
+    public List<Book> searchBooksByTitle(String title) throws SQLException {
+        return collect(streamBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> searchBooksByIsbn(String isbn) throws SQLException {
+        return collect(streamBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> searchBooksByIsbnPrefix(String prefix) throws SQLException {
+        if (inUnitOfWork()) {
+            return super.searchBooksByIsbnPrefix(prefix);
+        }
+        QueryKey key = new QueryKey(QueryType.ISBN_PREFIX, prefix);
+        List<Book> cached = queryCache.get(key);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        List<Book> books = super.searchBooksByIsbnPrefix(prefix);
+        cacheResult(key, new ArrayList<>(books), loadVersion, System.nanoTime() - start);
+        return books;
+    }
+
+    @Override
+    public BookPage getAllBooksPage(int afterId, int pageSize) throws SQLException {
+        return cachedPage(new QueryKey(QueryType.ALL, "", afterId, pageSize),
+                () -> super.getAllBooksPage(afterId, pageSize));
+    }
+
+    @Override
+    public BookPage getBooksByCategoryPage(String category, int afterId, int pageSize) throws SQLException {
+        return cachedPage(new QueryKey(QueryType.CATEGORY, category, afterId, pageSize),
+                () -> super.getBooksByCategoryPage(category, afterId, pageSize));
+    }
+
+    @Override
+    public BookPage searchBooksByTitlePage(String title, int afterId, int pageSize) throws SQLException {
+        return cachedPage(new QueryKey(QueryType.TITLE, title, afterId, pageSize),
+                () -> super.searchBooksByTitlePage(title, afterId, pageSize));
+    }
+
+    @Override
+    public BookPage searchBooksByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException {
+        return cachedPage(new QueryKey(QueryType.ISBN, isbn, afterId, pageSize),
+                () -> super.searchBooksByIsbnPage(isbn, afterId, pageSize));
+    }
+
+    @Override
+    public SummaryPage getAllSummariesPage(int afterId, int pageSize) throws SQLException {
+        return cachedSummaryPage(new QueryKey(QueryType.ALL, "", afterId, pageSize),
+                () -> super.getAllSummariesPage(afterId, pageSize));
+    }
+
+    @Override
+    public SummaryPage getSummariesByCategoryPage(String category, int afterId, int pageSize)
+            throws SQLException {
+        return cachedSummaryPage(new QueryKey(QueryType.CATEGORY, category, afterId, pageSize),
+                () -> super.getSummariesByCategoryPage(category, afterId, pageSize));
+    }
+
+    @Override
+    public SummaryPage searchSummariesByTitlePage(String title, int afterId, int pageSize) throws SQLException {
+        return cachedSummaryPage(new QueryKey(QueryType.TITLE, title, afterId, pageSize),
+                () -> super.searchSummariesByTitlePage(title, afterId, pageSize));
+    }
+
+    @Override
+    public SummaryPage searchSummariesByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException {
+        return cachedSummaryPage(new QueryKey(QueryType.ISBN, isbn, afterId, pageSize),
+                () -> super.searchSummariesByIsbnPage(isbn, afterId, pageSize));
+    }
+
+    @Override
+    public Stream<Book> streamAllBooks() {
+        return cachedStream(new QueryKey(QueryType.ALL, ""), super::streamAllBooks);
+    }
+
+    @Override
+    public Stream<Book> streamBooksByCategory(String category) {
+        return cachedStream(new QueryKey(QueryType.CATEGORY, category), () -> super.streamBooksByCategory(category));
+    }
+
+    @Override
+    public Stream<Book> streamBooksByTitle(String title) {
+        return cachedStream(new QueryKey(QueryType.TITLE, title), () -> super.streamBooksByTitle(title));
+    }
+
+    @Override
+    public Stream<Book> streamBooksByIsbn(String isbn) {
+        return cachedStream(new QueryKey(QueryType.ISBN, isbn), () -> super.streamBooksByIsbn(isbn));
+    }
+
+    @Override
+    public Stream<BookSummary> streamAllSummaries() {
+        return cachedSummaries(new QueryKey(QueryType.ALL, ""), super::streamAllSummaries);
+    }
+
+    @Override
+    public Stream<BookSummary> streamSummariesByCategory(String category) {
+        return cachedSummaries(new QueryKey(QueryType.CATEGORY, category),
+                () -> super.streamSummariesByCategory(category));
+    }
+
+    @Override
+    public Stream<BookSummary> streamSummariesByTitle(String title) {
+        return cachedSummaries(new QueryKey(QueryType.TITLE, title), () -> super.streamSummariesByTitle(title));
+    }
+
+    @Override
+    public Stream<BookSummary> streamSummariesByIsbn(String isbn) {
+        return cachedSummaries(new QueryKey(QueryType.ISBN, isbn), () -> super.streamSummariesByIsbn(isbn));
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public String getCacheStatus() {
+        return "图书缓存 - " + bookCache.getStats() + "\n查询缓存 - " + queryCache.getStats()
+                + "\n摘要缓存 - " + summaryCache.getStats() + "\n分页缓存 - " + pageCache.getStats()
+                + "\n摘要分页缓存 - " + summaryPageCache.getStats();
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        bookCache.invalidateAll();
+        invalidateAllQueries();
+    }
+
+    private void invalidateAllQueries() {
+        queryCache.invalidateAll();
+        summaryCache.invalidateAll();
+        pageCache.invalidateAll();
+        summaryPageCache.invalidateAll();
+    }
+
+    /**
+     * 使各个查询结果缓存中 stale 为 true 的条目失效，stale 的第二个参数是该结果中的图书ID
+     */
+    private void invalidateQueries(BiPredicate<QueryKey, int[]> stale) {
+        queryCache.invalidateIf((key, books) -> stale.test(key, ids(books, Book::getId)));
+        summaryCache.invalidateIf((key, rows) -> stale.test(key, ids(rows, BookSummary::getId)));
+        pageCache.invalidateIf((key, page) -> stale.test(key, ids(page.getBooks(), Book::getId)));
+        summaryPageCache.invalidateIf((key, page) -> stale.test(key, ids(page.getSummaries(), BookSummary::getId)));
+    }
+
+    /**
+     * 命中时直接返回缓存列表的流；未命中时边读边收集，读完且未超过单条上限才写入缓存
+     */
+    private Stream<Book> cachedStream(QueryKey key, StreamLoader loader) {
+        if (inUnitOfWork()) {
+            return loader.load();
+        }
+        List<Book> cached = queryCache.get(key);
+        if (cached != null) {
+            return cached.stream();
+        }
+        return collecting(loader.load(), (books, loadVersion, loadNanos) ->
+                cacheResult(key, books, loadVersion, loadNanos));
+    }
+
+    /**
+     * 优先由同条件的缓存图书转换，其次查摘要缓存；都未命中时边读边收集，读完后写入摘要缓存
+     */
+    private Stream<BookSummary> cachedSummaries(QueryKey key, SummaryLoader loader) {
+        if (inUnitOfWork()) {
+            return loader.load();
+        }
+        List<Book> books = queryCache.get(key);
+        if (books != null) {
+            return books.stream().map(BookSummary::of);
+        }
+        List<BookSummary> cached = summaryCache.get(key);
+        if (cached != null) {
+            return cached.stream();
+        }
+        return collecting(loader.load(), (summaries, loadVersion, loadNanos) ->
+                cacheLoaded(summaryCache, key, summaries, summaries.size(), loadVersion, loadNanos));
+    }
+
+    /**
+     * 命中时返回缓存页的副本；未命中时读取一页，加载期间没有写操作时写入缓存
+     */
+    private BookPage cachedPage(QueryKey key, PageLoader<BookPage> loader) throws SQLException {
+        if (inUnitOfWork()) {
+            return loader.load();
+        }
+        BookPage cached = pageCache.get(key);
+        if (cached != null) {
+            return new BookPage(new ArrayList<>(cached.getBooks()), cached.getLastId(), cached.hasMore());
+        }
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        BookPage page = loader.load();
+        BookPage copy = new BookPage(new ArrayList<>(page.getBooks()), page.getLastId(), page.hasMore());
+        if (cacheLoaded(pageCache, key, copy, copy.getBooks().size(), loadVersion, System.nanoTime() - start)) {
+            for (Book book : copy.getBooks()) {
+                bookCache.put(book.getId(), book);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 优先查摘要分页缓存，其次由同一页的缓存图书转换，都未命中时读取一页并写入摘要分页缓存
+     */
+    private SummaryPage cachedSummaryPage(QueryKey key, PageLoader<SummaryPage> loader) throws SQLException {
+        if (inUnitOfWork()) {
+            return loader.load();
+        }
+        SummaryPage cached = summaryPageCache.get(key);
+        if (cached != null) {
+            return new SummaryPage(new ArrayList<>(cached.getSummaries()), cached.getLastId(), cached.hasMore());
+        }
+        BookPage books = pageCache.get(key);
+        if (books != null) {
+            List<BookSummary> summaries = new ArrayList<>(books.getBooks().size());
+            for (Book book : books.getBooks()) {
+                summaries.add(BookSummary.of(book));
+            }
+            return new SummaryPage(summaries, books.getLastId(), books.hasMore());
+        }
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        SummaryPage page = loader.load();
+        cacheLoaded(summaryPageCache, key,
+                new SummaryPage(new ArrayList<>(page.getSummaries()), page.getLastId(), page.hasMore()),
+                page.getSummaries().size(), loadVersion, System.nanoTime() - start);
+        return page;
+    }
+
+    private <T> Stream<T> collecting(Stream<T> source, ResultSink<T> sink) {
+        Iterator<T> iterator = new CollectingIterator<>(source.iterator(), sink);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    private void cacheResult(QueryKey key, List<Book> books, long loadVersion, long loadNanos) {
+        if (cacheLoaded(queryCache, key, books, books.size(), loadVersion, loadNanos)) {
+            for (Book book : books) {
+                bookCache.put(book.getId(), book);
+            }
+        }
+    }
+
+    /**
+     * 加载期间没有写操作且不超过单条上限时写入缓存
+     *
+     * @return 是否已写入
+     */
+    private <V> boolean cacheLoaded(LruCache<QueryKey, V> cache, QueryKey key, V value, int rows,
+                                    long loadVersion, long loadNanos) {
+        if (rows > maxResultSize) {
+            return false;
+        }
+        synchronized (queryCache) {
+            if (version.get() != loadVersion) {
+                return false;
+            }
+            cache.putLoaded(key, value, loadNanos);
+            return true;
+        }
+    }
+
+    private static List<Book> collect(Stream<Book> books) throws SQLException {
+        try {
+            List<Book> result = new ArrayList<>();
+            books.forEachOrdered(result::add);
+            return result;
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static <T> int[] ids(List<T> rows, ToIntFunction<T> idOf) {
+        int[] ids = new int[rows.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idOf.applyAsInt(rows.get(i));
+        }
+        return ids;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (int candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface StreamLoader {
+        Stream<Book> load();
+    }
+
+    @FunctionalInterface
+    private interface SummaryLoader {
+        Stream<BookSummary> load();
+    }
+
+    @FunctionalInterface
+    private interface PageLoader<T> {
+        T load() throws SQLException;
+    }
+
+    /**
+     * 接收读完的完整结果
+     */
+    @FunctionalInterface
+    private interface ResultSink<T> {
+        void accept(List<T> rows, long loadVersion, long loadNanos);
+    }
+
+    /**
+     * 透传底层流并收集结果，底层流读完时交给 sink 写入缓存
+     */
+    private class CollectingIterator<T> implements Iterator<T> {
+        private final Iterator<T> source;
+        private final ResultSink<T> sink;
+        private final long loadVersion = version.get();
+        private final long start = System.nanoTime();
+        private List<T> collected = new ArrayList<>();
+
+        CollectingIterator(Iterator<T> source, ResultSink<T> sink) {
+            this.source = source;
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = source.hasNext();
+            if (!hasNext && collected != null) {
+                sink.accept(collected, loadVersion, System.nanoTime() - start);
+                collected = null;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            T row = source.next();
+            if (collected != null) {
+                collected.add(row);
+                if (collected.size() > maxResultSize) {
+                    collected = null;
+                }
+            }
+            return row;
+        }
+    }
+
+    private enum QueryType {
+        ALL, CATEGORY, TITLE, ISBN, ISBN_PREFIX
+    }
+
+    /**
+     * 查询结果的缓存键，分页查询还包括起点ID和每页行数，完整结果的这两项为0
+     */
+    private static final class QueryKey {
+        private final QueryType type;
+        private final String argument;
+        private final int afterId;
+        private final int pageSize;
+
+        QueryKey(QueryType type, String argument) {
+            this(type, argument, 0, 0);
+        }
+
+        QueryKey(QueryType type, String argument, int afterId, int pageSize) {
+            this.type = type;
+            this.argument = argument == null ? "" : argument;
+            this.afterId = afterId;
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * 新增的图书是否可能出现在该查询的结果中，含 LIKE 通配符的关键字一律视为可能
+         */
+        boolean mayContain(Book book) {
+            boolean wildcard = argument.indexOf('%') >= 0 || argument.indexOf('_') >= 0;
+            switch (type) {
+                case CATEGORY:
+                    return argument.equalsIgnoreCase(book.getCategory());
+                case TITLE:
+                    return wildcard || containsIgnoreCase(book.getTitle(), argument);
+                case ISBN:
+                    return wildcard || containsIgnoreCase(book.getIsbn(), argument);
+                case ISBN_PREFIX:
+                    return wildcard || book.getIsbn() != null
+                            && book.getIsbn().toUpperCase().startsWith(argument.toUpperCase());
+                default:
+                    return true;
+            }
+        }
+
+        private static boolean containsIgnoreCase(String value, String keyword) {
+            return value != null && value.toLowerCase().contains(keyword.toLowerCase());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) o;
+            return type == other.type && argument.equals(other.argument)
+                    && afterId == other.afterId && pageSize == other.pageSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, argument, afterId, pageSize);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.flash.dao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * DAO 单次操作对连接的借用
+ * <p>
+ * 当前线程在该数据源上没有进行中的 {@link UnitOfWork} 时，从数据源借一个连接，close() 时归还；
+ * 有时复用事务的连接，close() 不归还。多语句写入用 begin()/commit()/rollback() 划分事务：
+ * 独立借用时对应真正的事务提交和回滚，在事务范围内对应保存点，由事务范围决定最终提交。
+ */
+final class ConnectionLease implements AutoCloseable {
+    private final Connection connection;
+    private final UnitOfWork work;
+    private boolean transactional;
+    private boolean autoCommit;
+    private Savepoint savepoint;
+
+    private ConnectionLease(Connection connection, UnitOfWork work) {
+        this.connection = connection;
+        this.work = work;
+    }
+
+    static ConnectionLease open(DataSource dataSource) throws SQLException {
+        UnitOfWork work = UnitOfWork.current(dataSource);
+        if (work != null) {
+            return new ConnectionLease(work.connection(), work);
+        }
+        return new ConnectionLease(dataSource.getConnection(), null);
+    }
+
+    /**
+     * 借用读连接：在事务范围内复用事务的连接，否则从 readDataSource 借用
+     */
+    static ConnectionLease openForRead(DataSource dataSource, DataSource readDataSource) throws SQLException {
+        UnitOfWork work = UnitOfWork.current(dataSource);
+        if (work != null) {
+            return new ConnectionLease(work.connection(), work);
+        }
+        return new ConnectionLease(readDataSource.getConnection(), null);
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    /**
+     * 开始多语句写入
+     */
+    void begin() throws SQLException {
+        if (work != null) {
+            savepoint = connection.setSavepoint();
+        } else {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+        }
+        transactional = true;
+    }
+
+    /**
+     * 提交 begin() 或上一次 commit() 之后的写入；在事务范围内改为设置新的保存点
+     */
+    void commit() throws SQLException {
+        if (work != null) {
+            connection.releaseSavepoint(savepoint);
+            savepoint = connection.setSavepoint();
+        } else {
+            connection.commit();
+        }
+    }
+
+    /**
+     * 撤销 begin() 或上一次 commit() 之后的写入
+     */
+    void rollback() throws SQLException {
+        if (work != null) {
+            connection.rollback(savepoint);
+            savepoint = connection.setSavepoint();
+        } else {
+            connection.rollback();
+        }
+    }
+
+    /**
+     * 写入已提交后要执行的操作，如同步搜索索引、记录变更日志：
+     * 独立借用时立即执行，在事务范围内推迟到事务提交之后
+     */
+    void afterCommit(UnitOfWork.CommitAction action) throws SQLException {
+        if (work != null) {
+            work.afterCommit(action);
+        } else {
+            action.run();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (work != null) {
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+            return;
+        }
+        try (connection) {
+            if (transactional) {
+                // 异常中断时撤销未提交的写入，再交还连接
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.flash.dao;
+
+import com.flash.utils.DatabaseUtil;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步 DAO 调用的执行器
+ * <p>
+ * 每个调用在一个虚拟线程上执行，同时执行的调用数受许可数限制，默认等于连接池的 pool.maxSize，
+ * 超出的调用在虚拟线程上排队等待许可，不会堆积到连接池的等待队列里触发借用超时。
+ * 返回的 future 被取消或超时时，正在执行的调用所在线程会被中断，等待许可或连接的调用随即结束；
+ * 超时以 {@link SQLTimeoutException} 结束 future。
+ * <p>
+ * 调用在执行器的线程上运行，不参与调用方线程上的 {@link UnitOfWork}。
+ */
+public class DaoExecutor implements AutoCloseable {
+    private final Semaphore permits;
+    private final long defaultTimeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * 异步执行的 DAO 调用
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * @param maxConcurrency       同时执行的调用数上限
+     * @param defaultTimeoutMillis 未单独指定时每次调用的超时时间，0表示不超时
+     */
+    public DaoExecutor(int maxConcurrency, long defaultTimeoutMillis) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("并发数必须大于0: " + maxConcurrency);
+        }
+        if (defaultTimeoutMillis < 0) {
+            throw new IllegalArgumentException("超时时间不能为负数: " + defaultTimeoutMillis);
+        }
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dao-async-", 0).factory());
+        this.timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "dao-async-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 调用先于超时完成时取消的计时任务立即移出队列
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 按配置创建：async.maxConcurrency 默认取 pool.maxSize，async.timeout 为默认超时(毫秒)
+     */
+    public static DaoExecutor fromConfig() {
+        int poolSize = DatabaseUtil.getIntConfig("pool.maxSize", 10);
+        return new DaoExecutor(DatabaseUtil.getIntConfig("async.maxConcurrency", poolSize),
+                DatabaseUtil.getLongConfig("async.timeout", 10000));
+    }
+
+    public long getDefaultTimeoutMillis() {
+        return defaultTimeoutMillis;
+    }
+
+    /**
+     * 以默认超时异步执行
+     */
+    public <T> CompletableFuture<T> submit(Call<T> call) {
+        return submit(call, defaultTimeoutMillis);
+    }
+
+    /**
+     * 异步执行 call
+     *
+     * @param timeoutMillis 从提交开始计算的超时时间，包括排队等待许可的时间，0表示不超时
+     */
+    public <T> CompletableFuture<T> submit(Call<T> call, long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("超时时间不能为负数: " + timeoutMillis);
+        }
+        CallFuture<T> future = new CallFuture<>();
+        try {
+            executor.execute(() -> run(future, call));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new SQLException("异步执行器已关闭", e));
+            return future;
+        }
+        if (timeoutMillis > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                if (future.completeExceptionally(
+                        new SQLTimeoutException("数据库操作超时（超过 " + timeoutMillis + "ms）"))) {
+                    future.interruptRunner();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, error) -> timeout.cancel(false));
+        }
+        return future;
+    }
+
+    private <T> void run(CallFuture<T> future, Call<T> call) {
+        future.runner = Thread.currentThread();
+        try {
+            // 在设置 runner 之后检查，取消要么在这里被看到，要么能看到 runner 并中断它
+            if (future.isDone()) {
+                return;
+            }
+            permits.acquire();
+            try {
+                if (!future.isDone()) {
+                    future.complete(call.call());
+                }
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            future.completeExceptionally(new SQLException("数据库操作被中断", e));
+        } catch (SQLException | RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            future.runner = null;
+        }
+    }
+
+    /**
+     * 不再接受新调用，已提交的调用继续执行
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        timer.shutdownNow();
+    }
+
+    /**
+     * 取消时中断执行调用的线程
+     */
+    private static final class CallFuture<T> extends CompletableFuture<T> {
+        private volatile Thread runner;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                interruptRunner();
+            }
+            return cancelled;
+        }
+
+        void interruptRunner() {
+            Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
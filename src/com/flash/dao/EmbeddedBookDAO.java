@@ -0,0 +1,339 @@
+package com.flash.dao;
+
+import com.flash.pojo.Book;
+import com.flash.pojo.BookSummary;
+import com.flash.storage.EmbeddedStore;
+
+import java.io.IOException;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 基于 {@link EmbeddedStore} 的图书存储，不需要数据库服务
+ * <p>
+ * 每个写操作在返回前刷盘，批量添加每 batchSize 行刷盘一次。存储层的 {@link IOException}
+ * 包装为 {@link SQLException}，与 {@link BookDAO} 的错误处理保持一致。
+ */
+public class EmbeddedBookDAO implements BookRepository {
+    private final EmbeddedStore store;
+    private final int fetchSize;
+
+    public EmbeddedBookDAO(EmbeddedStore store) {
+        this(store, BookDAO.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * @param fetchSize 流式读取时每页的行数
+     */
+    public EmbeddedBookDAO(EmbeddedStore store, int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + fetchSize);
+        }
+        this.store = store;
+        this.fetchSize = fetchSize;
+    }
+
+    public boolean addBook(Book book) throws SQLException {
+        try {
+            if (store.insert(book) < 0) {
+                throw new SQLIntegrityConstraintViolationException("ISBN已存在: " + book.getIsbn());
+            }
+            store.sync();
+            return true;
+        } catch (IllegalArgumentException e) {
+            throw new SQLDataException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new SQLException("写入图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public BatchInsertResult addBooks(Collection<? extends Book> books) throws SQLException {
+        return addBooks(books, BookDAO.DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * 批量添加图书，逐行写入，每 batchSize 行刷盘一次
+     */
+    public BatchInsertResult addBooks(Collection<? extends Book> books, int batchSize, boolean upsert)
+            throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("每批行数必须大于0: " + batchSize);
+        }
+        List<Book> input = new ArrayList<>(books);
+        BatchInsertResult result = new BatchInsertResult(input.size());
+        Set<String> seen = new HashSet<>();
+        try {
+            for (int i = 0; i < input.size(); i++) {
+                Book book = input.get(i);
+                String key = book.getIsbn() == null ? null : book.getIsbn().toUpperCase(Locale.ROOT);
+                if (key != null && !seen.add(key)) {
+                    result.set(i, book, BatchInsertResult.Status.DUPLICATE, store.findIdByIsbn(key),
+                            "ISBN在本批数据中重复: " + book.getIsbn());
+                } else {
+                    writeRow(input, i, upsert, result);
+                }
+                if ((i + 1) % batchSize == 0) {
+                    store.sync();
+                }
+            }
+            store.sync();
+        } catch (IOException e) {
+            throw new SQLException("批量写入图书失败: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    public Book getBookById(int id) throws SQLException {
+        try {
+            return store.get(id);
+        } catch (IOException e) {
+            throw new SQLException("读取图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public boolean deleteBook(int id) throws SQLException {
+        try {
+            if (!store.delete(id)) {
+                return false;
+            }
+            store.sync();
+            return true;
+        } catch (IOException e) {
+            throw new SQLException("删除图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public boolean isbnExists(String isbn) throws SQLException {
+        try {
+            return store.findIdByIsbn(isbn) >= 0;
+        } catch (IOException e) {
+            throw new SQLException("查询ISBN失败: " + e.getMessage(), e);
+        }
+    }
+
+    public List<Book> getAllBooks() throws SQLException {
+        return BookPages.collect(streamAllBooks());
+    }
+
+    public List<Book> getBooksByCategory(String category) throws SQLException {
+        return BookPages.collect(streamBooksByCategory(category));
+    }
+
+    public List<Book> searchBooksByTitle(String title) throws SQLException {
+        return BookPages.collect(streamBooksByTitle(title));
+    }
+
+    public List<Book> searchBooksByIsbn(String isbn) throws SQLException {
+        return BookPages.collect(streamBooksByIsbn(isbn));
+    }
+
+    public List<Book> searchBooksByIsbnPrefix(String prefix) throws SQLException {
+        try {
+            int[] ids = store.findIsbnPrefix(prefix);
+            return BookPages.collect(BookPages.stream((afterId, pageSize) -> pageByIds(ids, afterId, pageSize),
+                    fetchSize));
+        } catch (IOException e) {
+            throw new SQLException("查询ISBN失败: " + e.getMessage(), e);
+        }
+    }
+
+    public BookPage getAllBooksPage(int afterId, int pageSize) throws SQLException {
+        checkPageSize(pageSize);
+        try {
+            return toPage(store.scan(afterId, pageSize + 1), afterId, pageSize);
+        } catch (IOException e) {
+            throw new SQLException("读取图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public BookPage getBooksByCategoryPage(String category, int afterId, int pageSize) throws SQLException {
+        checkPageSize(pageSize);
+        try {
+            return toPage(store.scanCategory(category, afterId, pageSize + 1), afterId, pageSize);
+        } catch (IOException e) {
+            throw new SQLException("读取图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public BookPage searchBooksByTitlePage(String title, int afterId, int pageSize) throws SQLException {
+        if (title == null || title.isEmpty()) {
+            return getAllBooksPage(afterId, pageSize);
+        }
+        try {
+            return pageByIds(store.searchTitle(title), afterId, pageSize);
+        } catch (IOException e) {
+            throw new SQLException("搜索图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public BookPage searchBooksByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException {
+        if (isbn == null || isbn.isEmpty()) {
+            return getAllBooksPage(afterId, pageSize);
+        }
+        try {
+            return pageByIds(store.findIsbnContaining(isbn), afterId, pageSize);
+        } catch (IOException e) {
+            throw new SQLException("搜索图书失败: " + e.getMessage(), e);
+        }
+    }
+
+    public Stream<Book> streamAllBooks() {
+        return BookPages.stream(this::getAllBooksPage, fetchSize);
+    }
+
+    public Stream<Book> streamBooksByCategory(String category) {
+        return BookPages.stream((afterId, pageSize) -> getBooksByCategoryPage(category, afterId, pageSize),
+                fetchSize);
+    }
+
+    /**
+     * 流式按书名关键字搜索图书，匹配的ID在第一次读取时求出
+     */
+    public Stream<Book> streamBooksByTitle(String title) {
+        if (title == null || title.isEmpty()) {
+            return streamAllBooks();
+        }
+        int[][] ids = new int[1][];
+        return BookPages.stream((afterId, pageSize) -> {
+            if (ids[0] == null) {
+                try {
+                    ids[0] = store.searchTitle(title);
+                } catch (IOException e) {
+                    throw new SQLException("搜索图书失败: " + e.getMessage(), e);
+                }
+            }
+            return pageByIds(ids[0], afterId, pageSize);
+        }, fetchSize);
+    }
+
+    /**
+     * 流式按ISBN关键字搜索图书，匹配的ID在第一次读取时求出
+     */
+    public Stream<Book> streamBooksByIsbn(String isbn) {
+        if (isbn == null || isbn.isEmpty()) {
+            return streamAllBooks();
+        }
+        int[][] ids = new int[1][];
+        return BookPages.stream((afterId, pageSize) -> {
+            if (ids[0] == null) {
+                try {
+                    ids[0] = store.findIsbnContaining(isbn);
+                } catch (IOException e) {
+                    throw new SQLException("搜索图书失败: " + e.getMessage(), e);
+                }
+            }
+            return pageByIds(ids[0], afterId, pageSize);
+        }, fetchSize);
+    }
+
+    /**
+     * 本地存储按行保存整本图书，摘要由读出的图书对象转换
+     */
+    public Stream<BookSummary> streamAllSummaries() {
+        return streamAllBooks().map(BookSummary::of);
+    }
+
+    public Stream<BookSummary> streamSummariesByCategory(String category) {
+        return streamBooksByCategory(category).map(BookSummary::of);
+    }
+
+    public Stream<BookSummary> streamSummariesByTitle(String title) {
+        return streamBooksByTitle(title).map(BookSummary::of);
+    }
+
+    public Stream<BookSummary> streamSummariesByIsbn(String isbn) {
+        return streamBooksByIsbn(isbn).map(BookSummary::of);
+    }
+
+    public SummaryPage getAllSummariesPage(int afterId, int pageSize) throws SQLException {
+        return toSummaryPage(getAllBooksPage(afterId, pageSize));
+    }
+
+    public SummaryPage getSummariesByCategoryPage(String category, int afterId, int pageSize)
+            throws SQLException {
+        return toSummaryPage(getBooksByCategoryPage(category, afterId, pageSize));
+    }
+
+    public SummaryPage searchSummariesByTitlePage(String title, int afterId, int pageSize) throws SQLException {
+        return toSummaryPage(searchBooksByTitlePage(title, afterId, pageSize));
+    }
+
+    public SummaryPage searchSummariesByIsbnPage(String isbn, int afterId, int pageSize) throws SQLException {
+        return toSummaryPage(searchBooksByIsbnPage(isbn, afterId, pageSize));
+    }
+
+    private void writeRow(List<Book> input, int i, boolean upsert, BatchInsertResult result) throws IOException {
+        Book book = input.get(i);
+        try {
+            int id = store.insert(book);
+            if (id >= 0) {
+                result.set(i, book, BatchInsertResult.Status.INSERTED, id, null);
+            } else if (!upsert) {
+                result.set(i, book, BatchInsertResult.Status.DUPLICATE, store.findIdByIsbn(book.getIsbn()),
+                        "ISBN已存在: " + book.getIsbn());
+            } else {
+                id = store.updateByIsbn(book);
+                result.set(i, book, BatchInsertResult.Status.UPDATED, id, null);
+            }
+        } catch (IllegalArgumentException e) {
+            result.set(i, book, BatchInsertResult.Status.FAILED, -1, e.getMessage());
+        }
+    }
+
+    /**
+     * 从升序ID数组中取 afterId 之后的一页
+     */
+    private BookPage pageByIds(int[] ids, int afterId, int pageSize) throws SQLException {
+        checkPageSize(pageSize);
+        int pos = Arrays.binarySearch(ids, afterId);
+        int from = pos >= 0 ? pos + 1 : -pos - 1;
+        int to = Math.min(ids.length, from + pageSize);
+        List<Book> books = new ArrayList<>(Math.max(0, to - from));
+        try {
+            for (int i = from; i < to; i++) {
+                Book book = store.get(ids[i]);
+                if (book != null) {
+                    books.add(book);
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("读取图书失败: " + e.getMessage(), e);
+        }
+        return new BookPage(books, to > from ? ids[to - 1] : afterId, to < ids.length);
+    }
+
+    /**
+     * 多读了一行的结果转为一页
+     */
+    private static BookPage toPage(List<Book> books, int afterId, int pageSize) {
+        boolean hasMore = books.size() > pageSize;
+        if (hasMore) {
+            books.remove(pageSize);
+        }
+        int lastId = books.isEmpty() ? afterId : books.get(books.size() - 1).getId();
+        return new BookPage(books, lastId, hasMore);
+    }
+
+    private static SummaryPage toSummaryPage(BookPage page) {
+        List<BookSummary> summaries = new ArrayList<>(page.getBooks().size());
+        for (Book book : page.getBooks()) {
+            summaries.add(BookSummary.of(book));
+        }
+        return new SummaryPage(summaries, page.getLastId(), page.hasMore());
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + pageSize);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.flash.dao;
+
+import com.flash.pojo.User;
+import com.flash.storage.EmbeddedStore;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+/**
+ * 基于 {@link EmbeddedStore} 的用户存储，不需要数据库服务。
+ */
+public class EmbeddedUserDAO implements UserRepository {
+    private final EmbeddedStore store;
+
+    public EmbeddedUserDAO(EmbeddedStore store) {
+        this.store = store;
+    }
+
+    /**
+     * 注册用户，写入后刷盘。
+     */
+    public boolean registerUser(User user) throws SQLException {
+        try {
+            if (!store.addUser(user)) {
+                throw new SQLIntegrityConstraintViolationException("用户名已存在: " + user.getUsername());
+            }
+            store.sync();
+            return true;
+        } catch (IOException e) {
+            throw new SQLException("注册用户失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 用户登录。
+     */
+    public User loginUser(String username, String password) {
+        User user = store.getUser(username);
+        return user != null && user.getPassword().equals(password) ? user : null;
+    }
+}
@@ -0,0 +1,35 @@
+package com.flash.dao;
+
+import com.flash.pojo.BookSummary;
+
+import java.util.List;
+
+/**
+ * 按主键分页读取的一页图书摘要，lastId 作为下一页查询的起点
+ */
+public class SummaryPage {
+    private final List<BookSummary> summaries;
+    private final int lastId;
+    private final boolean hasMore;
+
+    public SummaryPage(List<BookSummary> summaries, int lastId, boolean hasMore) {
+        this.summaries = summaries;
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+    }
+
+    public List<BookSummary> getSummaries() {
+        return summaries;
+    }
+
+    /**
+     * 本页最后一本图书的ID，空页时为查询起点
+     */
+    public int getLastId() {
+        return lastId;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,19 @@
+package com.flash.dao;
+
+import java.sql.SQLException;
+
+/**
+ * 包装 {@link SQLException} 的非受检异常，用于无法声明受检异常的场合（如 Stream 的惰性迭代）
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(String message, SQLException cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -0,0 +1,196 @@
+package com.flash.dao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 显式的事务范围：把同一线程上的多次 DAO 调用放进一个数据库事务
+ * <p>
+ * begin() 从数据源借一个连接并关闭自动提交，绑定到当前线程。在 commit() 或 close() 之前，
+ * 当前线程上使用同一数据源的 BookDAO、UserDAO 都复用这个连接，不再各自借用；
+ * 批量写入的分批提交改为保存点，失败时只回滚到保存点。搜索索引、变更日志和缓存的更新
+ * 推迟到 commit() 之后执行，回滚的改动不会出现在其中。
+ * 提交或回滚后事务范围即与线程解绑；close() 时尚未提交则回滚，然后归还连接。用法：
+ * <pre>
+ * try (UnitOfWork work = UnitOfWork.begin(dataSource)) {
+ *     bookDAO.deleteBook(oldId);
+ *     bookDAO.addBook(replacement);
+ *     work.commit();
+ * }
+ * </pre>
+ * 事务范围只对开启它的线程有效，同一线程在同一数据源上不能嵌套开启。
+ */
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<Map<DataSource, UnitOfWork>> ACTIVE = new ThreadLocal<>();
+
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final boolean autoCommit;
+    private final List<CommitAction> afterCommit = new ArrayList<>();
+    /** 已提交或已回滚 */
+    private boolean completed;
+    private boolean closed;
+
+    /**
+     * 事务提交之后执行的操作
+     */
+    @FunctionalInterface
+    public interface CommitAction {
+        void run() throws SQLException;
+    }
+
+    /**
+     * 在事务中执行的一组操作
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T execute() throws SQLException;
+    }
+
+    private UnitOfWork(DataSource dataSource, Connection connection, boolean autoCommit) {
+        this.dataSource = dataSource;
+        this.connection = connection;
+        this.autoCommit = autoCommit;
+    }
+
+    /**
+     * 在当前线程上开启事务
+     *
+     * @throws IllegalStateException 当前线程已在该数据源上开启了事务
+     */
+    public static UnitOfWork begin(DataSource dataSource) throws SQLException {
+        if (current(dataSource) != null) {
+            throw new IllegalStateException("当前线程已在该数据源上开启事务，不支持嵌套");
+        }
+        Connection connection = dataSource.getConnection();
+        UnitOfWork work;
+        try {
+            work = new UnitOfWork(dataSource, connection, connection.getAutoCommit());
+            connection.setAutoCommit(false);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        Map<DataSource, UnitOfWork> active = ACTIVE.get();
+        if (active == null) {
+            active = new IdentityHashMap<>();
+            ACTIVE.set(active);
+        }
+        active.put(dataSource, work);
+        return work;
+    }
+
+    /**
+     * 在一个事务中执行 work，正常返回时提交，抛出异常时回滚
+     */
+    public static <T> T execute(DataSource dataSource, Work<T> work) throws SQLException {
+        try (UnitOfWork unit = begin(dataSource)) {
+            T result = work.execute();
+            unit.commit();
+            return result;
+        }
+    }
+
+    /**
+     * 当前线程在该数据源上进行中的事务，没有时返回null
+     */
+    static UnitOfWork current(DataSource dataSource) {
+        Map<DataSource, UnitOfWork> active = ACTIVE.get();
+        return active == null ? null : active.get(dataSource);
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    /**
+     * 登记提交之后执行的操作，按登记顺序执行；事务回滚时丢弃
+     */
+    void afterCommit(CommitAction action) {
+        checkActive();
+        afterCommit.add(action);
+    }
+
+    /**
+     * 提交事务，然后执行登记的提交后操作
+     * <p>
+     * 提交后操作全部执行，其中第一个失败的异常在最后抛出，此时数据库改动已经提交。
+     */
+    public void commit() throws SQLException {
+        checkActive();
+        connection.commit();
+        completed = true;
+        unbind();
+        SQLException failure = null;
+        for (CommitAction action : afterCommit) {
+            try {
+                action.run();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        afterCommit.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 回滚事务，丢弃登记的提交后操作
+     */
+    public void rollback() throws SQLException {
+        checkActive();
+        completed = true;
+        unbind();
+        afterCommit.clear();
+        connection.rollback();
+    }
+
+    /**
+     * 尚未提交则回滚，恢复自动提交并归还连接
+     */
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unbind();
+        try (connection) {
+            if (!completed) {
+                completed = true;
+                afterCommit.clear();
+                connection.rollback();
+            }
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 解除与当前线程的绑定，之后的 DAO 调用重新各自借用连接
+     */
+    private void unbind() {
+        Map<DataSource, UnitOfWork> active = ACTIVE.get();
+        if (active != null && active.get(dataSource) == this) {
+            active.remove(dataSource);
+            if (active.isEmpty()) {
+                ACTIVE.remove();
+            }
+        }
+    }
+
+    private void checkActive() {
+        if (closed || completed) {
+            throw new IllegalStateException("事务已结束");
+        }
+    }
+}
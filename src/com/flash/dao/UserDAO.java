@@ -1,20 +1,33 @@
 package com.flash.dao;
 
+import com.flash.journal.MutationJournal;
 import com.flash.pojo.User;
+import com.flash.utils.ReplicaRouter;
 
-import java.sql.Connection;
+import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
  * 用户数据访问对象，提供用户相关的数据库操作。
+ * <p>
+ * 每次操作从数据源借用连接，操作结束即归还；当前线程开启了 {@link UnitOfWork} 时改用事务的连接。
+ * 登录查询使用读数据源，注册后标记当前会话，与 {@link BookDAO} 相同。
  */
-public class UserDAO {
-    private Connection connection;
+public class UserDAO implements UserRepository {
+    private final DataSource dataSource;
+    private final DataSource readDataSource;
+    private volatile MutationJournal journal;
 
-    public UserDAO(Connection connection) {
-        this.connection = connection;
+    public UserDAO(DataSource dataSource) {
+        this(dataSource, dataSource);
+    }
+
+    public UserDAO(DataSource dataSource, DataSource readDataSource) {
+        this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
     }
 
     /**
@@ -22,11 +35,34 @@ public class UserDAO {
      */
     public boolean registerUser(User user) throws SQLException {
         String sql = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setString(1, user.getUsername());
-        statement.setString(2, user.getPassword());
-        statement.setString(3, user.getRole());
-        return statement.executeUpdate() > 0;
+        try (ConnectionLease lease = ConnectionLease.open(dataSource);
+             PreparedStatement statement = lease.connection().prepareStatement(sql)) {
+            statement.setString(1, user.getUsername());
+            statement.setString(2, user.getPassword());
+            statement.setString(3, user.getRole());
+            if (statement.executeUpdate() == 0) {
+                return false;
+            }
+            lease.afterCommit(() -> ReplicaRouter.recordWrite(readDataSource));
+            MutationJournal log = journal;
+            if (log != null) {
+                lease.afterCommit(() -> {
+                    try {
+                        log.logUserRegister(user);
+                    } catch (IOException e) {
+                        log.markDegraded("用户已注册(" + user.getUsername() + ")", e);
+                    }
+                });
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 设置变更日志，null 表示不记录。
+     */
+    public void setJournal(MutationJournal journal) {
+        this.journal = journal;
     }
 
     /**
@@ -34,17 +70,20 @@ public class UserDAO {
      */
     public User loginUser(String username, String password) throws SQLException {
         String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setString(1, username);
-        statement.setString(2, password);
-        ResultSet resultSet = statement.executeQuery();
-        if (resultSet.next()) {
-            return new User(
-                    resultSet.getString("username"),
-                    resultSet.getString("password"),
-                    resultSet.getString("role")
-            );
+        try (ConnectionLease lease = ConnectionLease.openForRead(dataSource, readDataSource);
+             PreparedStatement statement = lease.connection().prepareStatement(sql)) {
+            statement.setString(1, username);
+            statement.setString(2, password);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return new User(
+                            resultSet.getString("username"),
+                            resultSet.getString("password"),
+                            resultSet.getString("role")
+                    );
+                }
+                return null;
+            }
         }
-        return null;
     }
 }
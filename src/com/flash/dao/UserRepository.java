@@ -0,0 +1,20 @@
+package com.flash.dao;
+
+import com.flash.pojo.User;
+
+import java.sql.SQLException;
+
+/**
+ * 用户存储接口，{@link UserDAO} 基于 MySQL 实现，{@link EmbeddedUserDAO} 基于本地文件实现。
+ */
+public interface UserRepository {
+    /**
+     * 注册用户，用户名已存在时抛出 {@link java.sql.SQLIntegrityConstraintViolationException}。
+     */
+    boolean registerUser(User user) throws SQLException;
+
+    /**
+     * 用户登录，用户名或密码错误时返回null。
+     */
+    User loginUser(String username, String password) throws SQLException;
+}
@@ -0,0 +1,64 @@
+package com.flash.factory;
+
+import com.flash.pojo.Book;
+
+import java.util.function.Function;
+
+/**
+ * 一个图书分类的注册信息：分类名、对应的图书子类、额外信息的含义，
+ * 以及由一行数据创建图书和取出额外信息的方法
+ */
+public final class BookCategory {
+    private final String name;
+    private final Class<? extends Book> type;
+    private final String extraLabel;
+    private final Creator creator;
+    private final Function<Book, String> extraInfo;
+
+    /**
+     * 由一行数据创建图书，注册时通常给出子类的构造方法引用
+     */
+    @FunctionalInterface
+    public interface Creator {
+        Book create(int id, String title, String author, String isbn, String publishDate, String extraInfo);
+    }
+
+    /**
+     * @param name       分类名，与数据库 category 列的值相同
+     * @param type       该分类的图书子类
+     * @param extraLabel 额外信息的含义，如“编程语言”，用于界面提示
+     * @param creator    创建图书的方法
+     * @param extraInfo  从图书中取出额外信息，即 creator 的 extraInfo 参数
+     */
+    public <T extends Book> BookCategory(String name, Class<T> type, String extraLabel, Creator creator,
+                                         Function<T, String> extraInfo) {
+        this.name = name;
+        this.type = type;
+        this.extraLabel = extraLabel;
+        this.creator = creator;
+        this.extraInfo = book -> extraInfo.apply(type.cast(book));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<? extends Book> getType() {
+        return type;
+    }
+
+    public String getExtraLabel() {
+        return extraLabel;
+    }
+
+    public Book create(int id, String title, String author, String isbn, String publishDate, String extraInfo) {
+        return creator.create(id, title, author, isbn, publishDate, extraInfo);
+    }
+
+    /**
+     * book 的额外信息，book 须为本分类的子类
+     */
+    public String getExtraInfo(Book book) {
+        return extraInfo.apply(book);
+    }
+}
@@ -4,19 +4,31 @@ import com.flash.pojo.*;
 
 /**
  * 图书工厂类，负责创建不同类型的图书对象
+ * <p>
+ * 分类与图书子类的对应关系由 {@link CategoryRegistry} 维护；
+ * 未注册的分类创建为 {@link GenericBook}，读取到新分类的行时不会中断整个查询。
  */
 public class BookFactory {
-    public static Book createBook(String category, int id, String title, 
-                                String author, String isbn, String publishDate, 
+    public static Book createBook(String category, int id, String title,
+                                String author, String isbn, String publishDate,
                                 String extraInfo) {
-        switch (category.toLowerCase()) {
-            case "计算机":
-                return new ComputerBook(id, title, author, isbn, publishDate, extraInfo);
-            case "文学":
-                return new LiteratureBook(id, title, author, isbn, publishDate, extraInfo);
-            // 可以添加更多图书类型
-            default:
-                throw new IllegalArgumentException("不支持的图书类型: " + category);
+        BookCategory registered = CategoryRegistry.find(category);
+        if (registered == null) {
+            return new GenericBook(category, id, title, author, isbn, publishDate, extraInfo);
         }
+        return registered.create(id, title, author, isbn, publishDate, extraInfo);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 获取图书的额外信息，即 createBook 的 extraInfo 参数
+     */
+    public static String getExtraInfo(Book book) {
+        BookCategory registered = CategoryRegistry.forType(book.getClass());
+        if (registered != null) {
+            return registered.getExtraInfo(book);
+        } else if (book instanceof GenericBook) {
+            return ((GenericBook) book).getExtraInfo();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,100 @@
+package com.flash.factory;
+
+import com.flash.pojo.Book;
+import com.flash.pojo.ComputerBook;
+import com.flash.pojo.LawBook;
+import com.flash.pojo.LiteratureBook;
+import com.flash.pojo.MedicalBook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 图书分类注册表
+ * <p>
+ * 内置计算机、文学、医学和法学四个分类，新的分类通过 {@link #register(BookCategory)} 加入，
+ * 不需要修改 {@link BookFactory}。按分类名查找先精确匹配（数据库读出的值通常与注册名相同），
+ * 未命中再忽略大小写比较，查找过程不创建对象；按图书子类查找使用以 Class 为键的 IdentityHashMap。
+ * 注册时复制整张表再替换，查找不加锁。
+ */
+public final class CategoryRegistry {
+    private static final Object LOCK = new Object();
+    private static volatile Map<String, BookCategory> byName = Collections.emptyMap();
+    private static volatile Map<Class<? extends Book>, BookCategory> byType = new IdentityHashMap<>();
+    private static volatile List<BookCategory> ordered = Collections.emptyList();
+
+    static {
+        register(new BookCategory("计算机", ComputerBook.class, "编程语言", ComputerBook::new,
+                ComputerBook::getProgrammingLanguage));
+        register(new BookCategory("文学", LiteratureBook.class, "文学流派", LiteratureBook::new,
+                LiteratureBook::getGenre));
+        register(new BookCategory("医学", MedicalBook.class, "医学专科", MedicalBook::new,
+                MedicalBook::getSpecialty));
+        register(new BookCategory("法学", LawBook.class, "法律部门", LawBook::new, LawBook::getBranch));
+    }
+
+    private CategoryRegistry() {
+    }
+
+    /**
+     * 注册一个分类
+     *
+     * @throws IllegalArgumentException 分类名或图书子类已注册
+     */
+    public static void register(BookCategory category) {
+        synchronized (LOCK) {
+            if (find(category.getName()) != null) {
+                throw new IllegalArgumentException("图书分类已注册: " + category.getName());
+            }
+            if (byType.containsKey(category.getType())) {
+                throw new IllegalArgumentException("图书类型已注册: " + category.getType().getName());
+            }
+            Map<String, BookCategory> names = new HashMap<>(byName);
+            names.put(category.getName(), category);
+            Map<Class<? extends Book>, BookCategory> types = new IdentityHashMap<>(byType);
+            types.put(category.getType(), category);
+            List<BookCategory> list = new ArrayList<>(ordered);
+            list.add(category);
+            byName = names;
+            byType = types;
+            ordered = Collections.unmodifiableList(list);
+        }
+    }
+
+    /**
+     * 按分类名查找，忽略大小写，未注册时返回null
+     */
+    public static BookCategory find(String name) {
+        if (name == null) {
+            return null;
+        }
+        BookCategory category = byName.get(name);
+        if (category != null) {
+            return category;
+        }
+        for (BookCategory candidate : ordered) {
+            if (candidate.getName().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按图书子类查找，未注册时返回null
+     */
+    public static BookCategory forType(Class<? extends Book> type) {
+        return byType.get(type);
+    }
+
+    /**
+     * 全部已注册的分类，按注册顺序
+     */
+    public static List<BookCategory> all() {
+        return ordered;
+    }
+}
@@ -0,0 +1,420 @@
+package com.flash.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ISBN内存索引，支持精确查找、前缀查找和片段查找
+ * <p>
+ * ISBN按ASCII定长写入一块 byte[]，槽位按字典序排列，另有平行的 int[] 保存图书ID，
+ * 前缀查找即二分定位后顺序扫描。精确查找和重复检查先经过布隆过滤器，不存在的ISBN无需二分即可排除。
+ * 删除时已知ISBN则二分定位，批量删除在一次遍历中压紧槽位。
+ * 布隆过滤器不支持删除，删除累积到一定比例或元素数超过容量时整体重建。
+ */
+public class IsbnIndex {
+    /** 与 books.isbn 的 varchar(20) 一致 */
+    private static final int WIDTH = 20;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+
+    private byte[] keys = new byte[WIDTH * 16];
+    private int[] ids = new int[16];
+    private int size;
+    private BloomFilter bloom = new BloomFilter(MIN_CAPACITY, FALSE_POSITIVE_RATE);
+    private int bloomCapacity = MIN_CAPACITY;
+    private int removedSinceRebuild;
+    /** 出现无法编码的ISBN（超长或非ASCII）时索引不完整，调用方应回退到数据库 */
+    private boolean complete = true;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 规范化ISBN：转为大写以与数据库不区分大小写的比较一致，超长或含非ASCII字符时返回null
+     */
+    public static String normalize(String isbn) {
+        if (isbn == null || isbn.length() > WIDTH) {
+            return null;
+        }
+        for (int i = 0; i < isbn.length(); i++) {
+            if (isbn.charAt(i) >= 128 || isbn.charAt(i) == 0) {
+                return null;
+            }
+        }
+        return isbn.toUpperCase(Locale.ROOT);
+    }
+
+    public void add(int id, String isbn) {
+        String key = normalize(isbn);
+        lock.writeLock().lock();
+        try {
+            if (key == null) {
+                complete = false;
+                return;
+            }
+            int pos = lowerBound(key);
+            ensureCapacity(size + 1);
+            System.arraycopy(keys, pos * WIDTH, keys, (pos + 1) * WIDTH, (size - pos) * WIDTH);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            writeKey(pos, key);
+            ids[pos] = id;
+            size++;
+            if (size > bloomCapacity) {
+                rebuildBloom();
+            } else {
+                bloom.add(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量添加，新键排序后与已有槽位一次归并，避免逐个插入时反复移动数组
+     */
+    public void addAll(int[] newIds, String[] isbns) {
+        replaceAll(new int[0], newIds, isbns);
+    }
+
+    /**
+     * 先删除 oldIds 中的图书再批量添加，整个过程持有写锁，查找不会看到删除了一半的状态。
+     * 对账时用于替换ISBN变化的行：已删除的槽位在归并时一并跳过，只移动一次数组
+     */
+    public void replaceAll(int[] oldIds, int[] newIds, String[] isbns) {
+        Integer[] order = new Integer[newIds.length];
+        String[] newKeys = new String[newIds.length];
+        int count = 0;
+        for (int i = 0; i < newIds.length; i++) {
+            newKeys[i] = normalize(isbns[i]);
+            if (newKeys[i] != null) {
+                order[count++] = i;
+            }
+        }
+        Arrays.sort(order, 0, count, (a, b) -> newKeys[a].compareTo(newKeys[b]));
+        int[] removed = sortedCopy(oldIds);
+        lock.writeLock().lock();
+        try {
+            if (count < newIds.length) {
+                complete = false;
+            }
+            byte[] mergedKeys = new byte[Math.max(size + count, 16) * WIDTH];
+            int[] mergedIds = new int[Math.max(size + count, 16)];
+            int i = 0;
+            int j = 0;
+            int pos = 0;
+            while (i < size || j < count) {
+                if (i < size && Arrays.binarySearch(removed, ids[i]) >= 0) {
+                    i++;
+                    removedSinceRebuild++;
+                } else if (j < count && (i == size || compareKey(i, newKeys[order[j]]) > 0)) {
+                    String key = newKeys[order[j]];
+                    for (int c = 0; c < key.length(); c++) {
+                        mergedKeys[pos * WIDTH + c] = (byte) key.charAt(c);
+                    }
+                    mergedIds[pos++] = newIds[order[j++]];
+                } else {
+                    System.arraycopy(keys, i * WIDTH, mergedKeys, pos * WIDTH, WIDTH);
+                    mergedIds[pos++] = ids[i++];
+                }
+            }
+            keys = mergedKeys;
+            ids = mergedIds;
+            size = pos;
+            if (size > bloomCapacity || removedSinceRebuild > bloomCapacity / 4) {
+                rebuildBloom();
+            } else {
+                for (int k = 0; k < count; k++) {
+                    bloom.add(newKeys[order[k]]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除一本图书。不知道ISBN时只能逐个槽位比较ID，已知ISBN时应使用 {@link #remove(int, String)}
+     */
+    public void remove(int id) {
+        remove(id, null);
+    }
+
+    /**
+     * 按ISBN二分定位后只在相同ISBN的槽位中找 id；isbn 为null或与索引中的不一致（如已被并发修改）时
+     * 退回逐个槽位比较ID
+     */
+    public void remove(int id, String isbn) {
+        String key = normalize(isbn);
+        lock.writeLock().lock();
+        try {
+            int pos = key == null ? -1 : findSlot(id, key);
+            if (pos < 0) {
+                pos = scanSlot(id);
+            }
+            if (pos >= 0) {
+                removeSlot(pos);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量删除，一次遍历压紧所有槽位
+     */
+    public void removeAll(int[] removeIds) {
+        if (removeIds.length == 0) {
+            return;
+        }
+        replaceAll(removeIds, new int[0], new String[0]);
+    }
+
+    public boolean isComplete() {
+        lock.readLock().lock();
+        try {
+            return complete;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 布隆过滤器预判，false 表示该ISBN一定不存在
+     */
+    public boolean mightContain(String isbn) {
+        String key = normalize(isbn);
+        if (key == null) {
+            return true;
+        }
+        lock.readLock().lock();
+        try {
+            return bloom.mightContain(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 精确查找
+     *
+     * @return 图书ID，不存在时返回-1
+     */
+    public int findExact(String isbn) {
+        String key = normalize(isbn);
+        if (key == null) {
+            return -1;
+        }
+        lock.readLock().lock();
+        try {
+            if (!bloom.mightContain(key)) {
+                return -1;
+            }
+            int pos = lowerBound(key);
+            return pos < size && compareKey(pos, key) == 0 ? ids[pos] : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查找以 prefix 开头的ISBN
+     *
+     * @return 升序排列的图书ID
+     */
+    public int[] findByPrefix(String prefix) {
+        String key = normalize(prefix);
+        if (key == null) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            int from = lowerBound(key);
+            int to = from;
+            while (to < size && startsWith(to, key)) {
+                to++;
+            }
+            int[] result = Arrays.copyOfRange(ids, from, to);
+            Arrays.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查找包含 fragment 的ISBN，与 LIKE '%fragment%' 的语义相同，在内存中顺序扫描
+     *
+     * @return 升序排列的图书ID
+     */
+    public int[] findContaining(String fragment) {
+        String key = normalize(fragment);
+        if (key == null) {
+            return new int[0];
+        }
+        byte[] pattern = toBytes(key);
+        lock.readLock().lock();
+        try {
+            int[] result = new int[16];
+            int count = 0;
+            for (int pos = 0; pos < size; pos++) {
+                if (contains(pos, pattern)) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = ids[pos];
+                }
+            }
+            result = Arrays.copyOf(result, count);
+            Arrays.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void rebuildBloom() {
+        bloomCapacity = Math.max(MIN_CAPACITY, size * 2);
+        bloom = new BloomFilter(bloomCapacity, FALSE_POSITIVE_RATE);
+        for (int pos = 0; pos < size; pos++) {
+            bloom.add(readKey(pos));
+        }
+        removedSinceRebuild = 0;
+    }
+
+    private int findSlot(int id, String key) {
+        for (int pos = lowerBound(key); pos < size && compareKey(pos, key) == 0; pos++) {
+            if (ids[pos] == id) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private int scanSlot(int id) {
+        for (int pos = 0; pos < size; pos++) {
+            if (ids[pos] == id) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private void removeSlot(int pos) {
+        System.arraycopy(keys, (pos + 1) * WIDTH, keys, pos * WIDTH, (size - pos - 1) * WIDTH);
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+        Arrays.fill(keys, size * WIDTH, (size + 1) * WIDTH, (byte) 0);
+        if (++removedSinceRebuild > bloomCapacity / 4) {
+            rebuildBloom();
+        }
+    }
+
+    private static int[] sortedCopy(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int newLength = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, newLength);
+            keys = Arrays.copyOf(keys, newLength * WIDTH);
+        }
+    }
+
+    /**
+     * 第一个不小于 key 的槽位
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 比较槽位与 key 的字典序，槽位末尾的0填充小于任何字符
+     */
+    private int compareKey(int pos, String key) {
+        int base = pos * WIDTH;
+        for (int i = 0; i < WIDTH; i++) {
+            int a = keys[base + i];
+            int b = i < key.length() ? key.charAt(i) : 0;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    private boolean startsWith(int pos, String prefix) {
+        int base = pos * WIDTH;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (keys[base + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int pos, byte[] pattern) {
+        int base = pos * WIDTH;
+        int length = 0;
+        while (length < WIDTH && keys[base + length] != 0) {
+            length++;
+        }
+        outer:
+        for (int start = 0; start + pattern.length <= length; start++) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (keys[base + start + i] != pattern[i]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void writeKey(int pos, String key) {
+        int base = pos * WIDTH;
+        Arrays.fill(keys, base, base + WIDTH, (byte) 0);
+        for (int i = 0; i < key.length(); i++) {
+            keys[base + i] = (byte) key.charAt(i);
+        }
+    }
+
+    private String readKey(int pos) {
+        int base = pos * WIDTH;
+        int length = 0;
+        while (length < WIDTH && keys[base + length] != 0) {
+            length++;
+        }
+        return new String(keys, base, length, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] toBytes(String key) {
+        byte[] bytes = new byte[key.length()];
+        for (int i = 0; i < key.length(); i++) {
+            bytes[i] = (byte) key.charAt(i);
+        }
+        return bytes;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,223 @@
+package com.flash.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 书名子串搜索的内存倒排索引
+ * <p>
+ * 书名以中文为主，不做分词，而是按单字和相邻两字（bigram）建立倒排表，倒排表为有序int数组。
+ * 查询时对关键字的全部bigram求交集：一到两个字的关键字结果即为精确结果，
+ * 更长的关键字再用索引中保存的书名校验一次，排除字对都出现但不连续的情况。
+ * 比较时忽略大小写，与MySQL默认排序规则下的 LIKE 行为一致。
+ */
+public class TitleIndex {
+    private final Map<Character, PostingList> unigrams = new HashMap<>();
+    private final Map<Integer, PostingList> bigrams = new HashMap<>();
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 添加或更新一本图书的书名
+     */
+    public void add(int id, String title) {
+        String normalized = normalize(title);
+        lock.writeLock().lock();
+        try {
+            String previous = titles.put(id, normalized);
+            if (previous != null) {
+                unindex(id, previous);
+            }
+            for (int i = 0; i < normalized.length(); i++) {
+                unigrams.computeIfAbsent(normalized.charAt(i), c -> new PostingList()).add(id);
+                if (i + 1 < normalized.length()) {
+                    bigrams.computeIfAbsent(bigram(normalized, i), k -> new PostingList()).add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除一本图书
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            String previous = titles.remove(id);
+            if (previous != null) {
+                unindex(id, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找书名包含关键字的图书ID
+     *
+     * @param keyword 非空关键字，按字面匹配
+     * @return 升序排列的图书ID
+     */
+    public int[] search(String keyword) {
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("关键字不能为空");
+        }
+        lock.readLock().lock();
+        try {
+            if (query.length() == 1) {
+                PostingList postings = unigrams.get(query.charAt(0));
+                return postings == null ? new int[0] : postings.toArray();
+            }
+
+            List<PostingList> lists = new ArrayList<>(query.length() - 1);
+            for (int i = 0; i + 1 < query.length(); i++) {
+                PostingList postings = bigrams.get(bigram(query, i));
+                if (postings == null) {
+                    return new int[0];
+                }
+                lists.add(postings);
+            }
+            // 从最短的倒排表开始求交集，候选集合尽快缩小
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            int[] candidates = lists.get(0).toArray();
+            int count = candidates.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = lists.get(i).retainAll(candidates, count);
+            }
+
+            if (query.length() > 2) {
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (titles.get(candidates[i]).contains(query)) {
+                        candidates[kept++] = candidates[i];
+                    }
+                }
+                count = kept;
+            }
+            return Arrays.copyOf(candidates, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return titles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引中的全部图书ID，升序排列
+     */
+    public int[] ids() {
+        lock.readLock().lock();
+        try {
+            int[] ids = new int[titles.size()];
+            int count = 0;
+            for (int id : titles.keySet()) {
+                ids[count++] = id;
+            }
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void unindex(int id, String title) {
+        for (int i = 0; i < title.length(); i++) {
+            removePosting(unigrams, title.charAt(i), id);
+            if (i + 1 < title.length()) {
+                removePosting(bigrams, bigram(title, i), id);
+            }
+        }
+    }
+
+    private static <K> void removePosting(Map<K, PostingList> index, K key, int id) {
+        PostingList postings = index.get(key);
+        if (postings != null && postings.remove(id) && postings.size == 0) {
+            index.remove(key);
+        }
+    }
+
+    private static int bigram(String text, int index) {
+        return (text.charAt(index) << 16) | text.charAt(index + 1);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase();
+    }
+
+    /**
+     * 有序去重的int倒排表，图书ID大多递增，追加为均摊O(1)
+     */
+    private static final class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                int pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, id);
+                return;
+            }
+            insertAt(size, id);
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * 在 candidates 的前 count 个元素中只保留本表也包含的ID，返回保留个数
+         */
+        int retainAll(int[] candidates, int count) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                int id = candidates[i];
+                while (j < size && ids[j] < id) {
+                    j++;
+                }
+                if (j < size && ids[j] == id) {
+                    candidates[kept++] = id;
+                }
+            }
+            return kept;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        private void insertAt(int pos, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,233 @@
+package com.flash.journal;
+
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+import com.flash.pojo.User;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 读取变更日志
+ * <p>
+ * 每条记录为：记录总长度(int)、CRC32(int)、类型(byte)、LSN(long)、时间戳毫秒(long)、负载，
+ * CRC32 覆盖类型到负载末尾的全部字节。段内记录的LSN连续递增，时间戳不递减。
+ * 最后一段末尾长度或校验和不正确的记录视为崩溃时未写完的尾部，忽略；
+ * 其他位置出现这种记录说明日志已损坏。
+ */
+public final class JournalReader {
+
+    /**
+     * 回放记录的处理器
+     */
+    public interface Handler<E extends Exception> {
+        void bookPut(long timestamp, Book book) throws E;
+
+        void bookDeleted(long timestamp, int id) throws E;
+
+        void userRegistered(long timestamp, User user) throws E;
+    }
+
+    /**
+     * 段文件末尾的扫描结果
+     */
+    static final class Tail {
+        final long validLength;
+        final long lastLsn;
+        final long lastTimestamp;
+
+        Tail(long validLength, long lastLsn, long lastTimestamp) {
+            this.validLength = validLength;
+            this.lastLsn = lastLsn;
+            this.lastTimestamp = lastTimestamp;
+        }
+    }
+
+    private JournalReader() {
+    }
+
+    /**
+     * 按时间范围回放日志，包含 [fromMillis, untilMillis] 内的记录，遇到晚于 untilMillis 的记录即停止
+     *
+     * @return 交给处理器的记录条数
+     */
+    public static <E extends Exception> long replay(Path directory, long fromMillis, long untilMillis,
+                                                    Handler<E> handler) throws IOException, E {
+        List<Path> segments = segments(directory);
+        long count = 0;
+        long expectedLsn = -1;
+        for (int s = 0; s < segments.size(); s++) {
+            Path segment = segments.get(s);
+            boolean last = s == segments.size() - 1;
+            if (expectedLsn >= 0 && firstLsnOf(segment) != expectedLsn) {
+                throw new IOException("变更日志不连续，缺少LSN " + expectedLsn + " 起的记录: " + segment);
+            }
+            ByteBuffer buffer = map(segment);
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                if (!nextRecord(buffer)) {
+                    if (last) {
+                        break;
+                    }
+                    throw new IOException("变更日志已损坏，位置 " + start + ": " + segment);
+                }
+                byte type = buffer.get();
+                long lsn = buffer.getLong();
+                long timestamp = buffer.getLong();
+                if (expectedLsn >= 0 && lsn != expectedLsn) {
+                    throw new IOException("变更日志不连续，期望LSN " + expectedLsn + " 实际为 " + lsn + ": " + segment);
+                }
+                expectedLsn = lsn + 1;
+                if (timestamp > untilMillis) {
+                    return count;
+                }
+                if (timestamp < fromMillis) {
+                    buffer.position(start + buffer.getInt(start));
+                    continue;
+                }
+                dispatch(type, timestamp, buffer, lsn, segment, handler);
+                buffer.position(start + buffer.getInt(start));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 目录中的段文件，按第一条记录的LSN排序；目录不存在时返回空列表
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                MutationJournal.SEGMENT_PREFIX + "*" + MutationJournal.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        segments.sort(Comparator.comparingLong(JournalReader::firstLsnOf));
+        return segments;
+    }
+
+    static long firstLsnOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(MutationJournal.SEGMENT_PREFIX.length(),
+                name.length() - MutationJournal.SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 段文件第一条记录的时间戳，段为空或首条记录不完整时返回null
+     */
+    static Long firstTimestampOf(Path segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MutationJournal.HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return null;
+                }
+            }
+        }
+        return header.getLong(MutationJournal.HEADER_SIZE - 8);
+    }
+
+    /**
+     * 找出段文件中最后一条完整记录的位置
+     */
+    static Tail scanTail(Path segment) throws IOException {
+        // 读入堆内存而不是映射，之后还要截断该文件
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        long lastLsn = 0;
+        long lastTimestamp = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            if (!nextRecord(buffer)) {
+                buffer.position(start);
+                break;
+            }
+            buffer.get();
+            lastLsn = buffer.getLong();
+            lastTimestamp = buffer.getLong();
+            buffer.position(start + buffer.getInt(start));
+        }
+        return new Tail(buffer.position(), lastLsn, lastTimestamp);
+    }
+
+    /**
+     * 校验当前位置的记录，完整时把位置移到记录的类型字段并返回 true
+     */
+    private static boolean nextRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < MutationJournal.HEADER_SIZE) {
+            return false;
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < MutationJournal.HEADER_SIZE || length > buffer.remaining() + 8) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.slice(start + 8, length - 8);
+        crc.update(body);
+        return (int) crc.getValue() == checksum;
+    }
+
+    private static <E extends Exception> void dispatch(byte type, long timestamp, ByteBuffer in, long lsn,
+                                                       Path segment, Handler<E> handler) throws IOException, E {
+        try {
+            switch (type) {
+                case MutationJournal.BOOK_PUT:
+                    int id = in.getInt();
+                    String title = readString(in);
+                    String author = readString(in);
+                    String isbn = readString(in);
+                    String category = readString(in);
+                    String publishDate = readString(in);
+                    String extraInfo = readString(in);
+                    Book book = BookFactory.createBook(category, id, title, author, isbn, publishDate, extraInfo);
+                    handler.bookPut(timestamp, book);
+                    return;
+                case MutationJournal.BOOK_DELETE:
+                    int deleted = in.getInt();
+                    handler.bookDeleted(timestamp, deleted);
+                    return;
+                case MutationJournal.USER_REGISTER:
+                    User user = new User(readString(in), readString(in), readString(in));
+                    handler.userRegistered(timestamp, user);
+                    return;
+                default:
+                    throw new IOException("变更日志已损坏，未知记录类型 " + type + "，LSN " + lsn + ": " + segment);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("变更日志已损坏，LSN " + lsn + ": " + segment, e);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
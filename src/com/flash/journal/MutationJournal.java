@@ -0,0 +1,435 @@
+package com.flash.journal;
+
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+import com.flash.pojo.User;
+import com.flash.utils.DatabaseUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的变更日志，记录图书新增、更新、删除和用户注册，用于按时间点恢复
+ * <p>
+ * 写入线程把记录追加到内存缓冲区后等待落盘；后台刷盘线程每次取走缓冲区中的全部记录，
+ * 一次 write 加一次 force() 写入磁盘，再唤醒这一组的全部写入线程（组提交）。
+ * 刷盘前等待 groupCommitWindow 毫秒，让并发的写入合并到同一次 force() 中。
+ * <p>
+ * 日志按段文件存放，文件名为段内第一条记录的序号（LSN），超过 segmentSize 后换新段。
+ * 每条记录格式见 {@link JournalReader}。打开时截掉最后一段中未写完整的尾部。
+ * <p>
+ * 数据库已提交而日志写入失败时不让已完成的操作失败，而是通过 {@link #markDegraded(String, IOException)}
+ * 把日志标记为降级：之后按时间点恢复会缺少这些变更，备份服务发现降级后重新写一次全量快照。
+ */
+public class MutationJournal implements Closeable {
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    /** 记录头：长度、CRC32、类型、LSN、时间戳 */
+    static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 8;
+
+    static final byte BOOK_PUT = 1;
+    static final byte BOOK_DELETE = 2;
+    static final byte USER_REGISTER = 3;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long groupCommitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final Thread flusher;
+
+    // 以下字段由 lock 保护
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private long pendingFirstLsn;
+    private long lastLsn;
+    private long durableLsn;
+    private long lastTimestamp;
+    private IOException failure;
+    private boolean closed;
+    private long flushCount;
+    private long missedCount;
+
+    // 以下字段只由刷盘线程访问
+    private FileChannel channel;
+    private long segmentPosition;
+
+    private MutationJournal(Path directory, long segmentSize, long groupCommitMillis) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitMillis);
+        Files.createDirectories(directory);
+        recover();
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 打开日志目录，不存在时创建
+     *
+     * @param segmentSize       单个段文件的大小上限（字节）
+     * @param groupCommitMillis 组提交等待时间（毫秒），0 表示不等待
+     */
+    public static MutationJournal open(Path directory, long segmentSize, long groupCommitMillis) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("段文件大小过小: " + segmentSize);
+        }
+        return new MutationJournal(directory, segmentSize, groupCommitMillis);
+    }
+
+    /**
+     * 按 database.properties 中的 journal.* 配置打开日志
+     */
+    public static MutationJournal fromConfig() throws IOException {
+        return open(Paths.get(DatabaseUtil.getConfig("journal.dir", "journal")),
+                DatabaseUtil.getLongConfig("journal.segmentSize", 64L * 1024 * 1024),
+                DatabaseUtil.getLongConfig("journal.groupCommitWindow", 2));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 记录图书的新增或更新（整行内容），并等待落盘
+     */
+    public void logBookPut(int id, Book book) throws IOException {
+        awaitDurable(appendBookPut(id, book));
+    }
+
+    /**
+     * 记录图书删除，并等待落盘
+     */
+    public void logBookDelete(int id) throws IOException {
+        awaitDurable(append(BOOK_DELETE, encodeId(id)));
+    }
+
+    /**
+     * 记录用户注册，并等待落盘
+     */
+    public void logUserRegister(User user) throws IOException {
+        awaitDurable(append(USER_REGISTER, encodeUser(user)));
+    }
+
+    /**
+     * 追加图书新增或更新记录但不等待落盘，用于批量写入：追加完一批后对最后一个LSN调用
+     * {@link #awaitDurable(long)}，整批只需一次刷盘
+     *
+     * @return 记录的LSN
+     */
+    public long appendBookPut(int id, Book book) throws IOException {
+        return append(BOOK_PUT, encodeBook(id, book));
+    }
+
+    /**
+     * 等待LSN不大于 lsn 的记录全部落盘
+     */
+    public void awaitDurable(long lsn) throws IOException {
+        lock.lock();
+        try {
+            while (durableLsn < lsn && failure == null) {
+                durable.await();
+            }
+            if (durableLsn < lsn) {
+                throw new IOException("写入变更日志失败: " + failure.getMessage(), failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待变更日志落盘时被中断");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次已在数据库提交、但没能写入日志的变更，并输出警告
+     *
+     * @param change 变更的描述，如“图书已删除(ID: 3)”
+     */
+    public void markDegraded(String change, IOException cause) {
+        lock.lock();
+        try {
+            missedCount++;
+        } finally {
+            lock.unlock();
+        }
+        System.err.println("【变更日志】" + change + "，但未能记入变更日志，日志已降级: " + cause.getMessage());
+    }
+
+    /**
+     * 已提交但没能写入日志的变更数，大于0表示日志已降级
+     */
+    public long getMissedCount() {
+        lock.lock();
+        try {
+            return missedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已执行的 force() 次数，用于观察组提交效果
+     */
+    public long getFlushCount() {
+        lock.lock();
+        try {
+            return flushCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除全部记录都早于 millis 的段文件，只从最早的段开始连续删除，正在写入的段不会删除
+     *
+     * @return 删除的段文件个数
+     */
+    public int purgeBefore(long millis) throws IOException {
+        List<Path> segments = JournalReader.segments(directory);
+        int purged = 0;
+        // 下一段第一条记录的时间不晚于 millis，说明本段全部记录都早于 millis
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            Long next = JournalReader.firstTimestampOf(segments.get(i + 1));
+            if (next == null || next > millis) {
+                break;
+            }
+            Files.delete(segments.get(i));
+            purged++;
+        }
+        return purged;
+    }
+
+    /**
+     * 刷完已追加的记录后关闭
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("写入变更日志失败: " + failure.getMessage(), failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(byte type, byte[] payload) throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("变更日志不可用: " + failure.getMessage(), failure);
+            }
+            if (closed) {
+                throw new IOException("变更日志已关闭");
+            }
+            long lsn = ++lastLsn;
+            // 时间戳保持不递减，回放时才能按时间点截止
+            long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+            lastTimestamp = timestamp;
+            int length = HEADER_SIZE + payload.length;
+            if (pending.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer body = ByteBuffer.allocate(1 + 8 + 8);
+            body.put(type).putLong(lsn).putLong(timestamp);
+            crc.update(body.array());
+            crc.update(payload);
+            pending.putInt(length).putInt((int) crc.getValue()).put(body.array()).put(payload);
+            if (pendingFirstLsn == 0) {
+                pendingFirstLsn = lsn;
+            }
+            hasPending.signal();
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long firstLsn;
+            long batchLsn;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (groupCommitNanos > 0) {
+                LockSupport.parkNanos(groupCommitNanos);
+            }
+            lock.lock();
+            try {
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                firstLsn = pendingFirstLsn;
+                batchLsn = lastLsn;
+                pendingFirstLsn = 0;
+            } finally {
+                lock.unlock();
+            }
+
+            batch.flip();
+            IOException error = null;
+            try {
+                write(batch, firstLsn);
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.clear();
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableLsn = batchLsn;
+                    flushCount++;
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch, long firstLsn) throws IOException {
+        if (channel == null || (segmentPosition > 0 && segmentPosition + batch.remaining() > segmentSize)) {
+            if (channel != null) {
+                channel.close();
+            }
+            channel = FileChannel.open(directory.resolve(segmentName(firstLsn)),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            segmentPosition = 0;
+        }
+        while (batch.hasRemaining()) {
+            segmentPosition += channel.write(batch, segmentPosition);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * 扫描最后一个段文件，确定下一个LSN，并截掉未写完整的尾部记录
+     */
+    private void recover() throws IOException {
+        List<Path> segments = JournalReader.segments(directory);
+        if (segments.isEmpty()) {
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        JournalReader.Tail tail = JournalReader.scanTail(last);
+        lastLsn = tail.lastLsn > 0 ? tail.lastLsn : JournalReader.firstLsnOf(last) - 1;
+        durableLsn = lastLsn;
+        lastTimestamp = tail.lastTimestamp;
+        channel = FileChannel.open(last, StandardOpenOption.WRITE);
+        if (channel.size() > tail.validLength) {
+            channel.truncate(tail.validLength);
+            channel.force(true);
+        }
+        segmentPosition = tail.validLength;
+    }
+
+    static String segmentName(long firstLsn) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX);
+    }
+
+    private static byte[] encodeBook(int id, Book book) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(id);
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getIsbn());
+        writeString(out, book.getCategory());
+        writeString(out, book.getPublishDate());
+        writeString(out, BookFactory.getExtraInfo(book));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeId(int id) {
+        return ByteBuffer.allocate(4).putInt(id).array();
+    }
+
+    private static byte[] encodeUser(User user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, user.getUsername());
+        writeString(out, user.getPassword());
+        writeString(out, user.getRole());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 字符串按长度前缀的UTF-8写入，长度-1表示null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,37 @@
+package com.flash.pojo;
+
+/**
+ * 图书列表中的一行：只有列表显示的字段，不含分类特有的额外信息
+ */
+public final class BookSummary {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final String isbn;
+    private final String category;
+    private final String publishDate;
+
+    public BookSummary(int id, String title, String author, String isbn, String category, String publishDate) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.isbn = isbn;
+        this.category = category;
+        this.publishDate = publishDate;
+    }
+
+    /**
+     * 取完整图书对象中列表显示的字段
+     */
+    public static BookSummary of(Book book) {
+        return new BookSummary(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn(),
+                book.getCategory(), book.getPublishDate());
+    }
+
+    public int getId() { return id; }
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public String getIsbn() { return isbn; }
+    public String getCategory() { return category; }
+    public String getPublishDate() { return publishDate; }
+}
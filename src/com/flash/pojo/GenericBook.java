@@ -0,0 +1,31 @@
+package com.flash.pojo;
+
+/**
+ * 未注册分类的图书，保留数据库中的分类名和额外信息，读取到新分类的行时不会中断查询
+ */
+public class GenericBook extends Book {
+    private final String category;
+    private final String extraInfo;
+
+    public GenericBook(String category, int id, String title, String author, String isbn,
+                       String publishDate, String extraInfo) {
+        super(id, title, author, isbn, publishDate);
+        this.category = category;
+        this.extraInfo = extraInfo;
+    }
+
+    @Override
+    public String getCategory() {
+        return category;
+    }
+
+    @Override
+    public void displayDetails() {
+        System.out.printf("【%s】%s\n附加信息: %s\n",
+            category, getBasicInfo(), extraInfo);
+    }
+
+    public String getExtraInfo() {
+        return extraInfo;
+    }
+}
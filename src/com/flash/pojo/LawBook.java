@@ -0,0 +1,30 @@
+package com.flash.pojo;
+
+/**
+ * 法学类图书
+ */
+public class LawBook extends Book {
+    private String branch;
+    private static final String CATEGORY = "法学";
+
+    public LawBook(int id, String title, String author, String isbn,
+                   String publishDate, String branch) {
+        super(id, title, author, isbn, publishDate);
+        this.branch = branch;
+    }
+
+    @Override
+    public String getCategory() {
+        return CATEGORY;
+    }
+
+    @Override
+    public void displayDetails() {
+        System.out.printf("【法学类】%s\n法律部门: %s\n",
+            getBasicInfo(), branch);
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+}
@@ -0,0 +1,30 @@
+package com.flash.pojo;
+
+/**
+ * 医学类图书
+ */
+public class MedicalBook extends Book {
+    private String specialty;
+    private static final String CATEGORY = "医学";
+
+    public MedicalBook(int id, String title, String author, String isbn,
+                       String publishDate, String specialty) {
+        super(id, title, author, isbn, publishDate);
+        this.specialty = specialty;
+    }
+
+    @Override
+    public String getCategory() {
+        return CATEGORY;
+    }
+
+    @Override
+    public void displayDetails() {
+        System.out.printf("【医学类】%s\n医学专科: %s\n",
+            getBasicInfo(), specialty);
+    }
+
+    public String getSpecialty() {
+        return specialty;
+    }
+}
@@ -0,0 +1,19 @@
+package com.flash.server;
+
+/**
+ * 以指定HTTP状态码返回给客户端的错误
+ */
+class ApiException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+}
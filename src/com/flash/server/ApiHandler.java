@@ -0,0 +1,196 @@
+package com.flash.server;
+
+import com.flash.dao.BookDAO;
+import com.flash.dao.UserDAO;
+import com.flash.pojo.User;
+import com.flash.utils.ReplicaRouter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 接口处理器的基类：统一的错误响应、请求解析和身份验证
+ * <p>
+ * 所有请求共用同一个 BookDAO 和 UserDAO。DAO 的每次调用从连接池借一个连接，调用结束立即归还，
+ * 请求在处理JSON和网络读写时不占用连接。配置了只读副本时，请求处理期间绑定登录会话的
+ * 副本路由会话，未登录的请求各用一个新会话。
+ */
+abstract class ApiHandler implements HttpHandler {
+    /** 请求体大小上限 */
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    protected final BookDAO books;
+    protected final UserDAO users;
+    protected final SessionManager sessions;
+
+    ApiHandler(BookDAO books, UserDAO users, SessionManager sessions) {
+        this.books = books;
+        this.users = users;
+        this.sessions = sessions;
+    }
+
+    /**
+     * 处理一个请求；正常返回时必须已发送响应
+     */
+    protected abstract void serve(HttpExchange exchange) throws ApiException, SQLException, IOException;
+
+    @Override
+    public final void handle(HttpExchange exchange) throws IOException {
+        ReplicaRouter.Session readSession = sessions.readSession(bearerToken(exchange));
+        ReplicaRouter.Scope scope = ReplicaRouter.bind(
+                readSession != null ? readSession : new ReplicaRouter.Session());
+        try {
+            serve(exchange);
+        } catch (ApiException e) {
+            sendError(exchange, e.getStatus(), e.getMessage());
+        } catch (SQLTransientException e) {
+            // 连接池等待超时等暂时性错误，客户端可稍后重试
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, e.getMessage());
+        } catch (SQLIntegrityConstraintViolationException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (SQLException e) {
+            sendError(exchange, 500, "数据库错误: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            // 未预料的错误也返回JSON，不让客户端只看到断开的连接
+            System.err.println("【服务】处理 " + exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                    + " 时出错: " + e);
+            sendError(exchange, 500, "服务器内部错误");
+        } finally {
+            scope.close();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Authorization: Bearer 令牌对应的用户，未登录时返回null
+     */
+    protected User currentUser(HttpExchange exchange) {
+        return sessions.get(bearerToken(exchange));
+    }
+
+    protected User requireAdmin(HttpExchange exchange) throws ApiException {
+        User user = currentUser(exchange);
+        if (user == null) {
+            throw new ApiException(401, "请先登录");
+        }
+        if (!"admin".equals(user.getRole())) {
+            throw new ApiException(403, "权限不足");
+        }
+        return user;
+    }
+
+    protected static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return header.substring(7).trim();
+    }
+
+    protected static Map<String, Object> readJson(HttpExchange exchange) throws ApiException, IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                if (body.size() + read > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "请求体超过 " + MAX_BODY_BYTES + " 字节");
+                }
+                body.write(buffer, 0, read);
+            }
+        }
+        return Json.parseObject(body.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 必填的字符串字段
+     */
+    protected static String requireString(Map<String, Object> body, String field) throws ApiException {
+        Object value = body.get(field);
+        if (!(value instanceof String) || ((String) value).trim().isEmpty()) {
+            throw new ApiException(400, "缺少字段 " + field);
+        }
+        return ((String) value).trim();
+    }
+
+    protected static String optionalString(Map<String, Object> body, String field) throws ApiException {
+        Object value = body.get(field);
+        if (value != null && !(value instanceof String)) {
+            throw new ApiException(400, "字段 " + field + " 必须是字符串");
+        }
+        return (String) value;
+    }
+
+    protected static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.putIfAbsent(key, value);
+        }
+        return params;
+    }
+
+    protected static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max)
+            throws ApiException {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                throw new ApiException(400, "参数 " + name + " 超出范围 [" + min + ", " + max + "]: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "参数 " + name + " 必须是整数: " + value);
+        }
+    }
+
+    protected static void requireMethod(HttpExchange exchange, String... allowed) throws ApiException {
+        for (String method : allowed) {
+            if (method.equals(exchange.getRequestMethod())) {
+                return;
+            }
+        }
+        exchange.getResponseHeaders().set("Allow", String.join(", ", allowed));
+        throw new ApiException(405, "不支持的请求方法: " + exchange.getRequestMethod());
+    }
+
+    protected static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    protected static void sendNoContent(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, Json.object("error", message));
+    }
+}
@@ -0,0 +1,53 @@
+package com.flash.server;
+
+import com.flash.dao.BookDAO;
+import com.flash.dao.UserDAO;
+import com.flash.pojo.User;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * 登录与退出
+ * <p>
+ * POST /api/login，请求体 {"username": "...", "password": "..."}，返回令牌和用户角色；
+ * POST /api/logout，携带 Authorization: Bearer 令牌，使该会话失效。
+ */
+class AuthHandler extends ApiHandler {
+
+    AuthHandler(BookDAO books, UserDAO users, SessionManager sessions) {
+        super(books, users, sessions);
+    }
+
+    @Override
+    protected void serve(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        requireMethod(exchange, "POST");
+        switch (exchange.getRequestURI().getPath()) {
+            case "/api/login":
+                login(exchange);
+                break;
+            case "/api/logout":
+                if (!sessions.remove(bearerToken(exchange))) {
+                    throw new ApiException(401, "未登录或会话已过期");
+                }
+                sendNoContent(exchange);
+                break;
+            default:
+                throw new ApiException(404, "接口不存在: " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private void login(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        Map<String, Object> body = readJson(exchange);
+        String username = requireString(body, "username");
+        String password = requireString(body, "password");
+        User user = users.loginUser(username, password);
+        if (user == null) {
+            throw new ApiException(401, "用户名或密码错误");
+        }
+        String token = sessions.create(user);
+        sendJson(exchange, 200, Json.object("token", token, "username", user.getUsername(), "role", user.getRole()));
+    }
+}
@@ -0,0 +1,136 @@
+package com.flash.server;
+
+import com.flash.dao.BatchInsertResult;
+import com.flash.dao.BookDAO;
+import com.flash.dao.BookPage;
+import com.flash.dao.UserDAO;
+import com.flash.factory.BookFactory;
+import com.flash.factory.CategoryRegistry;
+import com.flash.pojo.Book;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 图书接口
+ * <p>
+ * GET /api/books?afterId=&amp;pageSize=&amp;category= 分页浏览，可按分类筛选；<br>
+ * GET /api/books/search?title=|isbn=&amp;afterId=&amp;pageSize= 分页搜索；<br>
+ * GET /api/books/{id} 查看一本图书；<br>
+ * POST /api/books 添加图书（管理员），DELETE /api/books/{id} 删除图书（管理员）。
+ * <p>
+ * 分页与 {@link BookPage} 一致：返回 lastId 和 hasMore，下一页以 lastId 作为 afterId。
+ */
+class BookHandler extends ApiHandler {
+    private static final String PREFIX = "/api/books";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    BookHandler(BookDAO books, UserDAO users, SessionManager sessions) {
+        super(books, users, sessions);
+    }
+
+    @Override
+    protected void serve(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.length() > PREFIX.length() ? path.substring(PREFIX.length()) : "";
+        if (rest.isEmpty() || rest.equals("/")) {
+            requireMethod(exchange, "GET", "POST");
+            if ("GET".equals(exchange.getRequestMethod())) {
+                browse(exchange);
+            } else {
+                add(exchange);
+            }
+        } else if (rest.equals("/search")) {
+            requireMethod(exchange, "GET");
+            search(exchange);
+        } else {
+            int id = parseId(rest.substring(1));
+            requireMethod(exchange, "GET", "DELETE");
+            if ("GET".equals(exchange.getRequestMethod())) {
+                Book book = books.getBookById(id);
+                if (book == null) {
+                    throw new ApiException(404, "图书不存在: " + id);
+                }
+                sendJson(exchange, 200, Json.book(book));
+            } else {
+                delete(exchange, id);
+            }
+        }
+    }
+
+    private void browse(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        Map<String, String> params = queryParams(exchange);
+        int afterId = intParam(params, "afterId", 0, 0, Integer.MAX_VALUE);
+        int pageSize = intParam(params, "pageSize", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+        String category = params.get("category");
+        BookPage page = category == null || category.isEmpty()
+                ? books.getAllBooksPage(afterId, pageSize)
+                : books.getBooksByCategoryPage(category, afterId, pageSize);
+        sendJson(exchange, 200, Json.page(page));
+    }
+
+    private void search(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        Map<String, String> params = queryParams(exchange);
+        int afterId = intParam(params, "afterId", 0, 0, Integer.MAX_VALUE);
+        int pageSize = intParam(params, "pageSize", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+        String title = params.get("title");
+        String isbn = params.get("isbn");
+        if ((title == null || title.isEmpty()) == (isbn == null || isbn.isEmpty())) {
+            throw new ApiException(400, "请指定 title 或 isbn 其中一个");
+        }
+        BookPage page = title != null && !title.isEmpty()
+                ? books.searchBooksByTitlePage(title, afterId, pageSize)
+                : books.searchBooksByIsbnPage(isbn, afterId, pageSize);
+        sendJson(exchange, 200, Json.page(page));
+    }
+
+    private void add(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        requireAdmin(exchange);
+        Map<String, Object> body = readJson(exchange);
+        String category = requireString(body, "category");
+        if (CategoryRegistry.find(category) == null) {
+            throw new ApiException(400, "不支持的图书类型: " + category);
+        }
+        String title = requireString(body, "title");
+        String author = requireString(body, "author");
+        String isbn = requireString(body, "isbn");
+        String publishDate = requireString(body, "publishDate");
+        String extraInfo = optionalString(body, "extraInfo");
+        Book book = BookFactory.createBook(category, 0, title, author, isbn, publishDate, extraInfo);
+        // 单行的批量添加会返回新图书的ID
+        BatchInsertResult result = books.addBooks(Collections.singletonList(book), 1, false);
+        BatchInsertResult.Row row = result.getRows().get(0);
+        switch (row.getStatus()) {
+            case INSERTED:
+                Book created = BookFactory.createBook(category, row.getId(), title, author, isbn, publishDate,
+                        extraInfo);
+                exchange.getResponseHeaders().set("Location", PREFIX + "/" + row.getId());
+                sendJson(exchange, 201, Json.book(created));
+                break;
+            case DUPLICATE:
+                throw new ApiException(409, row.getMessage());
+            default:
+                throw new ApiException(500, "添加图书失败: " + row.getMessage());
+        }
+    }
+
+    private void delete(HttpExchange exchange, int id) throws ApiException, SQLException, IOException {
+        requireAdmin(exchange);
+        if (!books.deleteBook(id)) {
+            throw new ApiException(404, "图书不存在: " + id);
+        }
+        sendNoContent(exchange);
+    }
+
+    private static int parseId(String value) throws ApiException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "接口不存在: " + PREFIX + "/" + value);
+        }
+    }
+}
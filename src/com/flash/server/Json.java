@@ -0,0 +1,311 @@
+package com.flash.server;
+
+import com.flash.dao.BookPage;
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 接口用到的最小JSON编解码
+ * <p>
+ * 解析得到 Map（对象）、List（数组）、String、Double（数字）、Boolean 和 null；
+ * 输出只覆盖接口返回的几种结构，字段顺序固定。
+ */
+final class Json {
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * 解析请求体，顶层必须是对象
+     *
+     * @throws IllegalArgumentException 不是合法的JSON对象
+     */
+    static Map<String, Object> parseObject(String text) {
+        Json parser = new Json(text);
+        parser.skipWhitespace();
+        if (parser.peek() != '{') {
+            throw parser.error("请求体必须是JSON对象");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> object = (Map<String, Object>) parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("JSON对象之后有多余内容");
+        }
+        return object;
+    }
+
+    static String book(Book book) {
+        StringBuilder out = new StringBuilder(256);
+        appendBook(out, book);
+        return out.toString();
+    }
+
+    static String page(BookPage page) {
+        StringBuilder out = new StringBuilder(128 + page.getBooks().size() * 192);
+        out.append("{\"books\":[");
+        List<Book> books = page.getBooks();
+        for (int i = 0; i < books.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendBook(out, books.get(i));
+        }
+        out.append("],\"lastId\":").append(page.getLastId())
+                .append(",\"hasMore\":").append(page.hasMore()).append('}');
+        return out.toString();
+    }
+
+    /**
+     * 由字符串键值对组成的对象，值为null时输出 null
+     */
+    static String object(String... keysAndValues) {
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            quote(out, keysAndValues[i]);
+            out.append(':');
+            if (keysAndValues[i + 1] == null) {
+                out.append("null");
+            } else {
+                quote(out, keysAndValues[i + 1]);
+            }
+        }
+        return out.append('}').toString();
+    }
+
+    private static void appendBook(StringBuilder out, Book book) {
+        out.append("{\"id\":").append(book.getId());
+        out.append(",\"title\":");
+        quote(out, book.getTitle());
+        out.append(",\"author\":");
+        quote(out, book.getAuthor());
+        out.append(",\"isbn\":");
+        quote(out, book.getIsbn());
+        out.append(",\"category\":");
+        quote(out, book.getCategory());
+        out.append(",\"publishDate\":");
+        quote(out, book.getPublishDate());
+        out.append(",\"extraInfo\":");
+        quote(out, BookFactory.getExtraInfo(book));
+        out.append('}');
+    }
+
+    static void quote(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        char c = peek();
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("无法识别的字符 '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("对象的键必须是字符串");
+            }
+            String key = readString();
+            skipWhitespace();
+            if (peek() != ':') {
+                throw error("缺少 ':'");
+            }
+            pos++;
+            object.put(key, readValue());
+            skipWhitespace();
+            char c = peek();
+            pos++;
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw error("缺少 ',' 或 '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            char c = peek();
+            pos++;
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw error("缺少 ',' 或 ']'");
+            }
+        }
+    }
+
+    private String readString() {
+        StringBuilder out = new StringBuilder();
+        pos++;
+        while (true) {
+            char c = peek();
+            pos++;
+            if (c == '"') {
+                return out.toString();
+            }
+            if (c < 0x20) {
+                throw error("字符串中有未转义的控制字符");
+            }
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char escaped = peek();
+            pos++;
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.append(escaped);
+                    break;
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length()) {
+                        throw error("\\u 转义不完整");
+                    }
+                    try {
+                        out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("\\u 转义格式错误");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("未知的转义 \\" + escaped);
+            }
+        }
+    }
+
+    private Double readNumber() {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+        try {
+            return Double.valueOf(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("数字格式错误");
+        }
+    }
+
+    private void expect(String literal) {
+        if (!text.startsWith(literal, pos)) {
+            throw error("无法识别的值");
+        }
+        pos += literal.length();
+    }
+
+    private char peek() {
+        if (pos >= text.length()) {
+            throw error("JSON意外结束");
+        }
+        return text.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON格式错误（位置 " + pos + "）: " + message);
+    }
+}
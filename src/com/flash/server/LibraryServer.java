@@ -0,0 +1,103 @@
+package com.flash.server;
+
+import com.flash.MysqlStorage;
+import com.flash.dao.BookDAO;
+import com.flash.dao.UserDAO;
+import com.flash.utils.ConsoleUtil;
+import com.flash.utils.DatabaseUtil;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 图书管理系统的HTTP/JSON服务
+ * <p>
+ * 基于JDK自带的 HttpServer，每个请求在一个虚拟线程上处理，请求阻塞在数据库调用或连接池等待时
+ * 不占用平台线程，并发请求数不受线程池大小限制，真正的并发上限是连接池的 pool.maxSize。
+ * 每次数据库调用只在调用期间借用连接。登录后以 Authorization: Bearer 令牌标识会话，
+ * 浏览和搜索不需要登录，添加和删除图书以及查看运行状态需要管理员身份。
+ * <p>
+ * 用法: java com.flash.server.LibraryServer [端口]，或 java com.flash.LibrarySystem --server [端口]
+ */
+public class LibraryServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SessionManager sessions;
+
+    /**
+     * @param books 所有请求共用的 BookDAO，应以连接池数据源创建
+     * @param users 所有请求共用的 UserDAO
+     */
+    public LibraryServer(InetSocketAddress address, int backlog, BookDAO books, UserDAO users,
+                         long sessionTimeoutMillis) throws IOException {
+        this.sessions = new SessionManager(sessionTimeoutMillis);
+        this.server = HttpServer.create(address, backlog);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        AuthHandler auth = new AuthHandler(books, users, sessions);
+        server.createContext("/api/login", auth);
+        server.createContext("/api/logout", auth);
+        server.createContext("/api/books", new BookHandler(books, users, sessions));
+        server.createContext("/api/status", new StatusHandler(books, users, sessions));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * 停止接受新连接，最多等待 delaySeconds 秒让进行中的请求完成
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public static void main(String[] args) {
+        if (!"mysql".equalsIgnoreCase(DatabaseUtil.getConfig("storage.engine", "mysql"))) {
+            ConsoleUtil.printError("服务模式只支持 mysql 存储引擎");
+            System.exit(2);
+        }
+        int port = DatabaseUtil.getIntConfig("server.port", 8080);
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                ConsoleUtil.printError("端口格式错误: " + args[0]);
+                System.exit(2);
+            }
+        }
+
+        try {
+            MysqlStorage storage = MysqlStorage.start();
+            LibraryServer server = new LibraryServer(new InetSocketAddress(port),
+                    DatabaseUtil.getIntConfig("server.backlog", 256), storage.getBookDAO(), storage.getUserDAO(),
+                    DatabaseUtil.getLongConfig("server.sessionTimeout", 1800000));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(2);
+                try {
+                    storage.close();
+                } catch (IOException | SQLException e) {
+                    ConsoleUtil.printWarning("关闭服务时出错: " + e.getMessage());
+                }
+            }, "server-shutdown"));
+            server.start();
+            ConsoleUtil.printSuccess("图书管理服务已启动，端口 " + server.getPort());
+        } catch (IOException | SQLException | InterruptedException | RuntimeException e) {
+            ConsoleUtil.printError("服务启动失败: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
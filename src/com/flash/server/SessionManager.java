@@ -0,0 +1,98 @@
+package com.flash.server;
+
+import com.flash.pojo.User;
+import com.flash.utils.ReplicaRouter;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 登录会话，以随机令牌为键保存在内存中
+ * <p>
+ * 会话在最后一次访问后 timeout 毫秒过期；过期会话在访问时发现即删除，
+ * 每次登录时再顺带清理一遍，因此不需要后台线程。服务重启后所有会话失效。
+ * 每个会话带一个读己之写的 {@link ReplicaRouter.Session}，同一用户写入后的读取走主库。
+ */
+final class SessionManager {
+    private static final int TOKEN_BYTES = 24;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long timeout;
+
+    private static final class Session {
+        final User user;
+        final ReplicaRouter.Session reads = new ReplicaRouter.Session();
+        volatile long lastAccess;
+
+        Session(User user, long now) {
+            this.user = user;
+            this.lastAccess = now;
+        }
+    }
+
+    SessionManager(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("会话超时必须大于0: " + timeoutMillis);
+        }
+        this.timeout = timeoutMillis;
+    }
+
+    /**
+     * 为已通过验证的用户创建会话
+     *
+     * @return 会话令牌
+     */
+    String create(User user) {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> now - session.lastAccess > timeout);
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(user, now));
+        return token;
+    }
+
+    /**
+     * 令牌对应的用户，令牌无效或已过期时返回null
+     */
+    User get(String token) {
+        Session session = find(token);
+        return session == null ? null : session.user;
+    }
+
+    /**
+     * 令牌对应会话的副本路由会话，令牌无效或已过期时返回null
+     */
+    ReplicaRouter.Session readSession(String token) {
+        Session session = find(token);
+        return session == null ? null : session.reads;
+    }
+
+    private Session find(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccess > timeout) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session;
+    }
+
+    boolean remove(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+}
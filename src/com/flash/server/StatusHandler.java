@@ -0,0 +1,36 @@
+package com.flash.server;
+
+import com.flash.dao.BookDAO;
+import com.flash.dao.CachingBookDAO;
+import com.flash.dao.UserDAO;
+import com.flash.utils.ConnectionPool;
+import com.flash.utils.DatabaseUtil;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * 运行状态接口
+ * <p>
+ * GET /api/status（管理员）返回主库连接池、预编译语句缓存、只读副本和图书缓存的状态，
+ * 未配置副本时 replicas 为null，图书访问不带缓存时 bookCache 为null。
+ */
+class StatusHandler extends ApiHandler {
+
+    StatusHandler(BookDAO books, UserDAO users, SessionManager sessions) {
+        super(books, users, sessions);
+    }
+
+    @Override
+    protected void serve(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        requireMethod(exchange, "GET");
+        requireAdmin(exchange);
+        ConnectionPool pool = ConnectionPool.getInstance();
+        sendJson(exchange, 200, Json.object(
+                "pool", pool.getPoolStatus(),
+                "statementCache", pool.getStatementCacheStatus(),
+                "replicas", DatabaseUtil.getReplicaStatus(),
+                "bookCache", books instanceof CachingBookDAO ? ((CachingBookDAO) books).getCacheStatus() : null));
+    }
+}
@@ -0,0 +1,519 @@
+package com.flash.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 存放在单个文件中的B+树，键为不超过 {@link #MAX_KEY_LENGTH} 字节的字节串（按无符号字典序比较），值为非负long
+ * <p>
+ * 文件按 {@link #PAGE_SIZE} 分页，第0页为文件头，其余为节点页；叶子节点之间按键序单向链接，供范围扫描使用。
+ * 节点修改后立即写回文件（不刷盘），最近使用的节点缓存在内存中。删除只从叶子中移除键，不合并节点。
+ * <p>
+ * 树由数据文件派生，不单独保证崩溃一致：第一次修改前在文件头清除 clean 标记并刷盘，
+ * {@link #checkpoint(long, long)} 刷盘后再设置 clean 标记。打开时 clean 标记缺失说明上次未正常关闭，
+ * 调用方应 {@link #clear()} 后从数据文件重建。
+ * <p>
+ * 本类不是线程安全的，由 {@link EmbeddedStore} 的读写锁保护；只读操作可以并发执行。
+ */
+final class BPlusTree implements Closeable {
+    static final int PAGE_SIZE = 4096;
+    static final int MAX_KEY_LENGTH = 255;
+
+    private static final int MAGIC = 0x464C4250;
+    private static final short VERSION = 1;
+    /** 节点页头：是否叶子、键数、叶子的下一页 */
+    private static final int NODE_HEADER = 1 + 2 + 8;
+    private static final int CACHE_PAGES = 2048;
+
+    private final FileChannel channel;
+    private final Map<Long, Node> cache = new LinkedHashMap<Long, Node>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+            return size() > CACHE_PAGES;
+        }
+    };
+
+    private long root;
+    private long pageCount;
+    private boolean clean;
+    private long dataLength;
+    private long userValue;
+
+    private BPlusTree(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 打开索引文件，不存在或为空时创建空树
+     */
+    static BPlusTree open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        BPlusTree tree = new BPlusTree(channel);
+        try {
+            if (channel.size() < PAGE_SIZE) {
+                tree.reset();
+            } else {
+                tree.readHeader(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return tree;
+    }
+
+    /**
+     * 上次是否正常关闭，false 时树的内容不可信
+     */
+    boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * 最近一次 checkpoint 时数据文件的长度
+     */
+    long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 随 checkpoint 保存的附加值
+     */
+    long getUserValue() {
+        return userValue;
+    }
+
+    /**
+     * 清空整棵树
+     */
+    void clear() throws IOException {
+        synchronized (cache) {
+            cache.clear();
+        }
+        channel.truncate(0);
+        reset();
+    }
+
+    /**
+     * 刷盘并设置 clean 标记，记录与树内容对应的数据文件长度
+     */
+    void checkpoint(long dataLength, long userValue) throws IOException {
+        this.dataLength = dataLength;
+        this.userValue = userValue;
+        channel.force(false);
+        clean = true;
+        writeHeader();
+        channel.force(false);
+    }
+
+    /**
+     * 查找键对应的值，不存在时返回-1
+     */
+    long get(byte[] key) throws IOException {
+        Node node = findLeaf(key);
+        int pos = node.search(key);
+        return pos >= 0 ? node.values[pos] : -1;
+    }
+
+    /**
+     * 写入键值，键已存在时覆盖
+     *
+     * @return 原来的值，键不存在时返回-1
+     */
+    long put(byte[] key, long value) throws IOException {
+        if (key.length == 0 || key.length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("索引键长度超出范围: " + key.length);
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("索引值不能为负数: " + value);
+        }
+        markDirty();
+        long[] previous = {-1};
+        Split split = insert(node(root), key, value, previous);
+        if (split != null) {
+            Node newRoot = new Node(allocatePage(), false);
+            newRoot.keys = new byte[][]{split.key};
+            newRoot.values = new long[]{root, split.page};
+            newRoot.count = 1;
+            write(newRoot);
+            root = newRoot.page;
+            writeHeader();
+        }
+        return previous[0];
+    }
+
+    /**
+     * 删除键
+     *
+     * @return 原来的值，键不存在时返回-1
+     */
+    long remove(byte[] key) throws IOException {
+        Node leaf = findLeaf(key);
+        int pos = leaf.search(key);
+        if (pos < 0) {
+            return -1;
+        }
+        markDirty();
+        long value = leaf.values[pos];
+        leaf.removeAt(pos);
+        write(leaf);
+        return value;
+    }
+
+    /**
+     * 从第一个不小于 from 的键开始按序遍历
+     */
+    Cursor seek(byte[] from) throws IOException {
+        Node leaf = findLeaf(from);
+        int pos = leaf.search(from);
+        return new Cursor(leaf, pos >= 0 ? pos : -pos - 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 按键序遍历叶子中的键值
+     */
+    final class Cursor {
+        private Node leaf;
+        private int pos;
+        private byte[] key;
+        private long value;
+
+        private Cursor(Node leaf, int pos) {
+            this.leaf = leaf;
+            this.pos = pos - 1;
+        }
+
+        /**
+         * 移到下一个键，没有时返回 false
+         */
+        boolean next() throws IOException {
+            pos++;
+            while (pos >= leaf.count) {
+                if (leaf.next == 0) {
+                    return false;
+                }
+                leaf = node(leaf.next);
+                pos = 0;
+            }
+            key = leaf.keys[pos];
+            value = leaf.values[pos];
+            return true;
+        }
+
+        byte[] key() {
+            return key;
+        }
+
+        long value() {
+            return value;
+        }
+    }
+
+    private Split insert(Node node, byte[] key, long value, long[] previous) throws IOException {
+        if (node.leaf) {
+            int pos = node.search(key);
+            if (pos >= 0) {
+                previous[0] = node.values[pos];
+                node.values[pos] = value;
+                write(node);
+                return null;
+            }
+            node.insertAt(-pos - 1, key, value);
+        } else {
+            int index = node.childIndex(key);
+            Split split = insert(node(node.values[index]), key, value, previous);
+            if (split == null) {
+                return null;
+            }
+            node.insertChild(index, split.key, split.page);
+        }
+        if (node.size() <= PAGE_SIZE) {
+            write(node);
+            return null;
+        }
+        return split(node);
+    }
+
+    /**
+     * 按字节数对半拆分溢出的节点，右半部分写入新页
+     */
+    private Split split(Node node) throws IOException {
+        int half = node.size() / 2;
+        int bytes = NODE_HEADER + (node.leaf ? 0 : 8);
+        int mid = 0;
+        while (mid < node.count - 1 && bytes < half) {
+            bytes += entrySize(node.keys[mid]);
+            mid++;
+        }
+        mid = Math.max(1, mid);
+        Node right = new Node(allocatePage(), node.leaf);
+        byte[] separator;
+        if (node.leaf) {
+            right.keys = Arrays.copyOfRange(node.keys, mid, node.count);
+            right.values = Arrays.copyOfRange(node.values, mid, node.count);
+            right.count = node.count - mid;
+            right.next = node.next;
+            node.next = right.page;
+            separator = right.keys[0];
+        } else {
+            // 中间的键上移到父节点，左右各自保留两侧的子节点
+            separator = node.keys[mid];
+            right.keys = Arrays.copyOfRange(node.keys, mid + 1, node.count);
+            right.values = Arrays.copyOfRange(node.values, mid + 1, node.count + 1);
+            right.count = node.count - mid - 1;
+        }
+        node.count = mid;
+        node.keys = Arrays.copyOf(node.keys, Math.max(mid, 4));
+        node.values = Arrays.copyOf(node.values, Math.max(node.leaf ? mid : mid + 1, 4));
+        write(right);
+        write(node);
+        return new Split(separator, right.page);
+    }
+
+    private Node findLeaf(byte[] key) throws IOException {
+        Node node = node(root);
+        while (!node.leaf) {
+            node = node(node.values[node.childIndex(key)]);
+        }
+        return node;
+    }
+
+    private Node node(long page) throws IOException {
+        synchronized (cache) {
+            Node node = cache.get(page);
+            if (node != null) {
+                return node;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(buffer, page * PAGE_SIZE);
+        buffer.flip();
+        Node node = new Node(page, buffer.get() == 1);
+        node.count = buffer.getShort() & 0xFFFF;
+        node.next = buffer.getLong();
+        node.keys = new byte[Math.max(node.count, 4)][];
+        node.values = new long[Math.max(node.count + 1, 4)];
+        if (!node.leaf) {
+            node.values[0] = buffer.getLong();
+        }
+        for (int i = 0; i < node.count; i++) {
+            byte[] key = new byte[buffer.get() & 0xFF];
+            buffer.get(key);
+            node.keys[i] = key;
+            node.values[node.leaf ? i : i + 1] = buffer.getLong();
+        }
+        synchronized (cache) {
+            cache.put(page, node);
+        }
+        return node;
+    }
+
+    private void write(Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.put((byte) (node.leaf ? 1 : 0));
+        buffer.putShort((short) node.count);
+        buffer.putLong(node.next);
+        if (!node.leaf) {
+            buffer.putLong(node.values[0]);
+        }
+        for (int i = 0; i < node.count; i++) {
+            buffer.put((byte) node.keys[i].length);
+            buffer.put(node.keys[i]);
+            buffer.putLong(node.values[node.leaf ? i : i + 1]);
+        }
+        buffer.clear();
+        writeFully(buffer, node.page * PAGE_SIZE);
+        synchronized (cache) {
+            cache.put(node.page, node);
+        }
+    }
+
+    private long allocatePage() {
+        return pageCount++;
+    }
+
+    private void markDirty() throws IOException {
+        if (clean) {
+            clean = false;
+            writeHeader();
+            channel.force(false);
+        }
+    }
+
+    private void reset() throws IOException {
+        pageCount = 2;
+        root = 1;
+        clean = true;
+        dataLength = 0;
+        userValue = 0;
+        write(new Node(root, true));
+        writeHeader();
+    }
+
+    private void readHeader(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(buffer, 0);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("不是索引文件: " + file);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("不支持的索引文件版本 " + version + ": " + file);
+        }
+        clean = buffer.get() == 1;
+        root = buffer.getLong();
+        pageCount = buffer.getLong();
+        dataLength = buffer.getLong();
+        userValue = buffer.getLong();
+        if (root <= 0 || root >= pageCount || channel.size() < pageCount * PAGE_SIZE) {
+            // 页数与文件长度不符，按未正常关闭处理
+            if (root <= 0 || root >= pageCount) {
+                reset();
+            }
+            clean = false;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) (clean ? 1 : 0));
+        buffer.putLong(root);
+        buffer.putLong(pageCount);
+        buffer.putLong(dataLength);
+        buffer.putLong(userValue);
+        buffer.clear();
+        writeFully(buffer, 0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("索引文件已损坏，页 " + position / PAGE_SIZE + " 不完整");
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static int entrySize(byte[] key) {
+        return 1 + key.length + 8;
+    }
+
+    private static final class Split {
+        final byte[] key;
+        final long page;
+
+        Split(byte[] key, long page) {
+            this.key = key;
+            this.page = page;
+        }
+    }
+
+    /**
+     * 节点；叶子的 values[i] 是 keys[i] 的值，内部节点的 values 为 count+1 个子节点页号，
+     * values[i] 子树中的键小于 keys[i]，values[i+1] 子树中的键不小于 keys[i]
+     */
+    private static final class Node {
+        final long page;
+        final boolean leaf;
+        int count;
+        byte[][] keys = new byte[4][];
+        long[] values = new long[4];
+        long next;
+
+        Node(long page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+        }
+
+        /**
+         * 二分查找，找到时返回位置，否则返回 -(插入位置)-1
+         */
+        int search(byte[] key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Arrays.compareUnsigned(keys[mid], key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+
+        /**
+         * 内部节点中应继续查找的子节点下标
+         */
+        int childIndex(byte[] key) {
+            int pos = search(key);
+            return pos >= 0 ? pos + 1 : -pos - 1;
+        }
+
+        void insertAt(int pos, byte[] key, long value) {
+            ensureCapacity(count + 1);
+            System.arraycopy(keys, pos, keys, pos + 1, count - pos);
+            System.arraycopy(values, pos, values, pos + 1, count - pos);
+            keys[pos] = key;
+            values[pos] = value;
+            count++;
+        }
+
+        void insertChild(int index, byte[] key, long child) {
+            ensureCapacity(count + 2);
+            System.arraycopy(keys, index, keys, index + 1, count - index);
+            System.arraycopy(values, index + 1, values, index + 2, count - index);
+            keys[index] = key;
+            values[index + 1] = child;
+            count++;
+        }
+
+        void removeAt(int pos) {
+            System.arraycopy(keys, pos + 1, keys, pos, count - pos - 1);
+            System.arraycopy(values, pos + 1, values, pos, count - pos - 1);
+            count--;
+            keys[count] = null;
+        }
+
+        int size() {
+            int size = NODE_HEADER + (leaf ? 0 : 8);
+            for (int i = 0; i < count; i++) {
+                size += entrySize(keys[i]);
+            }
+            return size;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(capacity, keys.length * 2));
+            }
+            if (capacity + 1 > values.length) {
+                values = Arrays.copyOf(values, Math.max(capacity + 1, values.length * 2));
+            }
+        }
+    }
+}
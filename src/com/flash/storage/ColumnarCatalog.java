@@ -0,0 +1,600 @@
+package com.flash.storage;
+
+import com.flash.factory.BookFactory;
+import com.flash.pojo.Book;
+import com.flash.pojo.BookSummary;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 常驻内存的列式图书目录，数据放在堆外的直接内存中
+ * <p>
+ * 每本图书占一行，字段按列分别存放：ID、分类、作者、额外信息和出版日期各是一列int，
+ * 其中分类、作者和额外信息为字典编码，出版日期按 yyyyMMdd 压成一个int（格式不符的日期进字典）；
+ * 书名和ISBN以UTF-8依次追加到两块字节区，各用一列int记录起始偏移，结束位置即下一行的起始偏移。
+ * ID到行号的映射也是一列int，以ID为下标，因此要求ID是自增主键这样的稠密整数。
+ * 每本图书在堆外约占32字节加书名和ISBN的UTF-8字节数，堆上只有字典中不重复的字符串，
+ * 垃圾回收不需要扫描目录内容。堆外内存总量受 -XX:MaxDirectMemorySize 限制。
+ * <p>
+ * 更新时书名和ISBN不变则原地改写定长的各列；书名或ISBN变化时追加新行并改指向，删除只清除映射，
+ * 旧行留作空洞。空洞行数超过存活行数的一半（且不少于 {@value #MIN_COMPACT_HOLES} 行）时，
+ * 按ID顺序把存活行复制到新的列中压缩，压缩的开销由此前累积的修改分摊。
+ * 读取时不为每行创建对象，{@link Row} 是指向当前行的享元，字段在访问时才解码，
+ * 需要图书对象时由 {@link Row#toBook()} 按需生成。
+ * <p>
+ * 读操作持有读锁可以并发，写操作持有写锁。
+ */
+public class ColumnarCatalog {
+    /** 字典编码和出版日期列中表示null的值 */
+    private static final int NULL_CODE = -1;
+    /** 书名、ISBN偏移列中表示null的标志位 */
+    private static final int NULL_FLAG = Integer.MIN_VALUE;
+    private static final int INITIAL_ROWS = 1024;
+    private static final int MIN_COMPACT_HOLES = 1024;
+
+    // 以下各列压缩时整体替换
+    private IntColumn ids = new IntColumn(INITIAL_ROWS);
+    private IntColumn categories = new IntColumn(INITIAL_ROWS);
+    private IntColumn authors = new IntColumn(INITIAL_ROWS);
+    private IntColumn extras = new IntColumn(INITIAL_ROWS);
+    private IntColumn dates = new IntColumn(INITIAL_ROWS);
+    private IntColumn titleOffsets = new IntColumn(INITIAL_ROWS);
+    private IntColumn isbnOffsets = new IntColumn(INITIAL_ROWS);
+    private ByteColumn titleBytes = new ByteColumn(INITIAL_ROWS * 32);
+    private ByteColumn isbnBytes = new ByteColumn(INITIAL_ROWS * 16);
+    /** 下标为图书ID，值为行号加1，0表示不存在 */
+    private final IntColumn rowOfId = new IntColumn(INITIAL_ROWS);
+
+    private final Dictionary categoryDictionary = new Dictionary();
+    private final Dictionary authorDictionary = new Dictionary();
+    private final Dictionary extraDictionary = new Dictionary();
+    private final Dictionary dateDictionary = new Dictionary();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int liveRows;
+    /** 载入期间被 put/remove 改过的ID，载入读到的这些行已经过时 */
+    private BitSet touched;
+
+    /**
+     * 开始全量载入：此后到 {@link #finishLoading()} 之前，{@link #load(int, Book)} 不覆盖
+     * 期间由 put/remove 改过的图书，载入扫描与并发写入的先后顺序不影响结果
+     */
+    public void startLoading() {
+        lock.writeLock().lock();
+        try {
+            touched = new BitSet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入载入扫描读到的一行
+     */
+    public void load(int id, Book book) {
+        lock.writeLock().lock();
+        try {
+            if (touched == null || !touched.get(id)) {
+                write(id, book);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void finishLoading() {
+        lock.writeLock().lock();
+        try {
+            touched = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 新增或覆盖一本图书，book 的ID不使用，以 id 为准
+     */
+    public void put(int id, Book book) {
+        lock.writeLock().lock();
+        try {
+            if (touched != null) {
+                touched.set(id);
+            }
+            write(id, book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (touched != null) {
+                touched.set(id);
+            }
+            if (id < rowOfId.size() && rowOfId.get(id) != 0) {
+                rowOfId.set(id, 0);
+                liveRows--;
+                compactIfSparse();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(int id) {
+        lock.readLock().lock();
+        try {
+            return rowOf(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 目录中全部图书的ID，升序
+     */
+    public int[] ids() {
+        lock.readLock().lock();
+        try {
+            int[] result = new int[liveRows];
+            int count = 0;
+            for (int id = 0; id < rowOfId.size(); id++) {
+                if (rowOfId.get(id) != 0) {
+                    result[count++] = id;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 读取一本图书，不存在时返回null
+     *
+     * @param reader 从享元读出需要的字段，如 {@link Row#toBook()}
+     */
+    public <T> T get(int id, Function<Row, T> reader) {
+        lock.readLock().lock();
+        try {
+            int row = rowOf(id);
+            return row < 0 ? null : reader.apply(new Row(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按ID读取 ids[from, to) 中的图书，不存在的ID跳过
+     */
+    public <T> List<T> get(int[] ids, int from, int to, Function<Row, T> reader) {
+        List<T> result = new ArrayList<>(Math.max(0, to - from));
+        lock.readLock().lock();
+        try {
+            Row cursor = new Row(0);
+            for (int i = from; i < to; i++) {
+                int row = rowOf(ids[i]);
+                if (row >= 0) {
+                    cursor.row = row;
+                    result.add(reader.apply(cursor));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 按ID升序读取 afterId 之后的至多 limit 本图书
+     *
+     * @param category 只读取该分类（忽略大小写），为null时不筛选
+     */
+    public <T> List<T> scan(int afterId, String category, int limit, Function<Row, T> reader) {
+        List<T> result = new ArrayList<>(Math.min(limit, INITIAL_ROWS));
+        lock.readLock().lock();
+        try {
+            boolean[] matches = category == null ? null : categoryDictionary.matchIgnoreCase(category);
+            if (matches != null && matches.length == 0) {
+                return result;
+            }
+            Row cursor = new Row(0);
+            int end = rowOfId.size();
+            for (int id = Math.max(0, afterId + 1); id < end && result.size() < limit; id++) {
+                int row = rowOfId.get(id) - 1;
+                if (row < 0) {
+                    continue;
+                }
+                if (matches != null) {
+                    int code = categories.get(row);
+                    if (code < 0 || !matches[code]) {
+                        continue;
+                    }
+                }
+                cursor.row = row;
+                result.add(reader.apply(cursor));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 图书数、空洞行数、堆外内存占用和字典大小
+     */
+    public String getStatus() {
+        lock.readLock().lock();
+        try {
+            long bytes = ids.capacityBytes() + categories.capacityBytes() + authors.capacityBytes()
+                    + extras.capacityBytes() + dates.capacityBytes() + titleOffsets.capacityBytes()
+                    + isbnOffsets.capacityBytes() + rowOfId.capacityBytes()
+                    + titleBytes.capacityBytes() + isbnBytes.capacityBytes();
+            return String.format("列式目录 - 图书: %d, 空洞行: %d, 堆外内存: %.1fMB, 字典: 分类 %d / 作者 %d / 额外信息 %d",
+                    liveRows, ids.size() - liveRows, bytes / 1048576.0, categoryDictionary.size(),
+                    authorDictionary.size(), extraDictionary.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 已有该ID且书名和ISBN不变时原地改写定长的列，否则追加新行；调用方须持有写锁
+     */
+    private void write(int id, Book book) {
+        int row = rowOf(id);
+        if (row >= 0 && Objects.equals(titleBytes.read(titleOffsets, row), book.getTitle())
+                && Objects.equals(isbnBytes.read(isbnOffsets, row), book.getIsbn())) {
+            categories.set(row, categoryDictionary.encode(book.getCategory()));
+            authors.set(row, authorDictionary.encode(book.getAuthor()));
+            extras.set(row, extraDictionary.encode(BookFactory.getExtraInfo(book)));
+            dates.set(row, packDate(book.getPublishDate()));
+        } else {
+            append(id, book);
+            compactIfSparse();
+        }
+    }
+
+    /**
+     * 空洞超过存活行数的一半时，按ID顺序把存活行复制到新的列中；调用方须持有写锁
+     */
+    private void compactIfSparse() {
+        int holes = ids.size() - liveRows;
+        if (holes < MIN_COMPACT_HOLES || holes <= liveRows / 2) {
+            return;
+        }
+        int capacity = Math.max(INITIAL_ROWS, liveRows);
+        IntColumn newIds = new IntColumn(capacity);
+        IntColumn newCategories = new IntColumn(capacity);
+        IntColumn newAuthors = new IntColumn(capacity);
+        IntColumn newExtras = new IntColumn(capacity);
+        IntColumn newDates = new IntColumn(capacity);
+        IntColumn newTitleOffsets = new IntColumn(capacity);
+        IntColumn newIsbnOffsets = new IntColumn(capacity);
+        ByteColumn newTitleBytes = new ByteColumn(Math.max(INITIAL_ROWS * 32, titleBytes.size / 2));
+        ByteColumn newIsbnBytes = new ByteColumn(Math.max(INITIAL_ROWS * 16, isbnBytes.size / 2));
+        for (int id = 0; id < rowOfId.size(); id++) {
+            int row = rowOfId.get(id) - 1;
+            if (row < 0) {
+                continue;
+            }
+            rowOfId.set(id, newIds.size() + 1);
+            newIds.add(id);
+            newCategories.add(categories.get(row));
+            newAuthors.add(authors.get(row));
+            newExtras.add(extras.get(row));
+            newDates.add(dates.get(row));
+            newTitleOffsets.add(newTitleBytes.copy(titleBytes, titleOffsets, row));
+            newIsbnOffsets.add(newIsbnBytes.copy(isbnBytes, isbnOffsets, row));
+        }
+        ids = newIds;
+        categories = newCategories;
+        authors = newAuthors;
+        extras = newExtras;
+        dates = newDates;
+        titleOffsets = newTitleOffsets;
+        isbnOffsets = newIsbnOffsets;
+        titleBytes = newTitleBytes;
+        isbnBytes = newIsbnBytes;
+    }
+
+    private int rowOf(int id) {
+        return id >= 0 && id < rowOfId.size() ? rowOfId.get(id) - 1 : -1;
+    }
+
+    private void append(int id, Book book) {
+        if (id < 0) {
+            throw new IllegalArgumentException("图书ID不能为负数: " + id);
+        }
+        int row = ids.size();
+        ids.add(id);
+        categories.add(categoryDictionary.encode(book.getCategory()));
+        authors.add(authorDictionary.encode(book.getAuthor()));
+        extras.add(extraDictionary.encode(BookFactory.getExtraInfo(book)));
+        dates.add(packDate(book.getPublishDate()));
+        titleOffsets.add(titleBytes.append(book.getTitle()));
+        isbnOffsets.add(isbnBytes.append(book.getIsbn()));
+        while (rowOfId.size() <= id) {
+            rowOfId.add(0);
+        }
+        if (rowOfId.get(id) == 0) {
+            liveRows++;
+        }
+        rowOfId.set(id, row + 1);
+    }
+
+    /**
+     * yyyy-MM-dd 压成 yyyyMMdd，其他格式进字典并编码为小于 -1 的值
+     */
+    private int packDate(String date) {
+        if (date == null) {
+            return NULL_CODE;
+        }
+        if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+            int packed = 0;
+            boolean digits = true;
+            for (int i = 0; i < 10 && digits; i++) {
+                if (i == 4 || i == 7) {
+                    continue;
+                }
+                char c = date.charAt(i);
+                digits = c >= '0' && c <= '9';
+                packed = packed * 10 + (c - '0');
+            }
+            if (digits) {
+                return packed;
+            }
+        }
+        return -2 - dateDictionary.encode(date);
+    }
+
+    private String unpackDate(int packed) {
+        if (packed == NULL_CODE) {
+            return null;
+        }
+        if (packed < 0) {
+            return dateDictionary.decode(-2 - packed);
+        }
+        char[] chars = new char[10];
+        int value = packed;
+        for (int i = 9; i >= 0; i--) {
+            if (i == 4 || i == 7) {
+                chars[i] = '-';
+                continue;
+            }
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 指向目录中一行的享元，只在读取回调中有效，字段在访问时解码
+     */
+    public final class Row {
+        private int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        public int getId() {
+            return ids.get(row);
+        }
+
+        public String getTitle() {
+            return titleBytes.read(titleOffsets, row);
+        }
+
+        public String getAuthor() {
+            return authorDictionary.decode(authors.get(row));
+        }
+
+        public String getIsbn() {
+            return isbnBytes.read(isbnOffsets, row);
+        }
+
+        public String getCategory() {
+            return categoryDictionary.decode(categories.get(row));
+        }
+
+        public String getPublishDate() {
+            return unpackDate(dates.get(row));
+        }
+
+        public String getExtraInfo() {
+            return extraDictionary.decode(extras.get(row));
+        }
+
+        public Book toBook() {
+            return BookFactory.createBook(getCategory(), getId(), getTitle(), getAuthor(), getIsbn(),
+                    getPublishDate(), getExtraInfo());
+        }
+
+        public BookSummary toSummary() {
+            return new BookSummary(getId(), getTitle(), getAuthor(), getIsbn(), getCategory(), getPublishDate());
+        }
+    }
+
+    /**
+     * 堆外的int列，容量不足时加倍
+     */
+    private static final class IntColumn {
+        private ByteBuffer buffer;
+        private int size;
+
+        IntColumn(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return buffer.getInt(index * Integer.BYTES);
+        }
+
+        void set(int index, int value) {
+            buffer.putInt(index * Integer.BYTES, value);
+        }
+
+        void add(int value) {
+            if ((size + 1) * (long) Integer.BYTES > buffer.capacity()) {
+                buffer = grow(buffer, (size + 1) * (long) Integer.BYTES);
+            }
+            buffer.putInt(size * Integer.BYTES, value);
+            size++;
+        }
+
+        long capacityBytes() {
+            return buffer.capacity();
+        }
+    }
+
+    /**
+     * 堆外的字节区，字符串以UTF-8依次追加
+     */
+    private static final class ByteColumn {
+        private ByteBuffer buffer;
+        private int size;
+
+        ByteColumn(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        /**
+         * @return 起始偏移，value 为null时带 NULL_FLAG 标志
+         */
+        int append(String value) {
+            int offset = size;
+            if (value == null) {
+                return offset | NULL_FLAG;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (size + (long) bytes.length > buffer.capacity()) {
+                buffer = grow(buffer, size + (long) bytes.length);
+            }
+            buffer.put(size, bytes);
+            size += bytes.length;
+            return offset;
+        }
+
+        /**
+         * 读取第 row 行的字符串，结束位置为下一行的起始偏移
+         */
+        String read(IntColumn offsets, int row) {
+            int start = offsets.get(row);
+            if ((start & NULL_FLAG) != 0) {
+                return null;
+            }
+            byte[] bytes = new byte[end(offsets, row) - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 不经解码把 source 中第 row 行的字节追加到本区
+         *
+         * @return 起始偏移，该行为null时带 NULL_FLAG 标志
+         */
+        int copy(ByteColumn source, IntColumn offsets, int row) {
+            int offset = size;
+            int start = offsets.get(row);
+            if ((start & NULL_FLAG) != 0) {
+                return offset | NULL_FLAG;
+            }
+            int length = source.end(offsets, row) - start;
+            if (size + (long) length > buffer.capacity()) {
+                buffer = grow(buffer, size + (long) length);
+            }
+            buffer.put(size, source.buffer, start, length);
+            size += length;
+            return offset;
+        }
+
+        private int end(IntColumn offsets, int row) {
+            return row + 1 < offsets.size() ? offsets.get(row + 1) & ~NULL_FLAG : size;
+        }
+
+        long capacityBytes() {
+            return buffer.capacity();
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, long required) {
+        long capacity = Math.max(required, buffer.capacity() * 2L);
+        if (capacity > Integer.MAX_VALUE - 8) {
+            if (required > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("列式目录的单列超过2GB上限");
+            }
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity).order(buffer.order());
+        grown.put(0, buffer, 0, buffer.capacity());
+        return grown;
+    }
+
+    /**
+     * 堆上的字符串字典，编码为插入顺序，null 编码为 NULL_CODE
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+
+        /**
+         * 下标为编码，值为是否与 value 忽略大小写相等；没有相等的值时返回空数组
+         */
+        boolean[] matchIgnoreCase(String value) {
+            boolean[] matches = new boolean[values.size()];
+            boolean any = false;
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = values.get(i).equalsIgnoreCase(value);
+                any |= matches[i];
+            }
+            return any ? matches : new boolean[0];
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
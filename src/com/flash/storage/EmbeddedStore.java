@@ -0,0 +1,650 @@
+package com.flash.storage;
+
+import com.flash.factory.BookFactory;
+import com.flash.index.TitleIndex;
+import com.flash.pojo.Book;
+import com.flash.pojo.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * 纯Java的嵌入式图书存储，数据保存在本地目录中，不需要数据库服务
+ * <p>
+ * 图书的每次新增、更新和删除都作为一条记录追加到 books.dat，记录格式为长度、CRC32、类型和负载。
+ * 三棵磁盘B+树（{@link BPlusTree}）指向数据文件：id.idx 为图书ID到最新记录位置，
+ * isbn.idx 为大写ISBN到图书ID，category.idx 为“分类+ID”组合键的二级索引，按分类分页时顺序扫描。
+ * 用户较少，追加在 users.dat 中，打开时全部载入内存。书名子串搜索使用首次搜索时构建的内存 {@link TitleIndex}。
+ * <p>
+ * 数据文件是唯一可信的来源：写入方法只追加不刷盘，由调用方在一个操作或一批操作后调用 {@link #sync()}；
+ * 打开时截掉数据文件末尾未写完整的记录，索引未正常关闭或与数据文件长度不一致时从数据文件重建。
+ * 数据文件只追加不回收，更新和删除留下的旧记录一直占用空间。
+ * <p>
+ * 读操作持有读锁可以并发，写操作持有写锁。
+ */
+public final class EmbeddedStore implements Closeable {
+    private static final int MAGIC = 0x464C4442;
+    private static final short VERSION = 1;
+    private static final int FILE_HEADER = 4 + 2;
+    /** 记录头：长度、CRC32 */
+    private static final int RECORD_HEADER = 4 + 4;
+
+    private static final byte BOOK_PUT = 1;
+    private static final byte BOOK_DELETE = 2;
+    private static final byte USER_PUT = 3;
+
+    private final Path directory;
+    private final FileChannel data;
+    private final FileChannel users;
+    private final BPlusTree idTree;
+    private final BPlusTree isbnTree;
+    private final BPlusTree categoryTree;
+    private final Map<String, User> userMap = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long dataLength;
+    private long usersLength;
+    private int nextId;
+    private TitleIndex titleIndex;
+
+    private EmbeddedStore(Path directory) throws IOException {
+        this.directory = directory;
+        this.data = FileChannel.open(directory.resolve("books.dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.users = FileChannel.open(directory.resolve("users.dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.idTree = BPlusTree.open(directory.resolve("id.idx"));
+        this.isbnTree = BPlusTree.open(directory.resolve("isbn.idx"));
+        this.categoryTree = BPlusTree.open(directory.resolve("category.idx"));
+    }
+
+    /**
+     * 打开存储目录，不存在时创建
+     */
+    public static EmbeddedStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        EmbeddedStore store = new EmbeddedStore(directory);
+        try {
+            store.recover();
+        } catch (IOException | RuntimeException e) {
+            store.closeFiles();
+            throw e;
+        }
+        return store;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 新增图书并分配ID
+     *
+     * @return 新图书的ID，ISBN已存在时返回-1
+     */
+    public int insert(Book book) throws IOException {
+        checkKeys(book);
+        lock.writeLock().lock();
+        try {
+            if (isbnTree.get(isbnKey(book.getIsbn())) >= 0) {
+                return -1;
+            }
+            int id = nextId++;
+            long offset = append(BOOK_PUT, encodeBook(id, book));
+            indexPut(id, book, offset, null);
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按ISBN覆盖已有图书的其他字段
+     *
+     * @return 被更新图书的ID，ISBN不存在时返回-1
+     */
+    public int updateByIsbn(Book book) throws IOException {
+        checkKeys(book);
+        lock.writeLock().lock();
+        try {
+            long id = isbnTree.get(isbnKey(book.getIsbn()));
+            if (id < 0) {
+                return -1;
+            }
+            long previous = idTree.get(idKey((int) id));
+            Book old = previous < 0 ? null : read(previous);
+            long offset = append(BOOK_PUT, encodeBook((int) id, book));
+            indexPut((int) id, book, offset, old);
+            return (int) id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除图书
+     *
+     * @return 图书不存在时返回 false
+     */
+    public boolean delete(int id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long offset = idTree.get(idKey(id));
+            if (offset < 0) {
+                return false;
+            }
+            Book old = read(offset);
+            append(BOOK_DELETE, ByteBuffer.allocate(4).putInt(id).array());
+            indexRemove(id, old);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 根据ID读取图书，不存在时返回null
+     */
+    public Book get(int id) throws IOException {
+        lock.readLock().lock();
+        try {
+            long offset = idTree.get(idKey(id));
+            return offset < 0 ? null : read(offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按ID升序读取 afterId 之后最多 limit 本图书
+     */
+    public List<Book> scan(int afterId, int limit) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<Book> books = new ArrayList<>();
+            if (afterId == Integer.MAX_VALUE) {
+                return books;
+            }
+            BPlusTree.Cursor cursor = idTree.seek(idKey(afterId + 1));
+            while (books.size() < limit && cursor.next()) {
+                books.add(read(cursor.value()));
+            }
+            return books;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按ID升序读取指定分类中 afterId 之后最多 limit 本图书
+     */
+    public List<Book> scanCategory(String category, int afterId, int limit) throws IOException {
+        byte[] prefix = categoryPrefix(category);
+        lock.readLock().lock();
+        try {
+            List<Book> books = new ArrayList<>();
+            if (prefix.length + 4 > BPlusTree.MAX_KEY_LENGTH || afterId == Integer.MAX_VALUE) {
+                return books;
+            }
+            BPlusTree.Cursor cursor = categoryTree.seek(categoryKey(prefix, afterId + 1));
+            while (books.size() < limit && cursor.next() && startsWith(cursor.key(), prefix)) {
+                long offset = idTree.get(idKey((int) cursor.value()));
+                if (offset >= 0) {
+                    books.add(read(offset));
+                }
+            }
+            return books;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ISBN对应的图书ID，不存在时返回-1
+     */
+    public int findIdByIsbn(String isbn) throws IOException {
+        lock.readLock().lock();
+        try {
+            return (int) isbnTree.get(isbnKey(isbn));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ISBN以 prefix 开头（不区分大小写）的图书ID，升序排列
+     */
+    public int[] findIsbnPrefix(String prefix) throws IOException {
+        byte[] from = isbnKey(prefix);
+        lock.readLock().lock();
+        try {
+            int[] ids = new int[16];
+            int count = 0;
+            BPlusTree.Cursor cursor = isbnTree.seek(from);
+            while (cursor.next() && startsWith(cursor.key(), from)) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = (int) cursor.value();
+            }
+            ids = Arrays.copyOf(ids, count);
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ISBN包含 fragment（不区分大小写）的图书ID，升序排列；顺序扫描ISBN索引，不读取数据文件
+     */
+    public int[] findIsbnContaining(String fragment) throws IOException {
+        String pattern = fragment.toUpperCase(Locale.ROOT);
+        return findIsbn(isbn -> isbn.contains(pattern));
+    }
+
+    /**
+     * 书名包含 keyword（不区分大小写）的图书ID，升序排列
+     */
+    public int[] searchTitle(String keyword) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (titleIndex != null) {
+                return titleIndex.search(keyword);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (titleIndex == null) {
+                TitleIndex titles = new TitleIndex();
+                BPlusTree.Cursor cursor = idTree.seek(idKey(0));
+                while (cursor.next()) {
+                    Book book = read(cursor.value());
+                    titles.add(book.getId(), book.getTitle());
+                }
+                titleIndex = titles;
+            }
+            return titleIndex.search(keyword);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 新增用户
+     *
+     * @return 用户名已存在（不区分大小写）时返回 false
+     */
+    public boolean addUser(User user) throws IOException {
+        String key = user.getUsername().toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            if (userMap.containsKey(key)) {
+                return false;
+            }
+            byte[] record = frame(USER_PUT, encodeUser(user));
+            writeFully(users, ByteBuffer.wrap(record), usersLength);
+            usersLength += record.length;
+            userMap.put(key, user);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按用户名查找用户（不区分大小写），不存在时返回null
+     */
+    public User getUser(String username) {
+        lock.readLock().lock();
+        try {
+            return userMap.get(username.toLowerCase(Locale.ROOT));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把已追加的记录刷到磁盘
+     */
+    public void sync() throws IOException {
+        data.force(false);
+        users.force(false);
+    }
+
+    /**
+     * 刷盘并标记索引为正常关闭，下次打开时无需重建
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            sync();
+            idTree.checkpoint(dataLength, nextId);
+            isbnTree.checkpoint(dataLength, nextId);
+            categoryTree.checkpoint(dataLength, nextId);
+        } finally {
+            try {
+                closeFiles();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * ISBN和分类要作为索引键，长度必须在索引允许的范围内
+     */
+    private static void checkKeys(Book book) {
+        int isbnLength = isbnKey(book.getIsbn()).length;
+        if (isbnLength == 0 || isbnLength > BPlusTree.MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("ISBN长度超出范围: " + book.getIsbn());
+        }
+        if (categoryPrefix(book.getCategory()).length + 4 > BPlusTree.MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("分类名称过长: " + book.getCategory());
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        // 依次关闭全部文件，前面的关闭失败不影响后面的
+        try (data; users; idTree; isbnTree; categoryTree) {
+            // 只为关闭资源
+        }
+    }
+
+    private int[] findIsbn(Predicate<String> filter) throws IOException {
+        lock.readLock().lock();
+        try {
+            int[] ids = new int[16];
+            int count = 0;
+            BPlusTree.Cursor cursor = isbnTree.seek(new byte[0]);
+            while (cursor.next()) {
+                if (filter.test(new String(cursor.key(), StandardCharsets.UTF_8))) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = (int) cursor.value();
+                }
+            }
+            ids = Arrays.copyOf(ids, count);
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 校验文件头，截掉末尾不完整的记录，必要时重建索引，载入用户
+     */
+    private void recover() throws IOException {
+        dataLength = validLength(data, "books.dat");
+        usersLength = validLength(users, "users.dat");
+
+        boolean indexesValid = true;
+        for (BPlusTree tree : Arrays.asList(idTree, isbnTree, categoryTree)) {
+            indexesValid &= tree.isClean() && tree.getDataLength() == dataLength;
+        }
+        if (indexesValid) {
+            nextId = (int) Math.max(1, idTree.getUserValue());
+        } else {
+            rebuildIndexes();
+        }
+
+        long position = FILE_HEADER;
+        while (position < usersLength) {
+            byte[] record = readRecord(users, position);
+            User user = decodeUser(record);
+            userMap.put(user.getUsername().toLowerCase(Locale.ROOT), user);
+            position += RECORD_HEADER + record.length;
+        }
+    }
+
+    private void rebuildIndexes() throws IOException {
+        idTree.clear();
+        isbnTree.clear();
+        categoryTree.clear();
+        int maxId = 0;
+        long position = FILE_HEADER;
+        while (position < dataLength) {
+            byte[] record = readRecord(data, position);
+            if (record[0] == BOOK_PUT) {
+                Book book = decodeBook(record);
+                long previous = idTree.get(idKey(book.getId()));
+                indexPut(book.getId(), book, position, previous < 0 ? null : read(previous));
+                maxId = Math.max(maxId, book.getId());
+            } else {
+                int id = ByteBuffer.wrap(record, 1, 4).getInt();
+                long previous = idTree.get(idKey(id));
+                if (previous >= 0) {
+                    indexRemove(id, read(previous));
+                }
+                maxId = Math.max(maxId, id);
+            }
+            position += RECORD_HEADER + record.length;
+        }
+        nextId = maxId + 1;
+    }
+
+    /**
+     * 写入或校验文件头，返回最后一条完整记录之后的位置，并截掉之后的内容
+     */
+    private static long validLength(FileChannel channel, String name) throws IOException {
+        if (channel.size() < FILE_HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putShort(VERSION);
+            header.flip();
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+            channel.force(true);
+            return FILE_HEADER;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("不是嵌入式存储文件: " + name);
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("不支持的存储文件版本 " + version + ": " + name);
+        }
+        long size = channel.size();
+        long position = FILE_HEADER;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER);
+        while (position + RECORD_HEADER <= size) {
+            recordHeader.clear();
+            readFully(channel, recordHeader, position);
+            int length = recordHeader.getInt(0);
+            if (length <= 0 || position + RECORD_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(channel, body, position + RECORD_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != recordHeader.getInt(4)) {
+                break;
+            }
+            position += RECORD_HEADER + length;
+        }
+        if (position < size) {
+            // 上次写入时崩溃留下的不完整记录
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return position;
+    }
+
+    private long append(byte type, byte[] payload) throws IOException {
+        byte[] record = frame(type, payload);
+        long offset = dataLength;
+        writeFully(data, ByteBuffer.wrap(record), offset);
+        dataLength += record.length;
+        return offset;
+    }
+
+    private void indexPut(int id, Book book, long offset, Book old) throws IOException {
+        idTree.put(idKey(id), offset);
+        if (old != null) {
+            if (!Arrays.equals(isbnKey(old.getIsbn()), isbnKey(book.getIsbn()))) {
+                isbnTree.remove(isbnKey(old.getIsbn()));
+            }
+            categoryTree.remove(categoryKey(categoryPrefix(old.getCategory()), id));
+        }
+        isbnTree.put(isbnKey(book.getIsbn()), id);
+        categoryTree.put(categoryKey(categoryPrefix(book.getCategory()), id), id);
+        if (titleIndex != null) {
+            titleIndex.add(id, book.getTitle());
+        }
+    }
+
+    private void indexRemove(int id, Book old) throws IOException {
+        idTree.remove(idKey(id));
+        isbnTree.remove(isbnKey(old.getIsbn()));
+        categoryTree.remove(categoryKey(categoryPrefix(old.getCategory()), id));
+        if (titleIndex != null) {
+            titleIndex.remove(id);
+        }
+    }
+
+    private Book read(long offset) throws IOException {
+        return decodeBook(readRecord(data, offset));
+    }
+
+    private static byte[] readRecord(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(channel, header, offset);
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+        readFully(channel, body, offset + RECORD_HEADER);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        if ((int) crc.getValue() != header.getInt(4)) {
+            throw new IOException("存储文件校验失败，位置 " + offset);
+        }
+        return body.array();
+    }
+
+    private static byte[] frame(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return ByteBuffer.allocate(RECORD_HEADER + 1 + payload.length)
+                .putInt(1 + payload.length).putInt((int) crc.getValue()).put(type).put(payload).array();
+    }
+
+    private static byte[] encodeBook(int id, Book book) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(id);
+        out.writeUTF(book.getTitle());
+        out.writeUTF(book.getAuthor());
+        out.writeUTF(book.getIsbn());
+        out.writeUTF(book.getCategory());
+        out.writeUTF(book.getPublishDate());
+        String extraInfo = BookFactory.getExtraInfo(book);
+        out.writeBoolean(extraInfo != null);
+        if (extraInfo != null) {
+            out.writeUTF(extraInfo);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Book decodeBook(byte[] record) throws IOException {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+            int id = in.readInt();
+            String title = in.readUTF();
+            String author = in.readUTF();
+            String isbn = in.readUTF();
+            String category = in.readUTF();
+            String publishDate = in.readUTF();
+            String extraInfo = in.readBoolean() ? in.readUTF() : null;
+            return BookFactory.createBook(category, id, title, author, isbn, publishDate, extraInfo);
+        } catch (EOFException | UTFDataFormatException e) {
+            throw new IOException("存储文件已损坏", e);
+        }
+    }
+
+    private static byte[] encodeUser(User user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(user.getUsername());
+        out.writeUTF(user.getPassword());
+        out.writeUTF(user.getRole());
+        return bytes.toByteArray();
+    }
+
+    private static User decodeUser(byte[] record) throws IOException {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+            return new User(in.readUTF(), in.readUTF(), in.readUTF());
+        } catch (EOFException | UTFDataFormatException e) {
+            throw new IOException("用户文件已损坏", e);
+        }
+    }
+
+    /**
+     * ID键：大端序并翻转符号位，使无符号字典序与数值顺序一致
+     */
+    private static byte[] idKey(int id) {
+        return ByteBuffer.allocate(4).putInt(id ^ Integer.MIN_VALUE).array();
+    }
+
+    /**
+     * ISBN键：大写后的UTF-8字节，与MySQL不区分大小写的唯一约束一致
+     */
+    private static byte[] isbnKey(String isbn) {
+        return isbn.toUpperCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] categoryPrefix(String category) {
+        byte[] name = category.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(name, name.length + 1);
+    }
+
+    private static byte[] categoryKey(byte[] prefix, int id) {
+        return ByteBuffer.allocate(prefix.length + 4).put(prefix).put(idKey(id)).array();
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("存储文件已损坏，位置 " + position + " 处的记录不完整");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
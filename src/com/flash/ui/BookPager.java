@@ -0,0 +1,183 @@
+package com.flash.ui;
+
+import com.flash.dao.SummaryPage;
+import com.flash.pojo.BookSummary;
+import com.flash.utils.ConsoleUtil;
+
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * 逐页浏览图书列表
+ * <p>
+ * 每次只向存储读取当前显示的一页，只记住各页的起点ID，翻回前一页时按起点重新读取；
+ * 读取超过150毫秒时显示加载动画。
+ * 每页先按内容算出各列宽度（中文占两列），整页拼成一个字符串后一次输出。
+ */
+final class BookPager {
+    private static final String[] HEADERS = {"ID", "书名", "作者", "ISBN", "分类", "出版日期"};
+    private static final int[] MAX_WIDTHS = {8, 30, 16, 17, 10, 10};
+    private static final String SEPARATOR = " | ";
+
+    private final Scanner scanner;
+    private final PrintStream out;
+    private final int pageSize;
+
+    /**
+     * 按起点读取一页图书摘要
+     */
+    @FunctionalInterface
+    interface PageSource {
+        SummaryPage load(int afterId, int pageSize) throws SQLException;
+    }
+
+    BookPager(Scanner scanner, PrintStream out, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页行数必须大于0: " + pageSize);
+        }
+        this.scanner = scanner;
+        this.out = out;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * 显示第一页，有多页时进入翻页：回车或 n 下一页，p 上一页，输入页码跳转，q 返回
+     */
+    void show(PageSource source) throws SQLException {
+        // starts.get(i) 是第 i 页（从0开始）的查询起点
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        int index = 0;
+        SummaryPage page = load(source, 0);
+        if (page.getSummaries().isEmpty()) {
+            ConsoleUtil.printWarning("没有找到任何图书！");
+            return;
+        }
+        if (!page.hasMore()) {
+            out.print(render(page.getSummaries(), 0));
+            ConsoleUtil.printSuccess("共找到 " + page.getSummaries().size() + " 本图书");
+            return;
+        }
+        boolean redraw = true;
+        while (true) {
+            if (index + 1 == starts.size() && page.hasMore()) {
+                starts.add(page.getLastId());
+            }
+            if (redraw) {
+                out.print(render(page.getSummaries(), index));
+            }
+            redraw = false;
+            boolean last = !page.hasMore();
+            ConsoleUtil.printInfo("第 " + (index + 1) + " 页" + (last ? "（最后一页）" : "")
+                    + "  [回车/n] 下一页  [p] 上一页  [页码] 跳转  [q] 返回");
+            String command = scanner.nextLine().trim();
+            int target;
+            if (command.isEmpty() || command.equalsIgnoreCase("n")) {
+                target = index + 1;
+            } else if (command.equalsIgnoreCase("p")) {
+                target = index - 1;
+            } else if (command.equalsIgnoreCase("q")) {
+                return;
+            } else {
+                try {
+                    target = Integer.parseInt(command) - 1;
+                } catch (NumberFormatException e) {
+                    ConsoleUtil.printError("无效的输入: " + command);
+                    continue;
+                }
+            }
+            if (target < 0) {
+                ConsoleUtil.printWarning("已经是第一页");
+                continue;
+            }
+            if (target == index) {
+                continue;
+            }
+            if (target > index && last) {
+                ConsoleUtil.printWarning("已经是最后一页");
+                continue;
+            }
+            redraw = true;
+            // 未读过的页只能从已知的最后一个起点逐页向后找
+            int known = Math.min(target, starts.size() - 1);
+            index = known;
+            page = load(source, starts.get(known));
+            while (index < target && page.hasMore()) {
+                if (index + 1 == starts.size()) {
+                    starts.add(page.getLastId());
+                }
+                index++;
+                page = load(source, starts.get(index));
+            }
+            if (page.getSummaries().isEmpty() && index > 0) {
+                // 读取期间后面的图书被删除，退回前一页
+                starts.subList(index, starts.size()).clear();
+                index--;
+                page = load(source, starts.get(index));
+            }
+            if (index < target) {
+                ConsoleUtil.printWarning("只有 " + (index + 1) + " 页，已显示最后一页");
+            }
+        }
+    }
+
+    /**
+     * 读取一页，读取较慢时显示加载动画
+     */
+    private SummaryPage load(PageSource source, int afterId) throws SQLException {
+        return ConsoleUtil.withSpinner("正在加载图书信息", () -> source.load(afterId, pageSize));
+    }
+
+    /**
+     * 把一页图书拼成表格文本，列宽按表头和本页内容计算，不超过各列上限
+     *
+     * @param index 页号，从0开始，用于显示行的序号范围
+     */
+    String render(List<BookSummary> books, int index) {
+        int[] widths = new int[HEADERS.length];
+        for (int i = 0; i < HEADERS.length; i++) {
+            widths[i] = ConsoleUtil.displayWidth(HEADERS[i]);
+        }
+        String[][] cells = new String[books.size()][];
+        for (int row = 0; row < books.size(); row++) {
+            BookSummary book = books.get(row);
+            String[] line = {String.valueOf(book.getId()), book.getTitle(), book.getAuthor(), book.getIsbn(),
+                    book.getCategory(), book.getPublishDate()};
+            for (int i = 0; i < line.length; i++) {
+                widths[i] = Math.max(widths[i], Math.min(MAX_WIDTHS[i], ConsoleUtil.displayWidth(line[i])));
+            }
+            cells[row] = line;
+        }
+        int total = SEPARATOR.length() * (widths.length - 1);
+        for (int width : widths) {
+            total += width;
+        }
+        String divider = ConsoleUtil.GRAY + "-".repeat(total) + ConsoleUtil.RESET + "\n";
+
+        StringBuilder text = new StringBuilder((total + 8) * (books.size() + 4));
+        text.append(divider).append(ConsoleUtil.WHITE);
+        appendRow(text, HEADERS, widths);
+        text.append(ConsoleUtil.RESET).append('\n').append(divider);
+        for (String[] line : cells) {
+            appendRow(text, line, widths);
+            text.append('\n');
+        }
+        text.append(divider);
+        int first = index * pageSize + 1;
+        text.append(ConsoleUtil.GRAY).append("第 ").append(first).append('-').append(first + books.size() - 1)
+                .append(" 本").append(ConsoleUtil.RESET).append('\n');
+        return text.toString();
+    }
+
+    private static void appendRow(StringBuilder text, String[] cells, int[] widths) {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                text.append(SEPARATOR);
+            }
+            ConsoleUtil.appendPadded(text, cells[i], widths[i]);
+        }
+    }
+}
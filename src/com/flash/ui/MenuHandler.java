@@ -1,8 +1,11 @@
 package com.flash.ui;
 
-import com.flash.dao.BookDAO;
-import com.flash.dao.UserDAO;
+import com.flash.dao.BookRepository;
+import com.flash.dao.CachingBookDAO;
+import com.flash.dao.UserRepository;
+import com.flash.factory.BookCategory;
 import com.flash.factory.BookFactory;
+import com.flash.factory.CategoryRegistry;
 import com.flash.pojo.Book;
 import com.flash.pojo.User;
 import com.flash.utils.DatabaseUtil;
@@ -11,6 +14,7 @@ import com.flash.utils.ConsoleUtil;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Supplier;
 import java.util.InputMismatchException;
 
 /**
@@ -24,9 +28,15 @@ public class MenuHandler {
     /** 用于处理用户输入 */
     private final Scanner scanner;
     /** 用户数据访问对象 */
-    private final UserDAO userDAO;
+    private final UserRepository userDAO;
     /** 图书数据访问对象 */
-    private final BookDAO bookDAO;
+    private final BookRepository bookDAO;
+    /** 退出时关闭的存储 */
+    private final AutoCloseable storage;
+    /** 图书列表的分页显示 */
+    private final BookPager pager;
+    /** 管理员查看的系统运行状态，本地存储时为null */
+    private final Supplier<String> status;
     /** 当前登录用户 */
     private User currentUser;
 
@@ -36,10 +46,37 @@ public class MenuHandler {
      * @param userDAO 用户数据访问对象
      * @param bookDAO 图书数据访问对象
      */
-    public MenuHandler(UserDAO userDAO, BookDAO bookDAO) {
+    public MenuHandler(UserRepository userDAO, BookRepository bookDAO) {
+        this(userDAO, bookDAO, DatabaseUtil::shutdown, () -> databaseStatus(bookDAO));
+    }
+
+    /**
+     * 构造函数，初始化菜单处理器
+     *
+     * @param userDAO 用户数据访问对象
+     * @param bookDAO 图书数据访问对象
+     * @param storage 退出系统时关闭的存储
+     */
+    public MenuHandler(UserRepository userDAO, BookRepository bookDAO, AutoCloseable storage) {
+        this(userDAO, bookDAO, storage, null);
+    }
+
+    /**
+     * 构造函数，初始化菜单处理器
+     *
+     * @param userDAO 用户数据访问对象
+     * @param bookDAO 图书数据访问对象
+     * @param storage 退出系统时关闭的存储
+     * @param status  管理员“系统状态”菜单显示的内容，为null时不提供该菜单
+     */
+    public MenuHandler(UserRepository userDAO, BookRepository bookDAO, AutoCloseable storage,
+                       Supplier<String> status) {
+        this.status = status;
         this.scanner = new Scanner(System.in);
         this.userDAO = userDAO;
         this.bookDAO = bookDAO;
+        this.storage = storage;
+        this.pager = new BookPager(scanner, System.out, DatabaseUtil.getIntConfig("console.pageSize", 20));
     }
 
     /**
@@ -78,8 +115,11 @@ public class MenuHandler {
         }
         
         ConsoleUtil.printMenuItem(8, "退出系统");
+        if (hasStatusMenu()) {
+            ConsoleUtil.printMenuItem(9, "系统状态");
+        }
         ConsoleUtil.printDivider();
-        ConsoleUtil.printColored("请输入选择 (1-8): ", ConsoleUtil.GREEN);
+        ConsoleUtil.printColored("请输入选择 (1-" + (hasStatusMenu() ? 9 : 8) + "): ", ConsoleUtil.GREEN);
     }
 
     /**
@@ -103,6 +143,32 @@ public class MenuHandler {
         ConsoleUtil.printMenuItem(7, "退出登录");
     }
 
+    /**
+     * 数据库存储的运行状态，图书访问带缓存时附上缓存命中情况
+     */
+    private static String databaseStatus(BookRepository bookDAO) {
+        String status = DatabaseUtil.getStatus();
+        if (bookDAO instanceof CachingBookDAO) {
+            status += "\n" + ((CachingBookDAO) bookDAO).getCacheStatus();
+        }
+        return status;
+    }
+
+    private boolean hasStatusMenu() {
+        return status != null && isAdmin();
+    }
+
+    /**
+     * 显示连接池、语句缓存等运行状态
+     */
+    private void showStatus() {
+        ConsoleUtil.clearScreen();
+        ConsoleUtil.printTitle("系统状态");
+        for (String line : status.get().split("\n")) {
+            ConsoleUtil.printInfo(line);
+        }
+    }
+
     private boolean isAdmin() {
         return currentUser != null && "admin".equals(currentUser.getRole());
     }
@@ -165,18 +231,15 @@ public class MenuHandler {
                 case 1:
                     ConsoleUtil.clearScreen();
                     ConsoleUtil.printTitle("所有图书");
-                    ConsoleUtil.printLoadingAnimation("正在加载图书信息", 1);
-                    List<Book> allBooks = bookDAO.getAllBooks();
-                    displayBooks(allBooks);
+                    displayBooks(bookDAO::getAllSummariesPage);
                     break;
                 case 2:
                     ConsoleUtil.clearScreen();
                     ConsoleUtil.printTitle("分类查看");
                     ConsoleUtil.printColored("请输入图书分类：", ConsoleUtil.CYAN);
                     String category = scanner.nextLine();
-                    ConsoleUtil.printLoadingAnimation("正在搜索", 1);
-                    List<Book> books = bookDAO.getBooksByCategory(category);
-                    displayBooks(books);
+                    displayBooks((afterId, pageSize) ->
+                            bookDAO.getSummariesByCategoryPage(category, afterId, pageSize));
                     break;
                 default:
                     ConsoleUtil.printError("无效的选择！");
@@ -208,16 +271,16 @@ public class MenuHandler {
                     System.out.println("----------------");
                     System.out.print("请输入书名关键字：");
                     String title = scanner.nextLine();
-                    List<Book> booksByTitle = bookDAO.searchBooksByTitle(title);
-                    displayBooks(booksByTitle);
+                    displayBooks((afterId, pageSize) ->
+                            bookDAO.searchSummariesByTitlePage(title, afterId, pageSize));
                     break;
                 case 2:
                     System.out.println("=== ISBN搜索 ===");
                     System.out.println("----------------");
                     System.out.print("请输入ISBN：");
                     String isbn = scanner.nextLine();
-                    List<Book> booksByIsbn = bookDAO.searchBooksByIsbn(isbn);
-                    displayBooks(booksByIsbn);
+                    displayBooks((afterId, pageSize) ->
+                            bookDAO.searchSummariesByIsbnPage(isbn, afterId, pageSize));
                     break;
                 default:
                     System.out.println("无效的选择！");
@@ -227,19 +290,27 @@ public class MenuHandler {
     }
 
     private void addBook() throws SQLException {
+        List<BookCategory> categories = CategoryRegistry.all();
+        int back = categories.size() + 1;
         clearScreen();
         System.out.println("=== 添加图书 ===");
         System.out.println("----------------");
-        System.out.println("1. 添加计算机类图书");
-        System.out.println("2. 添加文学类图书");
-        System.out.println("3. 返回主菜单");
+        for (int i = 0; i < categories.size(); i++) {
+            System.out.println((i + 1) + ". 添加" + categories.get(i).getName() + "类图书");
+        }
+        System.out.println(back + ". 返回主菜单");
         System.out.println("----------------");
-        System.out.print("请选择图书类型 (1-3): ");
+        System.out.print("请选择图书类型 (1-" + back + "): ");
         
         int choice = scanner.nextInt();
         scanner.nextLine();
         
-        if (choice == 3) return;
+        if (choice == back) return;
+        if (choice < 1 || choice > back) {
+            System.out.println("无效的选择！");
+            return;
+        }
+        BookCategory selected = categories.get(choice - 1);
         
         System.out.print("书名: ");
         String title = scanner.nextLine();
@@ -249,28 +320,17 @@ public class MenuHandler {
         
         System.out.print("ISBN: ");
         String isbn = scanner.nextLine();
+        if (bookDAO.isbnExists(isbn)) {
+            System.out.println("ISBN已存在，图书添加失败！");
+            return;
+        }
         
         System.out.print("出版日期 (yyyy-MM-dd): ");
         String publishDate = scanner.nextLine();
         
-        String category;
-        String extraInfo;
-        
-        switch (choice) {
-            case 1:
-                category = "计算机";
-                System.out.print("编程语言: ");
-                extraInfo = scanner.nextLine();
-                break;
-            case 2:
-                category = "文学";
-                System.out.print("文学流派: ");
-                extraInfo = scanner.nextLine();
-                break;
-            default:
-                System.out.println("无效的选择！");
-                return;
-        }
+        String category = selected.getName();
+        System.out.print(selected.getExtraLabel() + ": ");
+        String extraInfo = scanner.nextLine();
         
         Book newBook = BookFactory.createBook(
             category, 0, title, author, isbn, publishDate, extraInfo
@@ -303,8 +363,7 @@ public class MenuHandler {
                 case 1:
                     clearScreen();
                     System.out.println("=== 所有图书 ===");
-                    List<Book> allBooks = bookDAO.getAllBooks();
-                    displayBooks(allBooks);
+                    displayBooks(bookDAO::getAllSummariesPage);
                     pressEnterToContinue();
                     break;
                 case 2:
@@ -337,31 +396,14 @@ public class MenuHandler {
         }
     }
 
-    private void displayBooks(List<Book> books) {
-        if (books.isEmpty()) {
-            ConsoleUtil.printWarning("没有找到任何图书！");
-            return;
-        }
-        
-        ConsoleUtil.printSuccess("找到 " + books.size() + " 本图书：");
-        ConsoleUtil.printDivider();
-        
-        // 表头
-        System.out.printf(ConsoleUtil.WHITE + "%-4s | %-20s | %-15s | %-15s | %-10s | %-10s\n" + 
-                         ConsoleUtil.RESET, "ID", "书名", "作者", "ISBN", "分类", "出版日期");
-        ConsoleUtil.printDivider();
-        
-        // 图书信息
-        for (Book book : books) {
-            System.out.printf("%-4d | %-20s | %-15s | %-15s | %-10s | %-10s\n",
-                    book.getId(),
-                    truncateString(book.getTitle(), 20),
-                    truncateString(book.getAuthor(), 15),
-                    truncateString(book.getIsbn(), 15),
-                    truncateString(book.getCategory(), 10),
-                    book.getPublishDate());
-        }
-        ConsoleUtil.printDivider();
+    /**
+     * 逐页显示图书列表，每次只读取当前显示的一页
+     * 
+     * @param source 按起点读取一页图书摘要
+     * @throws SQLException 读取失败时
+     */
+    private void displayBooks(BookPager.PageSource source) throws SQLException {
+        pager.show(source);
     }
 
     /**
@@ -413,18 +455,6 @@ public class MenuHandler {
         return isbn.matches("\\d{10}|\\d{13}");
     }
 
-    /**
-     * 截断字符串到指定长度
-     * 
-     * @param str 要截断的字符串
-     * @param length 目标长度
-     * @return 截断后的字符串
-     */
-    private String truncateString(String str, int length) {
-        if (str == null) return "";
-        return str.length() > length ? str.substring(0, length - 3) + "..." : str;
-    }
-
     /**
      * 清除控制台屏幕
      */
@@ -488,10 +518,23 @@ public class MenuHandler {
             case 7:
                 logout();
                 break;
+            case 9:
+                if (hasStatusMenu()) {
+                    showStatus();
+                } else {
+                    ConsoleUtil.printError("无效的选择，请重试！");
+                }
+                break;
             case 8:
-                ConsoleUtil.printLoadingAnimation("正在保存数据", 2);
+                try {
+                    ConsoleUtil.withSpinner("正在保存数据", () -> {
+                        storage.close();
+                        return null;
+                    });
+                } catch (Exception e) {
+                    ConsoleUtil.printWarning("关闭存储失败: " + e.getMessage());
+                }
                 ConsoleUtil.printSuccess("感谢使用！再见！");
-                DatabaseUtil.shutdown();
                 System.exit(0);
             default:
                 ConsoleUtil.printError("无效的选择，请重试！");
@@ -2,148 +2,501 @@ package com.flash.utils;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 数据库连接池，实现连接的复用和管理
+ * <p>
+ * 空闲连接存放在无锁双端队列中，借出连接记录在并发集合中，借用和归还均为O(1)。
+ * 连接总数由公平信号量限制，池满时借用者按先来先到的顺序最多等待 pool.maxWait 毫秒。
+ * 后台维护线程按 pool.maintenanceInterval 周期校验空闲连接、回收多余或过期连接并预热到 pool.minIdle。
+ * 借出的连接均为 {@link ConnectionProxy} 代理，维护线程同时检查借出超过 pool.leakDetectionThreshold
+ * 的连接并输出借出位置，超过 pool.removeAbandonedTimeout 的连接被强制回收。
+ * 每个物理连接带有容量为 pool.statementCacheSize 的预编译语句缓存，跨借用复用。
+ * <p>
+ * 预热时只同步建立第一个连接，其余 pool.initialSize - 1 个由最多 pool.warmupThreads 个后台线程并行建立，
+ * 失败的按 pool.warmupBackoff 毫秒起倍增的间隔重试 pool.warmupRetries 次，启动只需等待一次连接握手。
+ * 第一个连接建立失败时不抛出异常，借用时再按需建立连接并报告错误。
+ * <p>
+ * {@link #getInstance()} 是连接 db.url 的主库连接池；只读副本各有一个连接池，由 {@link ReplicaRouter} 创建，
+ * 配置项以 db.read.pool. 为前缀，未配置的沿用 pool.* 的值。
  */
 public class ConnectionPool {
-    private static final int INITIAL_POOL_SIZE = 5;
-    private static final int MAX_POOL_SIZE = 10;
-    private static final ConnectionPool INSTANCE = new ConnectionPool();
-    
-    private final List<Connection> connectionPool;
-    private final List<Connection> usedConnections = new ArrayList<>();
-    private final Lock lock = new ReentrantLock();
-    
-    private ConnectionPool() {
-        connectionPool = new ArrayList<>(INITIAL_POOL_SIZE);
-        for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
-            try {
-                connectionPool.add(createConnection());
-            } catch (SQLException e) {
-                throw new RuntimeException("初始化连接池失败", e);
+    private static final int DEFAULT_INITIAL_SIZE = 5;
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final int DEFAULT_MIN_IDLE = 3;
+    private static final int DEFAULT_MAX_IDLE = 8;
+    private static final long DEFAULT_MAX_WAIT = 5000;
+    private static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000L;
+    private static final long DEFAULT_MAX_LIFETIME = 30 * 60 * 1000L;
+    private static final long DEFAULT_MAINTENANCE_INTERVAL = 30 * 1000L;
+    private static final long DEFAULT_LEAK_DETECTION_THRESHOLD = 60 * 1000L;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    private static final int DEFAULT_WARMUP_THREADS = 4;
+    private static final int DEFAULT_WARMUP_RETRIES = 3;
+    private static final long DEFAULT_WARMUP_BACKOFF = 200;
+    private static final long MAX_WARMUP_BACKOFF = 10 * 1000L;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    private static final String PRIMARY_PREFIX = "pool.";
+
+    /** 空闲连接，队头为最近归还的连接 */
+    private final Deque<PooledConnection> connectionPool = new ConcurrentLinkedDeque<>();
+    /** 借出的连接，以交给调用方的代理为键 */
+    private final Map<Connection, PooledConnection> usedConnections = new ConcurrentHashMap<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+    /** 每个许可对应一个可借出的连接名额，公平模式下等待者按到达顺序获得许可 */
+    private final Semaphore permits;
+    private final ScheduledExecutorService maintainer;
+    /** 后台预热线程，未预热时为null */
+    private volatile ExecutorService warmup;
+    private volatile boolean closed;
+    private final String name;
+    private final ConnectionFactory factory;
+
+    private final int initialSize;
+    private final int maxSize;
+    private final int minIdle;
+    private final int maxIdle;
+    private final long maxWait;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long leakDetectionThreshold;
+    private final long removeAbandonedTimeout;
+    private final int statementCacheSize;
+    private final int warmupRetries;
+    private final long warmupBackoff;
+
+    /**
+     * 新建物理连接
+     */
+    @FunctionalInterface
+    interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    /**
+     * @param name     连接池名称，用于维护线程名和状态信息
+     * @param prefix   配置项前缀，如 "pool."；前缀下缺少的配置项沿用 pool.* 的值
+     * @param prefill  是否在创建时预热 initialSize 个连接（第一个同步建立，其余在后台建立），
+     *                 为 false 时由维护线程预热，创建时不访问数据库
+     * @param factory  新建物理连接的方式
+     */
+    ConnectionPool(String name, String prefix, boolean prefill, ConnectionFactory factory) {
+        this.name = name;
+        this.factory = factory;
+        maxSize = Math.max(1, intSetting(prefix, "maxSize", DEFAULT_MAX_SIZE));
+        initialSize = clamp(intSetting(prefix, "initialSize", DEFAULT_INITIAL_SIZE), 0, maxSize);
+        minIdle = clamp(intSetting(prefix, "minIdle", DEFAULT_MIN_IDLE), 0, maxSize);
+        maxIdle = clamp(intSetting(prefix, "maxIdle", DEFAULT_MAX_IDLE), minIdle, maxSize);
+        maxWait = longSetting(prefix, "maxWait", DEFAULT_MAX_WAIT);
+        idleTimeout = longSetting(prefix, "idleTimeout", DEFAULT_IDLE_TIMEOUT);
+        maxLifetime = longSetting(prefix, "maxLifetime", DEFAULT_MAX_LIFETIME);
+        leakDetectionThreshold = longSetting(prefix, "leakDetectionThreshold", DEFAULT_LEAK_DETECTION_THRESHOLD);
+        removeAbandonedTimeout = longSetting(prefix, "removeAbandonedTimeout", 0);
+        statementCacheSize = intSetting(prefix, "statementCacheSize", DEFAULT_STATEMENT_CACHE_SIZE);
+        warmupRetries = Math.max(0, intSetting(prefix, "warmupRetries", DEFAULT_WARMUP_RETRIES));
+        warmupBackoff = Math.max(1, longSetting(prefix, "warmupBackoff", DEFAULT_WARMUP_BACKOFF));
+        permits = new Semaphore(maxSize, true);
+
+        if (prefill && initialSize > 0) {
+            int remaining = initialSize;
+            if (warmOne()) {
+                remaining--;
+            }
+            if (remaining > 0) {
+                startWarmup(remaining, intSetting(prefix, "warmupThreads", DEFAULT_WARMUP_THREADS));
             }
         }
+
+        long interval = Math.max(1000, longSetting(prefix, "maintenanceInterval", DEFAULT_MAINTENANCE_INTERVAL));
+        String threadName = PRIMARY_PREFIX.equals(prefix) ? "connection-pool-maintainer"
+                : "connection-pool-maintainer-" + name;
+        maintainer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintainer.scheduleWithFixedDelay(this::maintainPool, interval, interval, TimeUnit.MILLISECONDS);
     }
-    
+
     public static ConnectionPool getInstance() {
-        return INSTANCE;
+        return PrimaryHolder.INSTANCE;
     }
-    
+
+    /**
+     * 第一次借用主库连接时才创建主库连接池
+     */
+    private static final class PrimaryHolder {
+        static final ConnectionPool INSTANCE =
+                new ConnectionPool("primary", PRIMARY_PREFIX, true, DatabaseUtil::createConnection);
+    }
+
+    /**
+     * 借用连接，池中连接全部借出时最多等待 pool.maxWait 毫秒
+     * <p>
+     * 返回的是连接代理，调用 close() 即归还连接池。
+     *
+     * @throws SQLException 等待超时、线程被中断或新建连接失败
+     */
     public Connection getConnection() throws SQLException {
-        lock.lock();
+        acquirePermit();
         try {
-            if (connectionPool.isEmpty()) {
-                if (usedConnections.size() < MAX_POOL_SIZE) {
-                    connectionPool.add(createConnection());
-                } else {
-                    throw new SQLException("没有可用的数据库连接");
-                }
+            PooledConnection pooled = connectionPool.pollFirst();
+            if (pooled == null) {
+                // 持有许可且无空闲连接时，其余连接均已借出，总数必然未达上限
+                pooled = openConnection();
             }
-            
-            Connection connection = connectionPool.remove(connectionPool.size() - 1);
-            usedConnections.add(connection);
-            return connection;
-        } finally {
-            lock.unlock();
+            ConnectionProxy lease = new ConnectionProxy(this, pooled.connection,
+                    pooled.statementCache, leakDetectionThreshold > 0);
+            pooled.lease = lease;
+            usedConnections.put(lease.getProxy(), pooled);
+            return lease.getProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
         }
     }
-    
+
     public boolean releaseConnection(Connection connection) {
-        lock.lock();
+        PooledConnection pooled = connection == null ? null : usedConnections.remove(connection);
+        if (pooled == null) {
+            return false;
+        }
+        pooled.lease.invalidate();
+        pooled.lease = null;
         try {
-            if (connection != null && !connection.isClosed()) {
-                connectionPool.add(connection);
-                return usedConnections.remove(connection);
+            if (pooled.connection.isClosed()) {
+                totalConnections.decrementAndGet();
+                return false;
             }
-            return false;
+            long now = System.currentTimeMillis();
+            if (pooled.isExpired(now, maxLifetime)) {
+                // 超过最大存活时间的连接在归还时直接退役，无需等待维护线程
+                discardConnection(pooled);
+            } else {
+                pooled.lastUsedAt = now;
+                connectionPool.offerFirst(pooled);
+            }
+            return true;
         } catch (SQLException e) {
+            discardConnection(pooled);
             return false;
         } finally {
-            lock.unlock();
+            permits.release();
+        }
+    }
+
+    /**
+     * 在连接总数未达上限时新建一个连接
+     */
+    private PooledConnection openConnection() throws SQLException {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= maxSize) {
+                throw new SQLException("连接数已达上限: " + maxSize);
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+        try {
+            Connection connection = factory.create();
+            StatementCache cache = statementCacheSize > 0
+                    ? new StatementCache(statementCacheSize, statementCacheStats) : null;
+            return new PooledConnection(connection, cache);
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 在后台并行建立 count 个空闲连接，线程在全部完成后退出
+     */
+    private void startWarmup(int count, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, count)), task -> {
+            Thread thread = new Thread(task, "connection-pool-warmup-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        warmup = executor;
+        for (int i = 0; i < count; i++) {
+            executor.execute(this::warmWithRetry);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * 建立一个空闲连接，失败时按倍增的间隔重试
+     */
+    private void warmWithRetry() {
+        long backoff = warmupBackoff;
+        for (int attempt = 0; attempt <= warmupRetries && !closed; attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_WARMUP_BACKOFF);
+            }
+            if (warmOne()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取得一个许可后建立一个空闲连接，与 maintainPool 的预热相同；池已满或已借满时视为无需预热
+     *
+     * @return 连接已建立或无需再建立时返回true，建立失败返回false
+     */
+    private boolean warmOne() {
+        if (closed || totalConnections.get() >= maxSize || !permits.tryAcquire()) {
+            return true;
+        }
+        try {
+            PooledConnection pooled = openConnection();
+            connectionPool.offerLast(pooled);
+            if (closed && connectionPool.remove(pooled)) {
+                // shutdown 已清空空闲队列并把连接数归零，只需关闭
+                closeQuietly(pooled.connection, null);
+            }
+            return true;
+        } catch (SQLException e) {
+            return totalConnections.get() >= maxSize;
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquirePermit() throws SQLException {
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("没有可用的数据库连接（等待超过 " + maxWait + "ms）");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待数据库连接时被中断", e);
+        }
+    }
+
+    private void discardConnection(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignored) {
+            // 连接已不可用，关闭失败无需处理
         }
     }
-    
-    private static Connection createConnection() throws SQLException {
-        return DatabaseUtil.createConnection();
+
+    private static int intSetting(String prefix, String key, int defaultValue) {
+        return DatabaseUtil.getIntConfig(prefix + key, DatabaseUtil.getIntConfig(PRIMARY_PREFIX + key, defaultValue));
+    }
+
+    private static long longSetting(String prefix, String key, long defaultValue) {
+        return DatabaseUtil.getLongConfig(prefix + key, DatabaseUtil.getLongConfig(PRIMARY_PREFIX + key, defaultValue));
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
     }
-    
+
     public int getSize() {
-        return connectionPool.size() + usedConnections.size();
+        return totalConnections.get();
     }
-    
+
     public int getAvailableConnections() {
         return connectionPool.size();
     }
-    
+
+    /**
+     * 借出中的连接数与等待借用的线程数之和
+     */
+    public int getOutstanding() {
+        return usedConnections.size() + permits.getQueueLength();
+    }
+
+    public String getName() {
+        return name;
+    }
+
     public void shutdown() throws SQLException {
-        lock.lock();
-        try {
-            for (Connection conn : usedConnections) {
-                releaseConnection(conn);
+        closed = true;
+        maintainer.shutdownNow();
+        ExecutorService executor = warmup;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        SQLException failure = null;
+        for (Connection conn : usedConnections.keySet()) {
+            PooledConnection pooled = usedConnections.remove(conn);
+            if (pooled != null) {
+                pooled.lease.invalidate();
+                failure = closeQuietly(pooled.connection, failure);
             }
-            for (Connection conn : connectionPool) {
-                conn.close();
+        }
+        PooledConnection pooled;
+        while ((pooled = connectionPool.pollFirst()) != null) {
+            failure = closeQuietly(pooled.connection, failure);
+        }
+        totalConnections.set(0);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static SQLException closeQuietly(Connection conn, SQLException failure) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            if (failure == null) {
+                return e;
             }
-            connectionPool.clear();
-        } finally {
-            lock.unlock();
+            failure.addSuppressed(e);
         }
+        return failure;
     }
-    
+
     /**
-     * 检查并清理无效连接
+     * 检查并清理无效连接，由后台维护线程周期调用
+     * <p>
+     * 逐个以借用的方式取出空闲连接：校验失败的、超过最大存活时间的，以及
+     * 空闲数超过 pool.maxIdle 且空闲超时的连接被关闭，其余放回队尾；
+     * 最后把空闲连接补充到 pool.minIdle，使借用者不必在请求路径上建立连接。
      */
     public void maintainPool() {
-        lock.lock();
-        try {
-            List<Connection> invalidConnections = new ArrayList<>();
-            
-            // 检查空闲连接
-            for (Connection conn : connectionPool) {
-                try {
-                    if (conn.isClosed() || !conn.isValid(1)) {
-                        invalidConnections.add(conn);
-                    }
-                } catch (SQLException e) {
-                    invalidConnections.add(conn);
-                }
+        long now = System.currentTimeMillis();
+        detectLeaks(now);
+
+        int idle = connectionPool.size();
+        for (PooledConnection pooled : connectionPool.toArray(new PooledConnection[0])) {
+            if (!permits.tryAcquire()) {
+                break;
             }
-            
-            // 移除无效连接
-            connectionPool.removeAll(invalidConnections);
-            
-            // 补充连接到初始大小
-            while (connectionPool.size() < INITIAL_POOL_SIZE) {
-                try {
-                    connectionPool.add(createConnection());
-                } catch (SQLException e) {
-                    break;
+            try {
+                // 移除成功才代表取得该连接，失败说明已被其他线程借走
+                if (!connectionPool.removeFirstOccurrence(pooled)) {
+                    continue;
                 }
+                boolean surplus = idle > maxIdle && now - pooled.lastUsedAt > idleTimeout;
+                if (surplus || pooled.isExpired(now, maxLifetime) || !isUsable(pooled.connection)) {
+                    discardConnection(pooled);
+                    idle--;
+                } else {
+                    connectionPool.offerLast(pooled);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        // 预热空闲连接到最小空闲数
+        while (connectionPool.size() < minIdle
+                && totalConnections.get() < maxSize && permits.tryAcquire()) {
+            try {
+                connectionPool.offerLast(openConnection());
+            } catch (SQLException e) {
+                break;
+            } finally {
+                permits.release();
             }
-        } finally {
-            lock.unlock();
         }
     }
-    
+
+    /**
+     * 检查借出过久的连接：超过泄漏阈值时报告一次借出位置，超过回收时限时强制回收
+     */
+    private void detectLeaks(long now) {
+        if (leakDetectionThreshold <= 0 && removeAbandonedTimeout <= 0) {
+            return;
+        }
+        for (Map.Entry<Connection, PooledConnection> entry : usedConnections.entrySet()) {
+            PooledConnection pooled = entry.getValue();
+            ConnectionProxy lease = pooled.lease;
+            if (lease == null) {
+                continue;
+            }
+            long held = now - lease.getBorrowedAt();
+            if (removeAbandonedTimeout > 0 && held > removeAbandonedTimeout
+                    && usedConnections.remove(entry.getKey(), pooled)) {
+                reportLeak(lease, held, "已被强制回收");
+                lease.invalidate();
+                pooled.lease = null;
+                discardConnection(pooled);
+                permits.release();
+            } else if (leakDetectionThreshold > 0 && held > leakDetectionThreshold
+                    && lease.markLeakReported()) {
+                reportLeak(lease, held, "疑似泄漏");
+            }
+        }
+    }
+
+    private static void reportLeak(ConnectionProxy lease, long held, String action) {
+        System.err.printf("【连接泄漏】连接已借出 %dms 未归还（打开的语句: %d），%s%n",
+                held, lease.getOpenStatementCount(), action);
+        if (lease.getBorrowStack() != null) {
+            lease.getBorrowStack().printStackTrace();
+        }
+    }
+
+    private static boolean isUsable(Connection conn) {
+        try {
+            return !conn.isClosed() && conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取预编译语句缓存的命中统计
+     */
+    public String getStatementCacheStatus() {
+        return statementCacheStats.toString();
+    }
+
     /**
      * 获取连接池状态信息
      */
     public String getPoolStatus() {
-        lock.lock();
-        try {
-            return String.format(
-                "连接池状态 - 总连接数: %d, 可用连接: %d, 使用中: %d",
-                getSize(),
-                connectionPool.size(),
-                usedConnections.size()
-            );
-        } finally {
-            lock.unlock();
+        return String.format(
+            "连接池状态 - 总连接数: %d, 可用连接: %d, 使用中: %d, 等待中: %d",
+            getSize(),
+            connectionPool.size(),
+            usedConnections.size(),
+            permits.getQueueLength()
+        );
+    }
+
+    /**
+     * 池内连接及其生命周期信息
+     */
+    private static final class PooledConnection {
+        final Connection connection;
+        final StatementCache statementCache;
+        final long createdAt;
+        volatile long lastUsedAt;
+        /** 当前借出的代理，空闲时为null */
+        volatile ConnectionProxy lease;
+
+        PooledConnection(Connection connection, StatementCache statementCache) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = createdAt;
+        }
+
+        boolean isExpired(long now, long maxLifetime) {
+            return maxLifetime > 0 && now - createdAt > maxLifetime;
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,283 @@
+package com.flash.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 借出连接的动态代理
+ * <p>
+ * close() 把连接归还连接池而不是关闭物理连接；通过代理创建的语句会被登记，
+ * 归还时统一关闭仍未关闭的语句及其结果集。每次借用生成新的代理，归还或被回收后代理即失效。
+ * 物理连接带有 {@link StatementCache} 时，prepareStatement(sql) 优先复用缓存的语句，
+ * 关闭这类语句只是清理参数、批处理和结果集，并把调用方改过的语句属性（如 fetchSize、maxRows、
+ * queryTimeout）恢复原值后放回缓存；改过无法读回原值的属性（如 cursorName）的语句直接关闭，不再复用。
+ */
+final class ConnectionProxy implements InvocationHandler {
+    /** 会被缓存语句带给下一个借用者的属性：setter 名与读取原值的 getter 名 */
+    private static final Map<String, String> RESETTABLE = Map.of(
+            "setFetchSize", "getFetchSize",
+            "setFetchDirection", "getFetchDirection",
+            "setMaxRows", "getMaxRows",
+            "setLargeMaxRows", "getLargeMaxRows",
+            "setMaxFieldSize", "getMaxFieldSize",
+            "setQueryTimeout", "getQueryTimeout",
+            "setPoolable", "isPoolable");
+    /** 无法读回原值的属性，改过后语句不再放回缓存 */
+    private static final Set<String> NOT_RESETTABLE = Set.of(
+            "setCursorName", "setEscapeProcessing", "closeOnCompletion");
+
+    private final ConnectionPool pool;
+    private final Connection target;
+    private final Connection proxy;
+    private final StatementCache statementCache;
+    private final Set<Statement> openStatements = ConcurrentHashMap.newKeySet();
+    /** 借出时间和借出位置，用于泄漏检测 */
+    private final long borrowedAt;
+    private final Throwable borrowStack;
+    private volatile boolean invalidated;
+    private volatile boolean leakReported;
+    private volatile boolean autoCommitChanged;
+
+    ConnectionProxy(ConnectionPool pool, Connection target, StatementCache statementCache,
+                    boolean captureStack) {
+        this.pool = pool;
+        this.target = target;
+        this.statementCache = statementCache;
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowStack = captureStack ? new Throwable("连接借出位置") : null;
+        this.proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+    }
+
+    Connection getProxy() {
+        return proxy;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    Throwable getBorrowStack() {
+        return borrowStack;
+    }
+
+    int getOpenStatementCount() {
+        return openStatements.size();
+    }
+
+    /**
+     * 标记已报告泄漏，返回是否为首次标记
+     */
+    boolean markLeakReported() {
+        if (leakReported) {
+            return false;
+        }
+        leakReported = true;
+        return true;
+    }
+
+    /**
+     * 使代理失效并关闭其名下仍打开的语句，回滚未提交的事务
+     */
+    void invalidate() {
+        invalidated = true;
+        for (Statement statement : openStatements) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // 语句所在连接可能已断开，忽略
+            }
+        }
+        openStatements.clear();
+        if (autoCommitChanged) {
+            try {
+                if (!target.getAutoCommit()) {
+                    target.rollback();
+                    target.setAutoCommit(true);
+                }
+            } catch (SQLException ignored) {
+                // 连接状态由连接池在归还时进一步检查
+            }
+        }
+    }
+
+    @Override
+    public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return self == args[0];
+            case "hashCode":
+                return System.identityHashCode(self);
+            case "toString":
+                return "ConnectionProxy[" + target + "]";
+            case "isClosed":
+                return invalidated || target.isClosed();
+            case "close":
+                if (!invalidated) {
+                    pool.releaseConnection(proxy);
+                }
+                return null;
+            default:
+                break;
+        }
+        if (invalidated) {
+            throw new SQLException("连接已归还连接池，不能继续使用");
+        }
+        if ("setAutoCommit".equals(method.getName())) {
+            autoCommitChanged = true;
+        }
+        if (statementCache != null && "prepareStatement".equals(method.getName()) && args.length == 1) {
+            String sql = (String) args[0];
+            PreparedStatement statement = statementCache.take(sql);
+            if (statement == null) {
+                statement = target.prepareStatement(sql);
+            }
+            return trackStatement(statement, PreparedStatement.class, sql);
+        }
+        Object result = invokeTarget(target, method, args);
+        if (result instanceof Statement) {
+            return trackStatement((Statement) result, method.getReturnType(), null);
+        }
+        return result;
+    }
+
+    private Object trackStatement(Statement statement, Class<?> type, String cacheKey) {
+        Statement tracked = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[]{type}, new StatementHandler(statement, cacheKey));
+        openStatements.add(tracked);
+        return tracked;
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 语句代理，关闭时从所属连接的登记中移除；缓存的语句关闭时放回缓存
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        /** 缓存键，非缓存语句为null */
+        private final String cacheKey;
+        /** 缓存语句逻辑关闭时不会自动关闭结果集，需要自行记录 */
+        private final List<ResultSet> resultSets;
+        /** 被改过的属性的 setter 及原值，按首次修改的顺序 */
+        private Map<Method, Object> originals;
+        private boolean batched;
+        private boolean reusable = true;
+        private volatile boolean closed;
+
+        StatementHandler(Statement target, String cacheKey) {
+            this.target = target;
+            this.cacheKey = cacheKey;
+            this.resultSets = cacheKey == null ? null : new ArrayList<>();
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return target.toString();
+                case "getConnection":
+                    return proxy;
+                case "isClosed":
+                    return closed || target.isClosed();
+                case "close":
+                    close(self);
+                    return null;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("语句已关闭");
+            }
+            if (cacheKey != null) {
+                trackChange(method);
+            }
+            Object result = invokeTarget(target, method, args);
+            if (resultSets != null && result instanceof ResultSet) {
+                resultSets.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        /**
+         * 缓存语句被修改属性或加入批处理前记下需要在放回缓存时撤销的内容
+         */
+        private void trackChange(Method method) throws Throwable {
+            String name = method.getName();
+            if ("addBatch".equals(name)) {
+                batched = true;
+            } else if (NOT_RESETTABLE.contains(name)) {
+                reusable = false;
+            } else if (RESETTABLE.containsKey(name)) {
+                if (originals == null) {
+                    originals = new LinkedHashMap<>();
+                }
+                if (!originals.containsKey(method)) {
+                    Method getter = Statement.class.getMethod(RESETTABLE.get(name));
+                    originals.put(method, invokeTarget(target, getter, null));
+                }
+            }
+        }
+
+        private void close(Object self) throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            openStatements.remove(self);
+            if (cacheKey == null) {
+                target.close();
+                return;
+            }
+            try {
+                for (ResultSet resultSet : resultSets) {
+                    resultSet.close();
+                }
+                resultSets.clear();
+                if (!reusable) {
+                    target.close();
+                    return;
+                }
+                ((PreparedStatement) target).clearParameters();
+                if (batched) {
+                    target.clearBatch();
+                }
+                if (originals != null) {
+                    for (Map.Entry<Method, Object> original : originals.entrySet()) {
+                        invokeTarget(target, original.getKey(), new Object[]{original.getValue()});
+                    }
+                }
+            } catch (SQLException e) {
+                target.close();
+                throw e;
+            } catch (Throwable e) {
+                target.close();
+                throw new SQLException("重置缓存语句失败: " + e.getMessage(), e);
+            }
+            statementCache.put(cacheKey, (PreparedStatement) target);
+        }
+    }
+}
\ No newline at end of file
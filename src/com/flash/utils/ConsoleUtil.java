@@ -76,43 +76,102 @@ public class ConsoleUtil {
     }
 
     /**
-     * 打印进度条
+     * 打印进度条，整条拼好后一次输出
      */
     public static void printProgressBar(int progress, int total) {
         int width = 40;
-        int completed = (int) ((double) progress / total * width);
-        System.out.print("\r" + BLUE + "[");
+        double ratio = total <= 0 ? 1 : Math.min(1, Math.max(0, (double) progress / total));
+        int completed = (int) (ratio * width);
+        StringBuilder bar = new StringBuilder(width + 32);
+        bar.append('\r').append(BLUE).append('[');
         for (int i = 0; i < width; i++) {
             if (i < completed) {
-                System.out.print("█");
+                bar.append('█');
             } else if (i == completed) {
-                System.out.print("▓");
+                bar.append('▓');
             } else {
-                System.out.print("░");
+                bar.append('░');
             }
         }
-        System.out.printf("] %d%%" + RESET, (int) ((double) progress / total * 100));
+        bar.append("] ").append((int) (ratio * 100)).append('%').append(RESET);
+        System.out.print(bar);
+        System.out.flush();
+    }
+
+    /**
+     * 可能耗时的操作
+     */
+    @FunctionalInterface
+    public interface Task<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * 执行 task，超过150毫秒仍未完成时在同一行显示加载动画，完成后立即擦除
+     * <p>
+     * task 在调用线程中执行，线程绑定的状态（如当前事务和读副本会话）保持有效，动画由后台线程绘制；
+     * 很快完成的操作不会显示动画，也不增加等待时间。
+     */
+    public static <T, E extends Exception> T withSpinner(String message, Task<T, E> task) throws E {
+        Spinner spinner = new Spinner(message);
+        spinner.start();
+        try {
+            return task.run();
+        } finally {
+            spinner.finish();
+        }
     }
 
     /**
-     * 打印加载动画
+     * 加载动画线程，被 finish 打断后擦除已绘制的内容
      */
-    public static void printLoadingAnimation(String message, int seconds) {
-        String[] frames = {"⠋", "⠙", "⠹", "⠸", "⠼", "⠴", "⠦", "⠧", "⠇", "⠏"};
-        int framesPerSecond = 10;
-        int totalFrames = seconds * framesPerSecond;
-        
-        for (int i = 0; i < totalFrames; i++) {
-            System.out.print("\r" + BLUE + message + " " + 
-                           frames[i % frames.length] + RESET);
+    private static final class Spinner extends Thread {
+        private static final String[] FRAMES = {"⠋", "⠙", "⠹", "⠸", "⠼", "⠴", "⠦", "⠧", "⠇", "⠏"};
+        /** 操作超过这个时间仍未完成才开始显示 */
+        private static final long DELAY_MILLIS = 150;
+        private static final long FRAME_MILLIS = 100;
+        private final String message;
+        private volatile boolean drawn;
+
+        Spinner(String message) {
+            super("console-spinner");
+            setDaemon(true);
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
             try {
-                Thread.sleep(1000 / framesPerSecond);
+                Thread.sleep(DELAY_MILLIS);
+                for (int frame = 0; !isInterrupted(); frame++) {
+                    System.out.print("\r" + BLUE + message + " " + FRAMES[frame % FRAMES.length] + RESET);
+                    System.out.flush();
+                    drawn = true;
+                    Thread.sleep(FRAME_MILLIS);
+                }
             } catch (InterruptedException e) {
+                // finish 结束动画
+            }
+        }
+
+        void finish() {
+            interrupt();
+            boolean interrupted = false;
+            while (isAlive()) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (drawn) {
+                System.out.print("\r" + " ".repeat(displayWidth(message) + 2) + "\r");
+                System.out.flush();
+            }
+            if (interrupted) {
                 Thread.currentThread().interrupt();
-                break;
             }
         }
-        System.out.println();
     }
 
     /**
@@ -127,6 +186,79 @@ public class ConsoleUtil {
         }
     }
 
+    /**
+     * 文本在终端中占用的列数：中日韩文字和全角符号占两列，组合符号和控制字符不占列
+     */
+    public static int displayWidth(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int width = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            width += charWidth(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return width;
+    }
+
+    /**
+     * 把文本追加到 out 并用空格补足 width 列，超出时截断并以“...”结尾
+     */
+    public static void appendPadded(StringBuilder out, String text, int width) {
+        if (text == null) {
+            text = "";
+        }
+        int used = displayWidth(text);
+        if (used > width) {
+            int limit = Math.max(0, width - 3);
+            used = 0;
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                int w = charWidth(codePoint);
+                if (used + w > limit) {
+                    break;
+                }
+                out.appendCodePoint(codePoint);
+                used += w;
+                i += Character.charCount(codePoint);
+            }
+            for (int i = 0; i < 3 && used < width; i++) {
+                out.append('.');
+                used++;
+            }
+        } else {
+            out.append(text);
+        }
+        for (; used < width; used++) {
+            out.append(' ');
+        }
+    }
+
+    private static int charWidth(int codePoint) {
+        if (codePoint < 0x20 || (codePoint >= 0x7F && codePoint < 0xA0)) {
+            return 0;
+        }
+        if (codePoint < 0x1100) {
+            return 1;
+        }
+        int type = Character.getType(codePoint);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT) {
+            return 0;
+        }
+        boolean wide = codePoint <= 0x115F                                 // 韩文字母
+                || (codePoint >= 0x2E80 && codePoint <= 0xA4CF && codePoint != 0x303F) // 中日韩部首至彝文
+                || (codePoint >= 0xAC00 && codePoint <= 0xD7A3)            // 韩文音节
+                || (codePoint >= 0xF900 && codePoint <= 0xFAFF)            // 兼容汉字
+                || (codePoint >= 0xFE30 && codePoint <= 0xFE4F)            // 竖排标点
+                || (codePoint >= 0xFF00 && codePoint <= 0xFF60)            // 全角字符
+                || (codePoint >= 0xFFE0 && codePoint <= 0xFFE6)
+                || (codePoint >= 0x1F300 && codePoint <= 0x1F64F)          // 表情符号
+                || (codePoint >= 0x1F900 && codePoint <= 0x1F9FF)
+                || (codePoint >= 0x20000 && codePoint <= 0x3FFFD);         // 扩展汉字
+        return wide ? 2 : 1;
+    }
+
     /**
      * 打印带颜色的文本
      */
@@ -1,5 +1,6 @@
 package com.flash.utils;
 
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
@@ -13,12 +14,19 @@ import java.util.Properties;
 public class DatabaseUtil {
     private static final Properties CONFIG = new Properties();
     private static final String CONFIG_FILE = "database.properties";
+    private static final String CONNECTION_PREFIX = "connection.";
+    private static final DataSource DATA_SOURCE = new PooledDataSource();
     
+    /** 是否已创建只读副本路由，未创建时关闭不会触发创建 */
+    private static volatile boolean replicaRouterCreated;
+
     /** 数据库连接配置 */
     private static String url;
     private static String user;
     private static String password;
     private static String driverClass;
+    /** 驱动加载失败的原因，加载成功时为null */
+    private static ClassNotFoundException driverError;
     
     static {
         loadConfig();
@@ -51,13 +59,13 @@ public class DatabaseUtil {
     }
     
     /**
-     * 加载数据库驱动
+     * 加载数据库驱动，失败时不在类初始化中抛出，建立连接时再报告
      */
     private static void loadDriver() {
         try {
             Class.forName(driverClass);
         } catch (ClassNotFoundException e) {
-            throw new RuntimeException("MySQL驱动加载失败: " + e.getMessage(), e);
+            driverError = e;
         }
     }
 
@@ -66,9 +74,56 @@ public class DatabaseUtil {
     }
 
     /**
-     * 创建新的数据库连接
+     * 读取字符串配置项，缺失时返回默认值
+     */
+    public static String getConfig(String key, String defaultValue) {
+        String value = CONFIG.getProperty(key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * 读取数值型配置项，缺失或格式错误时返回默认值
+     */
+    public static long getLongConfig(String key, long defaultValue) {
+        String value = CONFIG.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static int getIntConfig(String key, int defaultValue) {
+        long value = getLongConfig(key, defaultValue);
+        return value > Integer.MAX_VALUE || value < Integer.MIN_VALUE ? defaultValue : (int) value;
+    }
+
+    public static boolean getBooleanConfig(String key, boolean defaultValue) {
+        String value = CONFIG.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * 创建新的主库连接
      */
     static Connection createConnection() throws SQLException {
+        return createConnection(url, user, password);
+    }
+
+    /**
+     * 创建只读副本的连接，用户名和密码取 db.read.user 和 db.read.password，未配置时与主库相同
+     */
+    static Connection createReadConnection(String readUrl) throws SQLException {
+        return createConnection(readUrl, getConfig("db.read.user", user), getConfig("db.read.password", password));
+    }
+
+    private static Connection createConnection(String url, String user, String password) throws SQLException {
+        if (driverError != null) {
+            throw new SQLException("MySQL驱动加载失败: " + driverError.getMessage(), driverError);
+        }
         Properties props = new Properties();
         props.setProperty("user", user);
         props.setProperty("password", password);
@@ -78,6 +133,14 @@ public class DatabaseUtil {
         props.setProperty("autoReconnect", "true");
         props.setProperty("failOverReadOnly", "false");
         props.setProperty("maxReconnects", "3");
+        // 服务端预编译，配合连接池的语句缓存使每条SQL在每个连接上只解析一次
+        props.setProperty("useServerPrepStmts", "true");
+        // 配置文件中 connection.* 的连接属性覆盖上述默认值
+        for (String key : CONFIG.stringPropertyNames()) {
+            if (key.startsWith(CONNECTION_PREFIX)) {
+                props.setProperty(key.substring(CONNECTION_PREFIX.length()), CONFIG.getProperty(key));
+            }
+        }
         
         return DriverManager.getConnection(url, props);
     }
@@ -89,6 +152,22 @@ public class DatabaseUtil {
         return ConnectionPool.getInstance().getConnection();
     }
 
+    /**
+     * 获取以连接池为后端的数据源，DAO 每次操作从中借用连接
+     */
+    public static DataSource getDataSource() {
+        return DATA_SOURCE;
+    }
+
+    /**
+     * 获取读操作使用的数据源：配置了 db.read.urls 时为路由到只读副本的 {@link ReplicaRouter}，
+     * 否则与 {@link #getDataSource()} 相同
+     */
+    public static DataSource getReadDataSource() {
+        ReplicaRouter router = ReplicaRouterHolder.ROUTER;
+        return router != null ? router : DATA_SOURCE;
+    }
+
     /**
      * 释放数据库连接到连接池
      */
@@ -103,12 +182,40 @@ public class DatabaseUtil {
      */
     public static void shutdown() throws SQLException {
         try {
+            if (replicaRouterCreated) {
+                ReplicaRouter router = ReplicaRouterHolder.ROUTER;
+                if (router != null) {
+                    router.shutdown();
+                }
+            }
             ConnectionPool.getInstance().shutdown();
         } catch (SQLException e) {
             throw new SQLException("关闭数据库连接池失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 主库连接池、预编译语句缓存和只读副本（已启用时）的运行状态，每项一行
+     */
+    public static String getStatus() {
+        ConnectionPool pool = ConnectionPool.getInstance();
+        StringBuilder status = new StringBuilder(pool.getPoolStatus())
+                .append('\n').append(pool.getStatementCacheStatus());
+        String replicas = getReplicaStatus();
+        if (replicas != null) {
+            status.append('\n').append(replicas);
+        }
+        return status.toString();
+    }
+
+    /**
+     * 只读副本的路由状态，未配置副本时返回null
+     */
+    public static String getReplicaStatus() {
+        ReplicaRouter router = replicaRouterCreated ? ReplicaRouterHolder.ROUTER : null;
+        return router != null ? router.getStatus() : null;
+    }
+
     /**
      * 检查数据库连接是否可用
      * 
@@ -121,4 +228,21 @@ public class DatabaseUtil {
             return false;
         }
     }
+
+    /**
+     * 第一次使用时才按 db.read.urls 创建副本路由
+     */
+    private static final class ReplicaRouterHolder {
+        static final ReplicaRouter ROUTER = create();
+
+        private static ReplicaRouter create() {
+            String urls = getConfig("db.read.urls", "");
+            if (urls.isEmpty()) {
+                return null;
+            }
+            replicaRouterCreated = true;
+            return new ReplicaRouter(DATA_SOURCE, urls.split("\\s*,\\s*"),
+                    getLongConfig("db.read.stickyMillis", 2000), getLongConfig("db.read.retryInterval", 10000));
+        }
+    }
 }
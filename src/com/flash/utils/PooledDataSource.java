@@ -0,0 +1,69 @@
+package com.flash.utils;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+/**
+ * 以 {@link ConnectionPool} 为后端的数据源
+ * <p>
+ * getConnection() 从连接池借用连接，调用 close() 即归还。连接池在第一次借用时才初始化，
+ * 创建数据源本身不会建立数据库连接。用户名和密码只能在 database.properties 中配置。
+ */
+public class PooledDataSource implements DataSource {
+    private int loginTimeout;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return ConnectionPool.getInstance().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("连接池数据源不支持按调用指定用户名和密码");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        // 连接池直接输出到标准错误，不使用日志输出流
+    }
+
+    /**
+     * 借用连接的等待时间由 pool.maxWait 决定，这里只保存设置值
+     */
+    @Override
+    public void setLoginTimeout(int seconds) {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("不使用 java.util.logging");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("不是 " + iface.getName() + " 的包装");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
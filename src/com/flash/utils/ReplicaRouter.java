@@ -0,0 +1,253 @@
+package com.flash.utils;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 读操作的数据源：把读连接分给只读副本，写操作仍使用主库数据源
+ * <p>
+ * 每个副本有独立的连接池（配置项前缀 db.read.pool.），借用时选择借出和等待中的连接数最少的副本。
+ * 向副本借连接失败（无法连接等）时，该副本在 retryInterval 毫秒内不再被选中，期满后由下一次借用重新尝试；
+ * 所有副本都不可用或繁忙时改从主库借用。
+ * <p>
+ * 读己之写：写操作提交后调用 {@link #recordWrite()} 标记当前会话，此后 stickyMillis 毫秒内
+ * 该会话的读取都走主库，避开副本的复制延迟。会话由 {@link #bind(Session)} 绑定到线程，
+ * 未绑定时整个进程共用一个默认会话，适用于控制台这样的单用户程序。
+ * 已开启 {@link com.flash.dao.UnitOfWork} 的读取使用事务的主库连接，不经过本路由。
+ */
+public class ReplicaRouter implements DataSource {
+    private static final ThreadLocal<Session> CURRENT = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Replica[] replicas;
+    private final long stickyMillis;
+    private final long retryIntervalMillis;
+    private final Session defaultSession = new Session();
+    /** 轮换并列最少时的起点，避免总是选中第一个副本 */
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final AtomicLong stickyReads = new AtomicLong();
+    private final AtomicLong fallbackReads = new AtomicLong();
+
+    /**
+     * 读己之写的会话，记录最近一次写入的时间
+     */
+    public static final class Session {
+        private volatile long lastWriteAt;
+    }
+
+    /**
+     * 会话绑定的作用域，关闭时恢复之前的绑定
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Replica {
+        final ConnectionPool pool;
+        final AtomicLong reads = new AtomicLong();
+        volatile long downUntil;
+
+        Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * @param primary             主库数据源，副本不可用和读己之写时使用
+     * @param urls                副本的连接地址
+     * @param stickyMillis        写入后同一会话的读取走主库的时长
+     * @param retryIntervalMillis 副本借用失败后暂停使用的时长
+     */
+    public ReplicaRouter(DataSource primary, String[] urls, long stickyMillis, long retryIntervalMillis) {
+        if (urls.length == 0) {
+            throw new IllegalArgumentException("至少需要一个副本地址");
+        }
+        this.primary = primary;
+        this.stickyMillis = stickyMillis;
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.replicas = new Replica[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            String url = urls[i];
+            // 副本不在创建时建立连接，副本未启动也不影响程序启动
+            replicas[i] = new Replica(new ConnectionPool("replica-" + (i + 1), "db.read.pool.", false,
+                    () -> DatabaseUtil.createReadConnection(url)));
+        }
+    }
+
+    /**
+     * 把 session 绑定到当前线程，直到返回的作用域关闭
+     */
+    public static Scope bind(Session session) {
+        Session previous = CURRENT.get();
+        CURRENT.set(session);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * 标记当前会话刚刚写入
+     */
+    public void recordWrite() {
+        currentSession().lastWriteAt = System.currentTimeMillis();
+    }
+
+    /**
+     * readDataSource 是副本路由时标记当前会话刚刚写入，否则什么也不做
+     */
+    public static void recordWrite(DataSource readDataSource) {
+        if (readDataSource instanceof ReplicaRouter) {
+            ((ReplicaRouter) readDataSource).recordWrite();
+        }
+    }
+
+    /**
+     * 借用一个读连接，调用 close() 即归还到它所属的连接池
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long now = System.currentTimeMillis();
+        long lastWrite = currentSession().lastWriteAt;
+        if (lastWrite != 0 && now - lastWrite < stickyMillis) {
+            stickyReads.incrementAndGet();
+            return primary.getConnection();
+        }
+        for (int attempt = 0; attempt < replicas.length; attempt++) {
+            Replica replica = pick(now);
+            if (replica == null) {
+                break;
+            }
+            try {
+                Connection connection = replica.pool.getConnection();
+                replica.reads.incrementAndGet();
+                return connection;
+            } catch (SQLTransientConnectionException e) {
+                // 副本的连接全部借出且等待超时，副本本身可用，这次改读主库
+                break;
+            } catch (SQLException e) {
+                replica.downUntil = now + retryIntervalMillis;
+                ConsoleUtil.printWarning("只读副本 " + replica.pool.getName() + " 不可用，"
+                        + retryIntervalMillis + "ms 内改读主库: " + e.getMessage());
+            }
+        }
+        fallbackReads.incrementAndGet();
+        return primary.getConnection();
+    }
+
+    /**
+     * 可用副本中借出和等待中的连接数最少的一个，没有可用副本时返回null
+     */
+    private Replica pick(long now) {
+        Replica best = null;
+        int bestOutstanding = Integer.MAX_VALUE;
+        int start = Math.floorMod(rotation.getAndIncrement(), replicas.length);
+        for (int i = 0; i < replicas.length; i++) {
+            Replica replica = replicas[(start + i) % replicas.length];
+            if (replica.downUntil > now) {
+                continue;
+            }
+            int outstanding = replica.pool.getOutstanding();
+            if (outstanding < bestOutstanding) {
+                best = replica;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best;
+    }
+
+    private Session currentSession() {
+        Session session = CURRENT.get();
+        return session != null ? session : defaultSession;
+    }
+
+    /**
+     * 各副本的读取次数、借出连接数和可用状态，以及读主库的次数
+     */
+    public String getStatus() {
+        StringBuilder status = new StringBuilder("读写分离 - ");
+        long now = System.currentTimeMillis();
+        for (Replica replica : replicas) {
+            status.append(replica.pool.getName()).append(": 读取 ").append(replica.reads.get())
+                    .append(", 借出 ").append(replica.pool.getOutstanding())
+                    .append(replica.downUntil > now ? ", 不可用" : "").append("; ");
+        }
+        return status.append("写后读主库: ").append(stickyReads.get())
+                .append(", 副本不可用读主库: ").append(fallbackReads.get()).toString();
+    }
+
+    /**
+     * 关闭所有副本的连接池，主库连接池由调用方关闭
+     */
+    public void shutdown() throws SQLException {
+        SQLException failure = null;
+        for (Replica replica : replicas) {
+            try {
+                replica.pool.shutdown();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("副本路由不支持按调用指定用户名和密码");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        // 路由警告直接输出到控制台，不使用日志输出流
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        // 借用等待时间由 db.read.pool.maxWait 决定
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("不使用 java.util.logging");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("不是 " + iface.getName() + " 的包装");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
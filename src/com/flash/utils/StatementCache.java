@@ -0,0 +1,85 @@
+package com.flash.utils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 绑定在单个物理连接上的预编译语句缓存，以SQL文本为键，按LRU淘汰
+ * <p>
+ * 语句借出时从缓存中移除，逻辑关闭时再放回，同一条语句不会同时被两个调用方使用。
+ */
+final class StatementCache {
+    private final int capacity;
+    private final Stats stats;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    StatementCache(int capacity, Stats stats) {
+        this.capacity = capacity;
+        this.stats = stats;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * 取出缓存的语句，未命中返回null
+     */
+    synchronized PreparedStatement take(String sql) {
+        PreparedStatement statement = statements.remove(sql);
+        if (statement == null) {
+            stats.misses.increment();
+        } else {
+            stats.hits.increment();
+        }
+        return statement;
+    }
+
+    /**
+     * 放回语句，缓存已有同一SQL时关闭该语句，超出容量时关闭最久未用的语句
+     */
+    synchronized void put(String sql, PreparedStatement statement) {
+        if (statements.putIfAbsent(sql, statement) != null) {
+            closeQuietly(statement);
+            return;
+        }
+        if (statements.size() > capacity) {
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            closeQuietly(eldest.next());
+            eldest.remove();
+            stats.evictions.increment();
+        }
+    }
+
+    synchronized void clear() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // 语句所在连接可能已断开，忽略
+        }
+    }
+
+    /**
+     * 全池共享的缓存命中统计
+     */
+    static final class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        @Override
+        public String toString() {
+            long hit = hits.sum();
+            long total = hit + misses.sum();
+            return String.format("语句缓存 - 命中: %d, 未命中: %d, 淘汰: %d, 命中率: %.1f%%",
+                    hit, total - hit, evictions.sum(), total == 0 ? 0.0 : hit * 100.0 / total);
+        }
+    }
+}
\ No newline at end of file